@@ -0,0 +1,233 @@
+package bgu.spl.net.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.net.impl.stomp.StompMessageEncoderDecoder;
+import bgu.spl.net.impl.stomp.StompMessagingProtocolImpl;
+import bgu.spl.net.srv.Server;
+
+/**
+ * Runs the STOMP server in this JVM in one of its modes, holds many idle connections open and measures the
+ * SEND -> MESSAGE round trip of a few active clients on top of them.
+ *
+ * Usage: ConnectionScaleBenchmark mode idle active seconds [port]
+ *   mode: tpc, vtpc (Java 21+) or reactor
+ *   e.g. java -cp benchmarks/target/benchmarks.jar bgu.spl.net.benchmarks.ConnectionScaleBenchmark vtpc 10000 16 10
+ *
+ * Logins are written to the SQL server, so data/sql_server.py must be running.
+ * Every connection uses two file descriptors in this process, raise ulimit -n accordingly.
+ */
+public class ConnectionScaleBenchmark {
+
+    private static final int SQL_PORT = 7778;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: ConnectionScaleBenchmark <tpc|vtpc|reactor> <idle connections> <active connections> <seconds> [port]");
+            return;
+        }
+        String mode = args[0];
+        int idle = Integer.parseInt(args[1]);
+        int active = Integer.parseInt(args[2]);
+        int seconds = Integer.parseInt(args[3]);
+        int port = args.length > 4 ? Integer.parseInt(args[4]) : 7790;
+
+        try {
+            new Socket("127.0.0.1", SQL_PORT).close();
+        } catch (ConnectException e) {
+            System.out.println("The SQL server is not running on port " + SQL_PORT + " (python3 data/sql_server.py)");
+            return;
+        }
+
+        // The server prints every frame it handles
+        PrintStream console = System.out;
+        PrintStream consoleErr = System.err;
+        PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        System.setOut(discard);
+        System.setErr(discard);
+        try {
+            run(mode, idle, active, seconds, port, console);
+        } catch (Exception e) {
+            e.printStackTrace(consoleErr);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String mode, int idle, int active, int seconds, int port, PrintStream console) throws Exception {
+        Server<String> server = create(mode, port);
+        Thread serving = new Thread(server::serve, "server");
+        serving.setDaemon(true);
+        serving.start();
+        awaitPort(port);
+
+        long start = System.nanoTime();
+        List<Socket> idleConnections = new ArrayList<>(idle);
+        for (int i = 0; i < idle; i++) {
+            idleConnections.add(login(port, "idle" + i + "_" + start));
+        }
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.gc();
+        long heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        ActiveClient[] clients = new ActiveClient[active];
+        for (int i = 0; i < active; i++) {
+            clients[i] = new ActiveClient(login(port, "active" + i + "_" + start), "/bench" + i,
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds));
+        }
+        for (ActiveClient client : clients) {
+            client.start();
+        }
+        long total = 0;
+        long[] all = new long[0];
+        for (ActiveClient client : clients) {
+            client.join();
+            all = concat(all, client.latencies, client.count);
+            total += client.count;
+        }
+        Arrays.sort(all);
+
+        console.printf("mode=%s idle=%d active=%d%n", mode, idle, active);
+        console.printf("  connect+login of idle clients: %d ms (%.0f/s)%n", connectMillis, idle * 1000.0 / Math.max(1, connectMillis));
+        console.printf("  heap after idle connections: %.1f MB, JVM threads: %d%n", heap / 1048576.0, threads);
+        console.printf("  round trips: %d (%.0f/s)%n", total, total / (double) seconds);
+        if (all.length > 0) {
+            console.printf("  latency us: p50=%d p99=%d p99.9=%d max=%d%n",
+                    percentile(all, 50) / 1000, percentile(all, 99) / 1000, percentile(all, 99.9) / 1000, all[all.length - 1] / 1000);
+        }
+
+        for (Socket socket : idleConnections) {
+            socket.close();
+        }
+        server.close();
+    }
+
+    private static Server<String> create(String mode, int port) {
+        switch (mode) {
+            case "tpc":
+                return Server.threadPerClient(port, StompMessagingProtocolImpl::new, StompMessageEncoderDecoder::new);
+            case "vtpc":
+                return Server.virtualThreadPerClient(port, StompMessagingProtocolImpl::new, StompMessageEncoderDecoder::new);
+            case "reactor":
+                return Server.reactor(Runtime.getRuntime().availableProcessors(), port,
+                        StompMessagingProtocolImpl::new, StompMessageEncoderDecoder::new);
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    private static void awaitPort(int port) throws InterruptedException {
+        while (true) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static Socket login(int port, String user) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        write(socket, "CONNECT\naccept-version:1.2\nhost:stomp.cs.bgu.ac.il\nlogin:" + user + "\npasscode:pw\n\n\u0000");
+        String reply = readFrame(socket.getInputStream());
+        if (!reply.startsWith("CONNECTED")) {
+            throw new IOException("Login failed: " + reply);
+        }
+        return socket;
+    }
+
+    private static void write(Socket socket, String frame) throws IOException {
+        socket.getOutputStream().write(frame.getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+    }
+
+    private static String readFrame(InputStream in) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) > 0) {
+            frame.write(b);
+        }
+        if (b < 0) {
+            throw new IOException("Connection closed");
+        }
+        return new String(frame.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static long[] concat(long[] a, long[] b, int bLength) {
+        long[] result = Arrays.copyOf(a, a.length + bLength);
+        System.arraycopy(b, 0, result, a.length, bLength);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Subscribes to its own destination and sends to it in a loop, timing each SEND until its MESSAGE arrives.
+     */
+    private static class ActiveClient extends Thread {
+        private final Socket socket;
+        private final String destination;
+        private final long deadline;
+        long[] latencies = new long[1 << 12];
+        int count = 0;
+
+        ActiveClient(Socket socket, String destination, long deadline) {
+            this.socket = socket;
+            this.destination = destination;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                write(socket, "SUBSCRIBE\ndestination:" + destination + "\nid:1\nreceipt:1\n\n\u0000");
+                readFrame(in);
+
+                String send = "SEND\ndestination:" + destination + "\n\nping\u0000";
+                while (System.nanoTime() < deadline) {
+                    long sent = System.nanoTime();
+                    write(socket, send);
+                    readFrame(in);
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - sent;
+                }
+                write(socket, "DISCONNECT\nreceipt:2\n\n\u0000");
+                readFrame(in);
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bgu.spl.net.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bgu.spl.net.impl.stomp.StompMessageEncoderDecoder;
+
+/**
+ * Decoding reads of at least 8k (the reactor's read buffer size) made of whole SEND frames,
+ * byte by byte vs. from the whole buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    private static final int READ_SIZE = 1 << 13;
+
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private ByteBuffer read;
+    private StompMessageEncoderDecoder decoder;
+
+    @Setup
+    public void setup() {
+        byte[] frame = Frames.send("/germany_spain", Frames.body(bodySize)).getBytes(StandardCharsets.UTF_8);
+
+        int frames = Math.max(1, (READ_SIZE + frame.length - 1) / frame.length);
+        read = ByteBuffer.allocateDirect(frames * frame.length);
+        for (int i = 0; i < frames; i++) {
+            read.put(frame);
+        }
+        read.flip();
+        decoder = new StompMessageEncoderDecoder();
+    }
+
+    @Benchmark
+    public void perByte(Blackhole bh) {
+        ByteBuffer buf = read.duplicate();
+        while (buf.hasRemaining()) {
+            String message = decoder.decodeNextByte(buf.get());
+            if (message != null) {
+                bh.consume(message);
+            }
+        }
+    }
+
+    @Benchmark
+    public void bulk(Blackhole bh) {
+        bh.consume(decoder.decode(read.duplicate()));
+    }
+}
@@ -0,0 +1,62 @@
+package bgu.spl.net.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.net.impl.stomp.StompFrameWriter;
+import bgu.spl.net.impl.stomp.StompMessageEncoderDecoder;
+import bgu.spl.net.impl.stomp.StompServerFrame;
+import bgu.spl.net.srv.EncodedMessage;
+
+/**
+ * Cost of producing the bytes of one MESSAGE frame: concatenating a String and encoding it
+ * vs. writing the frame straight into bytes with StompFrameWriter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+
+    private static final String DESTINATION = "/germany_spain";
+
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private String body;
+    private StompMessageEncoderDecoder encoder;
+    private long messageId = 0;
+
+    @Setup
+    public void setup() {
+        body = Frames.body(bodySize);
+        encoder = new StompMessageEncoderDecoder();
+    }
+
+    @Benchmark
+    public byte[] stringEncode() {
+        String frame = "MESSAGE\ndestination:" + DESTINATION + "\nmessage-id:" + (messageId++) + "\n\n" + body + "\u0000";
+        return encoder.encode(frame);
+    }
+
+    @Benchmark
+    public EncodedMessage frameWriter() {
+        return StompFrameWriter.start(StompServerFrame.MESSAGE)
+                .header(StompFrameWriter.DESTINATION, DESTINATION)
+                .header(StompFrameWriter.MESSAGE_ID, String.valueOf(messageId++))
+                .end(body);
+    }
+}
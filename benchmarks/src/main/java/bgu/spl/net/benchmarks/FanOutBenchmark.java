@@ -0,0 +1,115 @@
+package bgu.spl.net.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bgu.spl.net.impl.stomp.StompFrameWriter;
+import bgu.spl.net.impl.stomp.StompMessageEncoderDecoder;
+import bgu.spl.net.impl.stomp.StompServerFrame;
+import bgu.spl.net.srv.ConnectionHandler;
+import bgu.spl.net.srv.ConnectionsImpl;
+import bgu.spl.net.srv.EncodedMessage;
+
+/**
+ * Cost of handing one channel message to 10, 1k and 10k subscribers through ConnectionsImpl, without the sockets:
+ * the handlers only consume what they get. Compares a String message (encoded once by ConnectionsImpl)
+ * with a pre-encoded one, and with encoding per subscriber (no broadcast encoder).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    private static final String CHANNEL = "/germany_spain";
+
+    @Param({"10", "1000", "10000"})
+    public int subscribers;
+
+    private ConnectionsImpl<String> shared;
+    private ConnectionsImpl<String> perSubscriber;
+    private String message;
+    private EncodedMessage encoded;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        shared = new ConnectionsImpl<>(new StompMessageEncoderDecoder());
+        perSubscriber = new ConnectionsImpl<>();
+        for (int i = 0; i < subscribers; i++) {
+            subscribe(shared, i, bh);
+            subscribe(perSubscriber, i, bh);
+        }
+
+        String body = Frames.body(1 << 10);
+        message = "MESSAGE\ndestination:" + CHANNEL + "\nmessage-id:1\n\n" + body;
+        encoded = StompFrameWriter.start(StompServerFrame.MESSAGE)
+                .header(StompFrameWriter.DESTINATION, CHANNEL)
+                .header(StompFrameWriter.MESSAGE_ID, "1")
+                .end(body);
+    }
+
+    private static void subscribe(ConnectionsImpl<String> connections, int connectionId, Blackhole bh) {
+        connections.addConnection(connectionId, new ConsumingHandler(bh));
+        connections.subscribe(CHANNEL, connectionId, String.valueOf(connectionId % 100));
+    }
+
+    @Benchmark
+    public void sendString() {
+        shared.send(CHANNEL, message);
+    }
+
+    @Benchmark
+    public void sendEncoded() {
+        shared.sendEncoded(CHANNEL, encoded);
+    }
+
+    @Benchmark
+    public void sendEncodingPerSubscriber() {
+        perSubscriber.send(CHANNEL, message);
+    }
+
+    /**
+     * Stands in for a connection, consuming what it is sent. Encodes Strings like the real handlers do.
+     */
+    private static final class ConsumingHandler implements ConnectionHandler<String> {
+        private final Blackhole bh;
+        private final StompMessageEncoderDecoder encoder = new StompMessageEncoderDecoder();
+
+        ConsumingHandler(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void send(String msg) {
+            bh.consume(encoder.encode(msg));
+        }
+
+        @Override
+        public void sendEncoded(EncodedMessage msg) {
+            bh.consume(msg);
+        }
+
+        @Override
+        public void sendEncodedDirect(EncodedMessage msg) {
+            bh.consume(msg);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
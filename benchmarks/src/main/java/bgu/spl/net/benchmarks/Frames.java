@@ -0,0 +1,33 @@
+package bgu.spl.net.benchmarks;
+
+/**
+ * Sample STOMP frames used as benchmark input.
+ */
+public final class Frames {
+
+    private Frames() {
+    }
+
+    /**
+     * @param size
+     * @return a game event report body of roughly the given size
+     */
+    public static String body(int size) {
+        String report = "user: alice\nteam a: germany\nteam b: spain\nevent name: goal\ntime: 1234\n"
+                + "general game updates:\n\tactive: true\nteam a updates:\n\tgoals: 1\nteam b updates:\n\tgoals: 0\n"
+                + "description:\n";
+        StringBuilder body = new StringBuilder(size);
+        body.append(report, 0, Math.min(report.length(), size));
+        while (body.length() < size) {
+            body.append((char) ('a' + body.length() % 26));
+        }
+        return body.toString();
+    }
+
+    /**
+     * @return an encoded SEND frame, including the NUL terminator
+     */
+    public static String send(String destination, String body) {
+        return "SEND\ndestination:" + destination + "\nreceipt:17\n\n" + body + "\u0000";
+    }
+}
@@ -0,0 +1,303 @@
+package bgu.spl.net.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A game events file (client/data/events1.json) turned into report bodies, formatted like the client's report command.
+ * Holds just enough of a JSON reader for these files: objects, arrays, strings, numbers, booleans and null.
+ */
+public final class GameEvents {
+
+    private final String teamA;
+    private final String teamB;
+    private final List<Report> reports;
+
+    private GameEvents(String teamA, String teamB, List<Report> reports) {
+        this.teamA = teamA;
+        this.teamB = teamB;
+        this.reports = reports;
+    }
+
+    /**
+     * @param path
+     * @return the events of the file
+     * @throws IOException if the file could not be read or is not a valid events file
+     */
+    public static GameEvents read(String path) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        Object parsed;
+        try {
+            parsed = new JsonReader(json).readDocument();
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": " + e.getMessage());
+        }
+        if (!(parsed instanceof Map)) {
+            throw new IOException(path + ": not a JSON object");
+        }
+        Map<?, ?> game = (Map<?, ?>) parsed;
+        String teamA = String.valueOf(game.get("team a"));
+        String teamB = String.valueOf(game.get("team b"));
+
+        List<Report> reports = new ArrayList<>();
+        Object events = game.get("events");
+        if (events instanceof List) {
+            for (Object event : (List<?>) events) {
+                reports.add(report(teamA, teamB, (Map<?, ?>) event));
+            }
+        }
+        if (reports.isEmpty()) {
+            throw new IOException(path + ": no events");
+        }
+        return new GameEvents(teamA, teamB, reports);
+    }
+
+    private static Report report(String teamA, String teamB, Map<?, ?> event) {
+        StringBuilder head = new StringBuilder();
+        row(head, "team a", teamA);
+        row(head, "team b", teamB);
+        row(head, "event name", event.get("event name"));
+        row(head, "time", event.get("time"));
+
+        // The client keeps the updates in a sorted map
+        StringBuilder tail = new StringBuilder();
+        tail.append("general game updates:\n");
+        rows(tail, event.get("general game updates"));
+        tail.append("team a updates:\n");
+        rows(tail, event.get("team a updates"));
+        tail.append("team b updates:\n");
+        rows(tail, event.get("team b updates"));
+        tail.append("description:\n");
+        Object description = event.get("description");
+        if (description != null) {
+            tail.append(description);
+        }
+        return new Report(head.toString(), tail.toString());
+    }
+
+    private static void row(StringBuilder body, String key, Object value) {
+        body.append(key).append(':').append(value == null ? "" : value).append('\n');
+    }
+
+    private static void rows(StringBuilder body, Object updates) {
+        if (updates instanceof Map) {
+            for (Map.Entry<?, ?> update : new TreeMap<>((Map<?, ?>) updates).entrySet()) {
+                row(body, String.valueOf(update.getKey()), update.getValue());
+            }
+        }
+    }
+
+    public String getTeamA() {
+        return teamA;
+    }
+
+    public String getTeamB() {
+        return teamB;
+    }
+
+    /**
+     * @return the channel the client reports this game to
+     */
+    public String getChannel() {
+        return teamA + "_" + teamB;
+    }
+
+    public int size() {
+        return reports.size();
+    }
+
+    /**
+     * @param index
+     * @param user the reporting user
+     * @param extraKey a row added after the time row, e.g. a timestamp. The client ignores unknown rows.
+     * @param extraValue
+     * @return the body of the index'th report
+     */
+    public String body(int index, String user, String extraKey, long extraValue) {
+        Report report = reports.get(index);
+        StringBuilder body = new StringBuilder(report.head.length() + report.tail.length() + 64);
+        row(body, "user", user);
+        body.append(report.head);
+        body.append(extraKey).append(':').append(extraValue).append('\n');
+        body.append(report.tail);
+        return body.toString();
+    }
+
+    private static final class Report {
+        final String head; //rows before the extra row
+        final String tail;
+
+        Report(String head, String tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * Recursive descent JSON reader. Numbers are kept as their text, which is what the reports print.
+     */
+    private static final class JsonReader {
+        private final String json;
+        private int pos = 0;
+
+        JsonReader(String json) {
+            this.json = json;
+        }
+
+        Object readDocument() {
+            Object value = readValue();
+            skipWhitespace();
+            if (pos != json.length()) {
+                throw error("unexpected text after the document");
+            }
+            return value;
+        }
+
+        private Object readValue() {
+            skipWhitespace();
+            if (pos == json.length()) {
+                throw error("unexpected end");
+            }
+            char c = json.charAt(pos);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                default:
+                    return readLiteral();
+            }
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            pos++; // {
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            pos++; // [
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return array;
+            }
+            while (true) {
+                array.add(readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (true) {
+                if (pos == json.length()) {
+                    throw error("unterminated string");
+                }
+                char c = json.charAt(pos++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'r':
+                        out.append('\r');
+                        break;
+                    case 'b':
+                        out.append('\b');
+                        break;
+                    case 'f':
+                        out.append('\f');
+                        break;
+                    case 'u':
+                        out.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: // " \ /
+                        out.append(escaped);
+                }
+            }
+        }
+
+        private Object readLiteral() {
+            int start = pos;
+            while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = json.substring(start, pos);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.isEmpty()) {
+                throw error("value expected");
+            }
+            return literal; // true, false or a number
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            return pos < json.length() ? json.charAt(pos) : '\0';
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("'" + c + "' expected");
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package bgu.spl.net.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bgu.spl.net.impl.stomp.StompFrameWriter;
+import bgu.spl.net.impl.stomp.StompServerFrame;
+import bgu.spl.net.journal.ChannelJournal;
+import bgu.spl.net.journal.Journal;
+import bgu.spl.net.srv.ConnectionHandler;
+import bgu.spl.net.srv.ConnectionsImpl;
+import bgu.spl.net.srv.EncodedMessage;
+import bgu.spl.net.srv.RetainLimits;
+
+/**
+ * Cost of journaling channel messages: a raw append to a memory mapped segment, and a channel message sent to
+ * 10 subscribers through ConnectionsImpl with and without a journal. The journal group commits every 10ms in the
+ * background, so the fsyncs are part of what is measured. Segments are 16MB and a channel keeps 64MB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final String CHANNEL = "/germany_spain";
+    private static final int SUBSCRIBERS = 10;
+
+    @Param({"256", "4096"})
+    public int bodySize;
+
+    private Path dir;
+    private Journal journal;
+    private ChannelJournal channelJournal;
+    private ConnectionsImpl<String> inMemory;
+    private ConnectionsImpl<String> journaled;
+    private EncodedMessage encoded;
+    private ByteBuffer payload;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole bh) throws IOException {
+        dir = Files.createTempDirectory("journal-benchmark");
+        journal = new Journal(dir, 16 << 20, 64L << 20, 0, 10);
+        channelJournal = journal.channel("/raw");
+
+        inMemory = new ConnectionsImpl<>(null, RetainLimits.NONE, null);
+        journaled = new ConnectionsImpl<>(null, RetainLimits.NONE, journal);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            subscribe(inMemory, i, bh);
+            subscribe(journaled, i, bh);
+        }
+
+        String body = Frames.body(bodySize);
+        encoded = StompFrameWriter.start(StompServerFrame.MESSAGE)
+                .header(StompFrameWriter.DESTINATION, CHANNEL)
+                .header(StompFrameWriter.MESSAGE_ID, "1")
+                .end(body);
+        payload = ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void subscribe(ConnectionsImpl<String> connections, int connectionId, Blackhole bh) {
+        connections.addConnection(connectionId, new ConsumingHandler(bh));
+        connections.subscribe(CHANNEL, connectionId, String.valueOf(connectionId));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return channelJournal.append(System.currentTimeMillis(), payload);
+    }
+
+    @Benchmark
+    public void sendInMemory() {
+        inMemory.sendEncoded(CHANNEL, encoded);
+    }
+
+    @Benchmark
+    public void sendJournaled() {
+        journaled.sendEncoded(CHANNEL, encoded);
+    }
+
+    /**
+     * Stands in for a connection, consuming what it is sent.
+     */
+    private static final class ConsumingHandler implements ConnectionHandler<String> {
+        private final Blackhole bh;
+
+        ConsumingHandler(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void send(String msg) {
+            bh.consume(msg);
+        }
+
+        @Override
+        public void sendEncoded(EncodedMessage msg) {
+            bh.consume(msg);
+        }
+
+        @Override
+        public void sendEncodedDirect(EncodedMessage msg) {
+            bh.consume(msg);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
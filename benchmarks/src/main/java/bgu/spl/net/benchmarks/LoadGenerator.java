@@ -0,0 +1,370 @@
+package bgu.spl.net.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.net.metrics.Histogram;
+
+/**
+ * Simulates many users of a running STOMP server from a single selector thread: every user logs in, joins a game
+ * channel and reports the events of a game events file as SEND frames, at a fixed total rate.
+ * Every report carries the time it was sent, so each delivered MESSAGE gives an end to end latency.
+ *
+ * Usage: LoadGenerator host port users games rate seconds [events file]
+ *   users: simulated users, spread evenly over the games
+ *   games: game channels, each gets every report of its users
+ *   rate: SEND frames per second over all users
+ *   e.g. java -cp benchmarks/target/benchmarks.jar bgu.spl.net.benchmarks.LoadGenerator 127.0.0.1 7777 2000 20 5000 30
+ *
+ * Logins are written to the SQL server, so data/sql_server.py must be running next to the server.
+ * Every user is a connection, raise ulimit -n accordingly.
+ */
+public class LoadGenerator {
+
+    private static final String DEFAULT_EVENTS = "client/data/events1.json";
+    private static final String SENT_KEY = "sent";
+    private static final byte[] SENT_ROW = ("\n" + SENT_KEY + ":").getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MAX_PENDING_CONNECTS = 256;
+    private static final int MAX_QUEUED_BYTES = 1 << 20; //a user that can't write this out skips its turns
+    private static final long DRAIN_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final String host;
+    private final int port;
+    private final int games;
+    private final double rate;
+    private final long runNanos;
+    private final GameEvents events;
+    private final User[] users;
+    private final Selector selector;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Histogram latency = new Histogram();
+    private long sent = 0;
+    private long delivered = 0;
+    private long errors = 0;
+    private int opened = 0;
+    private int connecting = 0;
+    private int ready = 0;
+
+    private LoadGenerator(String host, int port, int users, int games, double rate, int seconds, GameEvents events) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.games = games;
+        this.rate = rate;
+        this.runNanos = TimeUnit.SECONDS.toNanos(seconds);
+        this.events = events;
+        this.users = new User[users];
+        this.selector = Selector.open();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 6) {
+            System.out.println("Usage: LoadGenerator <host> <port> <users> <games> <SEND frames per second> <seconds> [events file]");
+            return;
+        }
+        GameEvents events = GameEvents.read(args.length > 6 ? args[6] : DEFAULT_EVENTS);
+        LoadGenerator generator = new LoadGenerator(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), Double.parseDouble(args[4]), Integer.parseInt(args[5]), events);
+        generator.run();
+    }
+
+    private void run() throws IOException {
+        long start = System.nanoTime();
+        while (ready < users.length) {
+            openConnections();
+            poll();
+            if (errors > 0) {
+                System.out.println("Aborting, " + errors + " users failed to log in");
+                return;
+            }
+        }
+        System.out.printf("%d users logged in and joined %d games in %d ms%n",
+                users.length, games, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        start = System.nanoTime();
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        long lastSent = 0;
+        long lastDelivered = 0;
+        int next = 0;
+        long turns = 0;
+        long now;
+        while ((now = System.nanoTime()) - start < runNanos) {
+            long due = (long) (rate * (now - start) / 1e9);
+            // after a stall catch up gradually, not all at once
+            for (long burst = 0; turns < due && burst < Math.max(1, rate / 100); burst++, turns++) {
+                User user = users[next];
+                next = (next + 1) % users.length;
+                if (user.queuedBytes() < MAX_QUEUED_BYTES) {
+                    user.report();
+                } else {
+                    user.skipped++; //the user is behind on its writes
+                }
+            }
+            poll();
+            if (now >= nextReport) {
+                System.out.printf("  %3ds sent=%d/s delivered=%d/s p99=%.2fms%n",
+                        TimeUnit.NANOSECONDS.toSeconds(now - start), sent - lastSent, delivered - lastDelivered,
+                        latency.getValueAtPercentile(99) / 1e6);
+                lastSent = sent;
+                lastDelivered = delivered;
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+        long sendNanos = System.nanoTime() - start;
+
+        // wait for the reports still on their way
+        long drainStart = System.nanoTime();
+        long expected = expectedDeliveries();
+        while (delivered < expected && System.nanoTime() - drainStart < DRAIN_NANOS) {
+            poll();
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        printReport(sendNanos, totalNanos, expected);
+        for (User user : users) {
+            user.channel.close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return the MESSAGE frames the sent reports should produce - every subscriber of the game gets each one
+     */
+    private long expectedDeliveries() {
+        long expected = 0;
+        for (User user : users) {
+            expected += user.reportsSent * subscribersOf(user.game);
+        }
+        return expected;
+    }
+
+    private int subscribersOf(int game) {
+        return users.length / games + (game < users.length % games ? 1 : 0);
+    }
+
+    private void printReport(long sendNanos, long totalNanos, long expected) {
+        long skipped = 0;
+        for (User user : users) {
+            skipped += user.skipped;
+        }
+        double seconds = sendNanos / 1e9;
+        System.out.printf("users=%d games=%d target rate=%.0f/s%n", users.length, games, rate);
+        System.out.printf("  SEND: %d (%.0f/s), skipped by users behind on writes: %d%n", sent, sent / seconds, skipped);
+        System.out.printf("  MESSAGE: %d of %d expected (%.0f/s)%n", delivered, expected, delivered / (totalNanos / 1e9));
+        System.out.printf("  latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(90) / 1e6,
+                latency.getValueAtPercentile(99) / 1e6, latency.getValueAtPercentile(99.9) / 1e6, latency.getMax() / 1e6);
+        if (errors > 0) {
+            System.out.println("  ERROR frames: " + errors);
+        }
+    }
+
+    private void openConnections() throws IOException {
+        while (opened < users.length && connecting < MAX_PENDING_CONNECTS) {
+            int id = opened++;
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            User user = new User(id, channel, id % games);
+            users[id] = user;
+            if (channel.connect(new InetSocketAddress(host, port))) {
+                user.key = channel.register(selector, SelectionKey.OP_READ, user);
+                user.login();
+            } else {
+                user.key = channel.register(selector, SelectionKey.OP_CONNECT, user);
+                connecting++;
+            }
+        }
+    }
+
+    private void poll() throws IOException {
+        selector.select(1);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            User user = (User) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    user.channel.finishConnect();
+                    connecting--;
+                    key.interestOps(SelectionKey.OP_READ);
+                    user.login();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    user.flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    user.read();
+                }
+            } catch (IOException e) {
+                System.out.println("user " + user.id + ": " + e);
+                errors++;
+                key.cancel();
+                user.channel.close();
+            }
+        }
+    }
+
+    /**
+     * @return the value of the sent row of the frame, or -1 if there is none
+     */
+    private static long sentTime(byte[] frame, int length) {
+        outer:
+        for (int i = 0; i + SENT_ROW.length <= length; i++) {
+            for (int j = 0; j < SENT_ROW.length; j++) {
+                if (frame[i + j] != SENT_ROW[j]) {
+                    continue outer;
+                }
+            }
+            long value = 0;
+            for (int k = i + SENT_ROW.length; k < length && frame[k] >= '0' && frame[k] <= '9'; k++) {
+                value = value * 10 + (frame[k] - '0');
+            }
+            return value;
+        }
+        return -1;
+    }
+
+    /**
+     * One simulated user and its connection.
+     */
+    private final class User {
+        final int id;
+        final SocketChannel channel;
+        final int game;
+        final String name;
+        final String destination;
+        SelectionKey key;
+
+        final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        long queued = 0;
+        byte[] readBuffer = new byte[1 << 13];
+        int readLength = 0;
+        final ByteBuffer socketBuffer = ByteBuffer.allocate(1 << 16);
+
+        boolean loggedIn = false;
+        int nextEvent = 0;
+        long reportsSent = 0;
+        long skipped = 0;
+
+        User(int id, SocketChannel channel, int game) {
+            this.id = id;
+            this.channel = channel;
+            this.game = game;
+            this.name = "load" + id + "_" + runId;
+            this.destination = games == 1 ? events.getChannel() : events.getChannel() + "_" + game;
+        }
+
+        void login() throws IOException {
+            write("CONNECT\naccept-version:1.2\nhost:stomp.cs.bgu.ac.il\nlogin:" + name + "\npasscode:pw\n\n\u0000");
+        }
+
+        void report() throws IOException {
+            String body = events.body(nextEvent, name, SENT_KEY, System.nanoTime());
+            nextEvent = (nextEvent + 1) % events.size();
+            write("SEND\ndestination:" + destination + "\n\n" + body + "\u0000");
+            reportsSent++;
+            sent++;
+        }
+
+        long queuedBytes() {
+            return queued;
+        }
+
+        void write(String frame) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(frame.getBytes(StandardCharsets.UTF_8));
+            if (writeQueue.isEmpty()) {
+                channel.write(bytes);
+                if (!bytes.hasRemaining()) {
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            writeQueue.add(bytes);
+            queued += bytes.remaining();
+        }
+
+        void flush() throws IOException {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer head = writeQueue.peek();
+                int before = head.remaining();
+                channel.write(head);
+                queued -= before - head.remaining();
+                if (head.hasRemaining()) {
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void read() throws IOException {
+            socketBuffer.clear();
+            int count = channel.read(socketBuffer);
+            if (count < 0) {
+                throw new IOException("connection closed by the server");
+            }
+            socketBuffer.flip();
+            while (socketBuffer.hasRemaining()) {
+                byte b = socketBuffer.get();
+                if (b == 0) {
+                    onFrame();
+                    readLength = 0;
+                } else {
+                    if (readLength == readBuffer.length) {
+                        readBuffer = Arrays.copyOf(readBuffer, readLength * 2);
+                    }
+                    readBuffer[readLength++] = b;
+                }
+            }
+        }
+
+        private void onFrame() throws IOException {
+            if (startsWith("MESSAGE")) {
+                long sentAt = sentTime(readBuffer, readLength);
+                if (sentAt > 0) {
+                    latency.record(System.nanoTime() - sentAt);
+                }
+                delivered++;
+            } else if (startsWith("CONNECTED")) {
+                write("SUBSCRIBE\ndestination:" + destination + "\nid:1\nreceipt:1\n\n\u0000");
+            } else if (startsWith("RECEIPT") && !loggedIn) {
+                loggedIn = true;
+                ready++;
+            } else if (startsWith("ERROR")) {
+                errors++;
+                if (errors == 1) {
+                    System.out.println("user " + id + " got:\n" + new String(readBuffer, 0, readLength, StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        private boolean startsWith(String command) {
+            int start = 0;
+            while (start < readLength && (readBuffer[start] == '\n' || readBuffer[start] == '\r')) {
+                start++; //heart-beat newlines between frames
+            }
+            if (readLength - start < command.length()) {
+                return false;
+            }
+            for (int i = 0; i < command.length(); i++) {
+                if (readBuffer[start + i] != command.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
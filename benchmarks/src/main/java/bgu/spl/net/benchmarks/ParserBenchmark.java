@@ -0,0 +1,78 @@
+package bgu.spl.net.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bgu.spl.net.impl.stomp.StompFrame;
+import bgu.spl.net.impl.stomp.StompFrameParser;
+
+/**
+ * Cost of parsing one received frame and reading what the protocol reads from it,
+ * for a small control frame and for SEND frames with large bodies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"SUBSCRIBE", "SEND_1K", "SEND_64K"})
+    public String frame;
+
+    private String message;
+
+    @Setup
+    public void setup() {
+        switch (frame) {
+            case "SUBSCRIBE":
+                message = "SUBSCRIBE\ndestination:/germany_spain\nid:17\nreceipt:73\n\n";
+                break;
+            case "SEND_1K":
+                message = strip(Frames.send("/germany_spain", Frames.body(1 << 10)));
+                break;
+            default:
+                message = strip(Frames.send("/germany_spain", Frames.body(1 << 16)));
+        }
+    }
+
+    private static String strip(String frame) {
+        return frame.substring(0, frame.length() - 1); //the decoder drops the NUL
+    }
+
+    @Benchmark
+    public void stringSplit(Blackhole bh) {
+        StompFrameParser parsed = StompFrameParser.parse(message);
+        bh.consume(parsed.getCommand());
+        bh.consume(parsed.getHeaderValue("destination"));
+        bh.consume(parsed.hasHeader("receipt"));
+        bh.consume(parsed.getBody());
+    }
+
+    @Benchmark
+    public String stringSplitToString() {
+        return StompFrameParser.parse(message).toString();
+    }
+
+    @Benchmark
+    public void offsets(Blackhole bh) {
+        StompFrame parsed = StompFrame.parse(message);
+        bh.consume(parsed.getCommand());
+        bh.consume(parsed.getHeaderValue("destination"));
+        bh.consume(parsed.hasHeader("receipt"));
+        bh.consume(parsed.getBody());
+    }
+}
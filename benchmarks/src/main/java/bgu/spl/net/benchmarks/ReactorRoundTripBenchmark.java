@@ -0,0 +1,121 @@
+package bgu.spl.net.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.net.impl.stomp.StompMessageEncoderDecoder;
+import bgu.spl.net.impl.stomp.StompMessagingProtocolImpl;
+import bgu.spl.net.srv.Server;
+
+/**
+ * End to end SEND -> MESSAGE round trip of one client through the reactor over loopback: decoding, parsing,
+ * the actor pool, encoding and the selector writing it back.
+ *
+ * The client subscribes without logging in, so no SQL server is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReactorRoundTripBenchmark {
+
+    private static final String CHANNEL = "/germany_spain";
+
+    @Param({"64", "4096"})
+    public int bodySize;
+
+    private Server<String> server;
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    private byte[] send;
+    private final byte[] readBuffer = new byte[1 << 16];
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        server = Server.reactor(Runtime.getRuntime().availableProcessors(), port,
+                StompMessagingProtocolImpl::new, StompMessageEncoderDecoder::new);
+        Thread serving = new Thread(server::serve, "server");
+        serving.setDaemon(true);
+        serving.start();
+
+        socket = connect(port);
+        socket.setTcpNoDelay(true);
+        out = socket.getOutputStream();
+        in = socket.getInputStream();
+
+        out.write(("SUBSCRIBE\ndestination:" + CHANNEL + "\nid:1\nreceipt:1\n\n\u0000").getBytes(StandardCharsets.UTF_8));
+        readFrame();
+        // no receipt, so the MESSAGE is the only answer
+        send = ("SEND\ndestination:" + CHANNEL + "\n\n" + Frames.body(bodySize) + "\u0000").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Socket connect(int port) throws InterruptedException {
+        while (true) {
+            try {
+                return new Socket("127.0.0.1", port);
+            } catch (IOException e) {
+                Thread.sleep(20); //the server is still starting
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        socket.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        out.write(send);
+        return readFrame();
+    }
+
+    /**
+     * Reads up to the NUL ending a frame. Frames are answers to a single request, so nothing follows the NUL.
+     * @return the frame length
+     */
+    private int readFrame() throws IOException {
+        int length = 0;
+        while (true) {
+            int read = in.read(readBuffer, length, readBuffer.length - length);
+            if (read < 0) {
+                throw new IOException("Connection closed");
+            }
+            for (int i = length; i < length + read; i++) {
+                if (readBuffer[i] == 0) {
+                    if (i != length + read - 1) {
+                        throw new IOException("Unexpected bytes after a frame");
+                    }
+                    return i;
+                }
+            }
+            length += read;
+        }
+    }
+}
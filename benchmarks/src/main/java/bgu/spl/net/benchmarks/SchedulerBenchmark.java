@@ -0,0 +1,121 @@
+package bgu.spl.net.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bgu.spl.net.srv.ActorMailbox;
+import bgu.spl.net.srv.ActorScheduler;
+import bgu.spl.net.srv.ActorThreadPool;
+
+/**
+ * Every benchmark thread plays a connection: it submits a burst of tasks to its own actor and waits until
+ * they ran, like the selector handing reads to the pool. ActorThreadPool vs. ActorScheduler at 1, 8 and 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    private static final int BURST = 16;
+
+    @State(Scope.Benchmark)
+    public static class Pools {
+        ActorThreadPool actorThreadPool;
+        ActorScheduler actorScheduler;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            int threads = Runtime.getRuntime().availableProcessors();
+            actorThreadPool = new ActorThreadPool(threads);
+            actorScheduler = new ActorScheduler(threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            actorThreadPool.shutdown();
+            actorScheduler.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        final Object actor = new Object();
+        final ActorMailbox mailbox = new ActorMailbox();
+        final AtomicInteger done = new AtomicInteger();
+        final Runnable task = done::incrementAndGet;
+    }
+
+    private static void burstActorThreadPool(Pools pools, Connection connection) {
+        connection.done.set(0);
+        for (int i = 0; i < BURST; i++) {
+            pools.actorThreadPool.submit(connection.actor, connection.task);
+        }
+        await(connection);
+    }
+
+    private static void burstActorScheduler(Pools pools, Connection connection) {
+        connection.done.set(0);
+        for (int i = 0; i < BURST; i++) {
+            pools.actorScheduler.submit(connection.mailbox, connection.task);
+        }
+        await(connection);
+    }
+
+    private static void await(Connection connection) {
+        while (connection.done.get() < BURST) {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void actorThreadPool1(Pools pools, Connection connection) {
+        burstActorThreadPool(pools, connection);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void actorScheduler1(Pools pools, Connection connection) {
+        burstActorScheduler(pools, connection);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void actorThreadPool8(Pools pools, Connection connection) {
+        burstActorThreadPool(pools, connection);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void actorScheduler8(Pools pools, Connection connection) {
+        burstActorScheduler(pools, connection);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void actorThreadPool64(Pools pools, Connection connection) {
+        burstActorThreadPool(pools, connection);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void actorScheduler64(Pools pools, Connection connection) {
+        burstActorScheduler(pools, connection);
+    }
+}
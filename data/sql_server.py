@@ -96,6 +96,19 @@ def execute_sql_query(sql_query: str) -> str:
         return f"ERROR: {e}"
 
 
+def execute_sql_script(sql_script: str) -> str:
+    """Runs a batch of statements sent as a single BEGIN; ...; COMMIT; script, all or nothing."""
+    conn = sqlite3.connect(DB_FILE)
+    try:
+        conn.executescript(sql_script)
+        return "SUCCESS"
+    except Exception as e:
+        conn.rollback()
+        return f"ERROR: {e}"
+    finally:
+        conn.close()
+
+
 def handle_client(client_socket: socket.socket, addr):
     print(f"[{SERVER_NAME}] Client connected from {addr}")
 
@@ -108,7 +121,9 @@ def handle_client(client_socket: socket.socket, addr):
             print(f"[{SERVER_NAME}] Received:")
             print(message)
             client_response = ""
-            if message.strip().upper().startswith("SELECT"):
+            if message.strip().upper().startswith("BEGIN"):
+                response = execute_sql_script(message)
+            elif message.strip().upper().startswith("SELECT"):
                 response = execute_sql_query(message)
             else:
                 response = execute_sql_command(message)
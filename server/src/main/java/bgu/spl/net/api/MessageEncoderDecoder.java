@@ -1,5 +1,10 @@
 package bgu.spl.net.api;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public interface MessageEncoderDecoder<T> {
 
     /**
@@ -11,6 +16,27 @@ public interface MessageEncoderDecoder<T> {
      */
     T decodeNextByte(byte nextByte);
 
+    /**
+     * decodes all the remaining bytes of the buffer, leaving it with no remaining bytes.
+     * implementations may override this to avoid a call per byte.
+     *
+     * @param buffer the bytes to consider for the currently decoded message
+     * @return the messages completed by these bytes in the order they were completed, possibly empty.
+     */
+    default List<T> decode(ByteBuffer buffer) {
+        List<T> messages = null;
+        while (buffer.hasRemaining()) {
+            T nextMessage = decodeNextByte(buffer.get());
+            if (nextMessage != null) {
+                if (messages == null) {
+                    messages = new ArrayList<>();
+                }
+                messages.add(nextMessage);
+            }
+        }
+        return messages == null ? Collections.emptyList() : messages;
+    }
+
     /**
      * encodes the given message to bytes array
      *
@@ -1,23 +1,39 @@
 package bgu.spl.net.impl.data;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
+import bgu.spl.net.metrics.Histogram;
+import bgu.spl.net.metrics.Metrics;
+
 public class Database {
+	private static final Histogram EXECUTE_LATENCY = Metrics.histogram("sql_execute_seconds",
+			"Time from queueing an SQL write until the SQL server answered it", Metrics.NANOS_PER_SECOND);
+	private static final Histogram QUERY_LATENCY = Metrics.histogram("sql_query_seconds",
+			"Time to answer an SQL query, including waiting for the queued writes", Metrics.NANOS_PER_SECOND);
+
 	private final ConcurrentHashMap<String, User> userMap;
 	private final ConcurrentHashMap<Integer, User> connectionsIdMap;
-	private final String sqlHost;
-	private final int sqlPort;
+	private final SqlConnectionPool sqlConnectionPool;
+	private final SqlPipeline sqlPipeline;
 
 	private Database() {
 		userMap = new ConcurrentHashMap<>();
 		connectionsIdMap = new ConcurrentHashMap<>();
-		// SQL server connection details
-		this.sqlHost = "127.0.0.1";
-		this.sqlPort = 7778;
+		// SQL server connection details. Up to -Dsql.pool.size connections, checked after -Dsql.pool.healthcheck ms idle.
+		// Connecting gives up after -Dsql.connect.timeout ms, waiting for a response after -Dsql.read.timeout ms
+		this.sqlConnectionPool = new SqlConnectionPool("127.0.0.1", 7778,
+				Integer.getInteger("sql.pool.size", 4), Long.getLong("sql.pool.healthcheck", 30000L),
+				Integer.getInteger("sql.connect.timeout", 3000), Integer.getInteger("sql.read.timeout", 30000));
+		// Writes are queued (-Dsql.queue.capacity) and sent in transactions of up to -Dsql.batch.max statements
+		this.sqlPipeline = new SqlPipeline(sqlConnectionPool,
+				Integer.getInteger("sql.queue.capacity", 10000), Integer.getInteger("sql.batch.max", 64));
+
+		Metrics.gauge("sql_queue_depth", "SQL writes waiting to be sent", sqlPipeline::getQueueDepth);
+		Metrics.counter("sql_batches_total", "Batches of SQL writes sent", sqlPipeline::getBatchCount);
+		Metrics.counter("sql_statements_total", "SQL statements sent", sqlPipeline::getStatementCount);
+		Metrics.gauge("sql_pool_open_connections", "Open connections to the SQL server", sqlConnectionPool::getOpenConnections);
+		Metrics.counter("sql_pool_failures_total", "Failed requests to the SQL server", sqlConnectionPool::getFailures);
 	}
 
 	public static Database getInstance() {
@@ -25,32 +41,51 @@ public class Database {
 	}
 
 	/**
-	 * Execute SQL query and return result
+	 * Queue SQL statement for execution, without waiting for it
+	 * @param sql SQL query string
+	 * @return Future of the result string from SQL server
+	 */
+	private CompletableFuture<String> executeSQL(String sql) {
+		long start = System.nanoTime();
+		CompletableFuture<String> result = sqlPipeline.submit(sql);
+		result.whenComplete((response, error) -> EXECUTE_LATENCY.recordSince(start));
+		return result;
+	}
+
+	/**
+	 * Execute SQL query on a pooled connection and return result. Waits for the queued statements first,
+	 * so the result includes them.
 	 * @param sql SQL query string
 	 * @return Result string from SQL server
 	 */
-	private String executeSQL(String sql) {
-		try (Socket socket = new Socket(sqlHost, sqlPort);
-			 PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-			 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-			
-			// Send SQL with null terminator
-			out.print(sql + '\0');
-			out.flush();
-			
-			// Read response until null terminator
-			StringBuilder response = new StringBuilder();
-			int ch;
-			while ((ch = in.read()) != -1 && ch != '\0') {
-				response.append((char) ch);
-			}
-			
-			return response.toString();
-			
-		} catch (Exception e) {
-			System.err.println("SQL Error: " + e.getMessage());
-			return "ERROR:" + e.getMessage();
-		}
+	private String querySQL(String sql) {
+		long start = System.nanoTime();
+		sqlPipeline.flush();
+		String result = sqlConnectionPool.execute(sql);
+		QUERY_LATENCY.recordSince(start);
+		return result;
+	}
+
+	/**
+	 * @return the pipeline executing SQL statements, for its queue depth and batch size metrics
+	 */
+	public SqlPipeline getSqlPipeline() {
+		return sqlPipeline;
+	}
+
+	/**
+	 * @return the connections to the SQL server, for pool metrics
+	 */
+	public SqlConnectionPool getSqlConnectionPool() {
+		return sqlConnectionPool;
+	}
+
+	/**
+	 * Executes all queued SQL statements and closes the connections to the SQL server.
+	 */
+	public void shutdown() {
+		sqlPipeline.close();
+		sqlConnectionPool.close();
 	}
 
 	/**
@@ -173,7 +208,7 @@ public class Database {
 		System.out.println("\n1. REGISTERED USERS:");
 		System.out.println(repeat("-", 80));
 		String usersSQL = "SELECT username, registration_date FROM users ORDER BY registration_date";
-		String usersResult = executeSQL(usersSQL);
+		String usersResult = querySQL(usersSQL);
 		if (usersResult.startsWith("SUCCESS")) {
 			String[] parts = usersResult.split("\\|");
 			if (parts.length > 1) {
@@ -189,7 +224,7 @@ public class Database {
 		System.out.println("\n2. LOGIN HISTORY:");
 		System.out.println(repeat("-", 80));
 		String loginSQL = "SELECT username, login_time, logout_time FROM login_history ORDER BY username, login_time DESC";
-		String loginResult = executeSQL(loginSQL);
+		String loginResult = querySQL(loginSQL);
 		if (loginResult.startsWith("SUCCESS")) {
 			String[] parts = loginResult.split("\\|");
 			if (parts.length > 1) {
@@ -214,7 +249,7 @@ public class Database {
 		System.out.println("\n3. FILE UPLOADS:");
 		System.out.println(repeat("-", 80));
 		String filesSQL = "SELECT username, filename, upload_time, game_channel FROM file_tracking ORDER BY username, upload_time DESC";
-		String filesResult = executeSQL(filesSQL);
+		String filesResult = querySQL(filesSQL);
 		if (filesResult.startsWith("SUCCESS")) {
 			String[] parts = filesResult.split("\\|");
 			if (parts.length > 1) {
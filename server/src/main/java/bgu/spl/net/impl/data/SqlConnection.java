@@ -0,0 +1,153 @@
+package bgu.spl.net.impl.data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A persistent connection to the SQL server. Requests and responses are NUL terminated UTF-8 strings.
+ * Not thread safe - used by one thread at a time through SqlConnectionPool.
+ */
+class SqlConnection implements Closeable {
+
+	private static final int READ_SIZE = 1 << 13;
+
+	private final Socket socket;
+	private final OutputStream out;
+	private final InputStream in;
+
+	// Bytes read from the socket, [readPos, readLimit) were not consumed yet
+	private final byte[] readBuffer = new byte[READ_SIZE];
+	private int readPos = 0;
+	private int readLimit = 0;
+	private byte[] response = new byte[READ_SIZE];
+
+	private long lastUsed = System.currentTimeMillis();
+	private boolean answered = false; //a response was read on this connection
+
+	/**
+	 * @param connectTimeoutMillis time to wait for the connection to be established, 0 to wait forever
+	 * @param readTimeoutMillis time to wait for (each part of) a response, 0 to wait forever
+	 * @throws SqlNotSentException if the SQL server could not be reached
+	 */
+	SqlConnection(String host, int port, int connectTimeoutMillis, int readTimeoutMillis) throws SqlNotSentException {
+		this.socket = new Socket();
+		try {
+			this.socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+			this.socket.setSoTimeout(readTimeoutMillis);
+			this.socket.setTcpNoDelay(true);
+			this.out = socket.getOutputStream();
+			this.in = socket.getInputStream();
+		} catch (IOException e) {
+			close();
+			throw new SqlNotSentException("Could not connect to SQL server: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Sends the request and waits for the response.
+	 * @param sql SQL query string
+	 * @return Result string from SQL server
+	 * @throws SqlNotSentException if writing the request failed, or the server had closed this connection while it
+	 *                             was idle - the server did not get the request
+	 * @throws IOException if reading the response failed or timed out, the server may have executed the request.
+	 *                     Either way the connection must not be used again.
+	 */
+	String execute(String sql) throws IOException {
+		byte[] request = sql.getBytes(StandardCharsets.UTF_8);
+		byte[] framed = Arrays.copyOf(request, request.length + 1); // NUL terminated
+		try {
+			out.write(framed);
+			out.flush();
+		} catch (IOException e) {
+			// the server only executes a request once it reads the NUL, the last byte written
+			throw new SqlNotSentException("Could not send to SQL server: " + e.getMessage(), e);
+		}
+
+		String result = readResponse();
+		lastUsed = System.currentTimeMillis();
+		answered = true;
+		return result;
+	}
+
+	/**
+	 * Reads until the NUL terminator, scanning whole reads instead of single characters.
+	 */
+	private String readResponse() throws IOException {
+		int len = 0;
+		boolean started = false; //a byte of the response was read
+		while (true) {
+			if (readPos == readLimit) {
+				readPos = 0;
+				readLimit = 0;
+				int read;
+				try {
+					read = in.read(readBuffer);
+				} catch (SocketException e) {
+					throw closed(started, e);
+				}
+				if (read < 0) {
+					throw closed(started, null);
+				}
+				readLimit = read;
+			}
+			started = true;
+
+			int end = readPos;
+			while (end < readLimit && readBuffer[end] != '\0') {
+				end++;
+			}
+
+			int count = end - readPos;
+			if (len + count > response.length) {
+				response = Arrays.copyOf(response, Math.max(response.length * 2, len + count));
+			}
+			System.arraycopy(readBuffer, readPos, response, len, count);
+			len += count;
+
+			if (end < readLimit) {
+				readPos = end + 1; // skip the NUL
+				return new String(response, 0, len, StandardCharsets.UTF_8);
+			}
+			readPos = readLimit;
+		}
+	}
+
+	/**
+	 * sql_server.py answers every request it reads, so a connection that was answered before and is closed without
+	 * a byte of the next response was dropped while idle: the request was written into a dead socket.
+	 * @param reset the error if the connection was reset rather than closed
+	 */
+	private IOException closed(boolean started, SocketException reset) {
+		if (answered && !started) {
+			return new SqlNotSentException("SQL server closed the idle connection", reset);
+		}
+		return reset != null ? reset : new EOFException("Connection to SQL server closed");
+	}
+
+	/**
+	 * @return milliseconds since the last successful request
+	 */
+	long idleMillis() {
+		return System.currentTimeMillis() - lastUsed;
+	}
+
+	boolean isOpen() {
+		return !socket.isClosed() && socket.isConnected() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+	}
+
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package bgu.spl.net.impl.data;
+
+import bgu.spl.net.log.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps up to size open connections to the SQL server and lends them to callers, so requests don't pay for a
+ * TCP handshake. A connection idle for longer than the health check interval is checked before it is used,
+ * and a request that could not be sent on a reused connection is retried once on a new one. A request that was
+ * sent is never retried, the server may have executed it.
+ */
+public class SqlConnectionPool implements Closeable {
+
+	private static final Logger LOG = Logger.get(SqlConnectionPool.class);
+
+	private static final String HEALTH_CHECK = "SELECT 1";
+
+	private final String host;
+	private final int port;
+	private final long healthCheckMillis;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<SqlConnection> idle = new ConcurrentLinkedDeque<>();
+	private volatile boolean closed = false;
+
+	// Metrics
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final AtomicLong connectionsCreated = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * @param host SQL server host
+	 * @param port SQL server port
+	 * @param size maximum number of connections, callers wait when all are in use
+	 * @param healthCheckMillis idle time after which a connection is checked before it is used
+	 */
+	public SqlConnectionPool(String host, int port, int size, long healthCheckMillis) {
+		this(host, port, size, healthCheckMillis, 0, 0);
+	}
+
+	/**
+	 * @param host SQL server host
+	 * @param port SQL server port
+	 * @param size maximum number of connections, callers wait when all are in use
+	 * @param healthCheckMillis idle time after which a connection is checked before it is used
+	 * @param connectTimeoutMillis time to wait for a new connection, 0 to wait forever
+	 * @param readTimeoutMillis time to wait for a response, 0 to wait forever. A connection that timed out is closed.
+	 */
+	public SqlConnectionPool(String host, int port, int size, long healthCheckMillis, int connectTimeoutMillis,
+							 int readTimeoutMillis) {
+		if (size < 1) {
+			throw new IllegalArgumentException("pool size must be positive");
+		}
+		this.host = host;
+		this.port = port;
+		this.healthCheckMillis = healthCheckMillis;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.permits = new Semaphore(size, true);
+	}
+
+	/**
+	 * Executes a request on a pooled connection, waiting for one if all are in use.
+	 * @param sql SQL query string
+	 * @return Result string from SQL server, "ERROR:..." if it could not be executed.
+	 */
+	public String execute(String sql) {
+		try {
+			return tryExecute(sql);
+		} catch (IOException e) {
+			LOG.warn("SQL Error: " + e.getMessage());
+			return "ERROR:" + e.getMessage();
+		}
+	}
+
+	/**
+	 * Executes a request on a pooled connection, waiting for one if all are in use.
+	 * @param sql SQL query string
+	 * @return Result string from SQL server
+	 * @throws IOException if the SQL server could not be reached
+	 */
+	public String tryExecute(String sql) throws IOException {
+		if (closed) {
+			throw new IOException("SQL connection pool is closed");
+		}
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a connection");
+		}
+
+		try {
+			SqlConnection connection = borrow();
+			boolean reused = connection != null;
+			try {
+				if (connection == null) {
+					connection = connect();
+				}
+				return executeAndRelease(connection, sql);
+			} catch (SqlNotSentException e) { // the failed connection was already discarded
+				if (!reused) {
+					throw e;
+				}
+				// the server may have dropped an idle connection - retry once on a new one
+				return executeAndRelease(connect(), sql);
+			}
+		} catch (IOException e) {
+			failures.incrementAndGet();
+			throw e;
+		} finally {
+			permits.release();
+		}
+	}
+
+	private String executeAndRelease(SqlConnection connection, String sql) throws IOException {
+		try {
+			String result = connection.execute(sql);
+			release(connection);
+			return result;
+		} catch (IOException e) {
+			discard(connection);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return a healthy idle connection, or null if there is none
+	 */
+	private SqlConnection borrow() {
+		SqlConnection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			if (isHealthy(connection)) {
+				return connection;
+			}
+			failures.incrementAndGet();
+			discard(connection);
+		}
+		return null;
+	}
+
+	private boolean isHealthy(SqlConnection connection) {
+		if (!connection.isOpen()) {
+			return false;
+		}
+		if (connection.idleMillis() < healthCheckMillis) {
+			return true;
+		}
+		try {
+			return connection.execute(HEALTH_CHECK).startsWith("SUCCESS");
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private SqlConnection connect() throws IOException {
+		SqlConnection connection = new SqlConnection(host, port, connectTimeoutMillis, readTimeoutMillis);
+		openConnections.incrementAndGet();
+		connectionsCreated.incrementAndGet();
+		return connection;
+	}
+
+	private void release(SqlConnection connection) {
+		if (closed) {
+			discard(connection);
+		} else {
+			idle.offerFirst(connection); // most recently used first, so spare connections go idle and get checked
+		}
+	}
+
+	private void discard(SqlConnection connection) {
+		if (connection != null) {
+			connection.close();
+			openConnections.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Closes the idle connections. Connections in use are closed when they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		SqlConnection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			discard(connection);
+		}
+	}
+
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	public long getConnectionsCreated() {
+		return connectionsCreated.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+}
@@ -0,0 +1,14 @@
+package bgu.spl.net.impl.data;
+
+import java.io.IOException;
+
+/**
+ * The request never reached the SQL server - connecting or writing it failed - so it is safe to send it again.
+ * Any other IOException may come after the server executed the request.
+ */
+class SqlNotSentException extends IOException {
+
+	SqlNotSentException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,269 @@
+package bgu.spl.net.impl.data;
+
+import bgu.spl.net.log.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind pipeline to the SQL server. Statements are queued and executed in order by a single writer thread,
+ * which groups consecutive writes into one transaction over a pooled connection.
+ * Callers that need the result wait on the returned future.
+ */
+public class SqlPipeline implements Closeable {
+
+	private static final Logger LOG = Logger.get(SqlPipeline.class);
+
+	// Backoff between attempts while the SQL server is unreachable, about 6 seconds in total
+	private static final long RETRY_MIN_MILLIS = 50;
+	private static final int MAX_ATTEMPTS = 8;
+
+	private final SqlConnectionPool connectionPool;
+	private final int maxBatchSize;
+
+	private final BlockingQueue<Statement> queue;
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	// Metrics
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong statements = new AtomicLong();
+	private volatile int lastBatchSize = 0;
+	private volatile int largestBatchSize = 0;
+
+	/**
+	 * @param connectionPool connections to the SQL server
+	 * @param capacity maximum number of queued statements, callers block when it is reached
+	 * @param maxBatchSize maximum number of statements written in a single transaction
+	 */
+	public SqlPipeline(SqlConnectionPool connectionPool, int capacity, int maxBatchSize) {
+		if (capacity < 1 || maxBatchSize < 1) {
+			throw new IllegalArgumentException("capacity and batch size must be positive");
+		}
+		this.connectionPool = connectionPool;
+		this.maxBatchSize = maxBatchSize;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.writer = new Thread(this::writeLoop, "sql-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Queues a statement. Blocks while the queue is full.
+	 * @param sql
+	 * @return future of the SQL server response, "ERROR:..." if it could not be executed.
+	 */
+	public CompletableFuture<String> submit(String sql) {
+		return enqueue(new Statement(sql));
+	}
+
+	/**
+	 * Waits until every statement queued before this call was executed.
+	 */
+	public void flush() {
+		enqueue(new Statement(null)).join();
+	}
+
+	private CompletableFuture<String> enqueue(Statement statement) {
+		if (closed) {
+			statement.result.complete("ERROR:SQL pipeline is closed");
+			return statement.result;
+		}
+		try {
+			queue.put(statement);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			statement.result.complete("ERROR:Interrupted");
+		}
+		return statement.result;
+	}
+
+	/**
+	 * Stops accepting statements and executes the queued ones. The connection pool is left open.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// Statements that raced with closing
+		Statement late;
+		while ((late = queue.poll()) != null) {
+			late.result.complete("ERROR:SQL pipeline is closed");
+		}
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	public long getStatementCount() {
+		return statements.get();
+	}
+
+	public int getLastBatchSize() {
+		return lastBatchSize;
+	}
+
+	public int getLargestBatchSize() {
+		return largestBatchSize;
+	}
+
+	public double getAverageBatchSize() {
+		long count = batches.get();
+		return count == 0 ? 0 : (double) statements.get() / count;
+	}
+
+	private void writeLoop() {
+		List<Statement> batch = new ArrayList<>(maxBatchSize);
+		while (!closed || !queue.isEmpty()) {
+			try {
+				Statement first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatchSize - 1);
+				executeAll(batch);
+			} catch (InterruptedException e) {
+				// keep draining until closed
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Executes the statements in order. Consecutive writes are sent as one transaction,
+	 * queries are sent on their own since their result is needed.
+	 */
+	private void executeAll(List<Statement> batch) {
+		int start = 0;
+		for (int i = 0; i <= batch.size(); i++) {
+			Statement statement = i < batch.size() ? batch.get(i) : null;
+			if (statement == null || statement.isFlush() || statement.isQuery()) {
+				executeWrites(batch.subList(start, i));
+				if (statement != null) {
+					statement.result.complete(statement.isFlush() ? "SUCCESS" : executeOrError(statement.sql));
+				}
+				start = i + 1;
+			}
+		}
+	}
+
+	private void executeWrites(List<Statement> writes) {
+		if (writes.isEmpty()) {
+			return;
+		}
+		batches.incrementAndGet();
+		statements.addAndGet(writes.size());
+		lastBatchSize = writes.size();
+		if (writes.size() > largestBatchSize) {
+			largestBatchSize = writes.size();
+		}
+
+		if (writes.size() == 1) {
+			writes.get(0).result.complete(executeOrError(writes.get(0).sql));
+			return;
+		}
+
+		StringBuilder script = new StringBuilder("BEGIN;\n");
+		for (Statement statement : writes) {
+			script.append(statement.sql).append(";\n");
+		}
+		script.append("COMMIT;");
+
+		String response;
+		try {
+			response = execute(script.toString());
+		} catch (IOException e) {
+			for (Statement statement : writes) {
+				statement.result.complete("ERROR:" + e.getMessage());
+			}
+			return;
+		}
+
+		if (response.startsWith("SUCCESS")) {
+			for (Statement statement : writes) {
+				statement.result.complete(response);
+			}
+		}
+		else {
+			// The transaction was rolled back - run the statements one by one so each gets its own result
+			for (Statement statement : writes) {
+				statement.result.complete(executeOrError(statement.sql));
+			}
+		}
+	}
+
+	private String executeOrError(String sql) {
+		try {
+			return execute(sql);
+		} catch (IOException e) {
+			return "ERROR:" + e.getMessage();
+		}
+	}
+
+	/**
+	 * Executes the request, retrying with exponential backoff while the SQL server can't be reached,
+	 * so queued writes survive a restart of the SQL server. Gives up after MAX_ATTEMPTS, or right away once closed
+	 * or interrupted. A request that was sent is never sent again, even if its response was lost - the server may
+	 * have committed it.
+	 * @return Result string from SQL server
+	 * @throws IOException if the SQL server could not be reached
+	 */
+	private String execute(String sql) throws IOException {
+		long backoff = RETRY_MIN_MILLIS;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return connectionPool.tryExecute(sql);
+			} catch (SqlNotSentException e) {
+				LOG.warn("SQL Error: " + e.getMessage());
+				if (closed || attempt == MAX_ATTEMPTS) {
+					throw e;
+				}
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			} catch (IOException e) {
+				LOG.warn("SQL Error: " + e.getMessage());
+				throw e;
+			}
+			backoff *= 2;
+		}
+	}
+
+	private static class Statement {
+		final String sql; // null for a flush marker
+		final CompletableFuture<String> result = new CompletableFuture<>();
+
+		Statement(String sql) {
+			this.sql = sql;
+		}
+
+		boolean isFlush() {
+			return sql == null;
+		}
+
+		boolean isQuery() {
+			return sql.trim().toUpperCase().startsWith("SELECT");
+		}
+	}
+}
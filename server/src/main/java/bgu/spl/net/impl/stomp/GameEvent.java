@@ -0,0 +1,140 @@
+package bgu.spl.net.impl.stomp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A game event report, parsed from the body of a SEND the way the client parses it:
+ * "key:value" rows for the user, teams, event name and time, then the "general game updates:",
+ * "team a updates:" and "team b updates:" sections of rows, then "description:" followed by free text.
+ * Updates are kept as flat key, value pairs in the order they were reported.
+ */
+/*package*/ final class GameEvent {
+
+    // Events without a "before halftime" update are in the first half until 45 minutes
+    private static final int HALFTIME_SECONDS = 2700;
+
+    String teamA = "";
+    String teamB = "";
+    String name = "";
+    int time = 0;
+    final List<String> generalUpdates = new ArrayList<>(); //key, value, key, value...
+    final List<String> teamAUpdates = new ArrayList<>();
+    final List<String> teamBUpdates = new ArrayList<>();
+    String description = "";
+
+    private GameEvent() {
+    }
+
+    /**
+     * @return the event, or null if the body is not a game event report
+     */
+    static GameEvent parse(String body) {
+        GameEvent event = new GameEvent();
+        List<String> section = null;
+        StringBuilder description = null;
+        boolean hasName = false;
+
+        int start = 0;
+        while (start < body.length()) {
+            int end = body.indexOf('\n', start);
+            if (end < 0) {
+                end = body.length();
+            }
+            String line = body.substring(start, end);
+            start = end + 1;
+
+            if (description != null) {
+                description.append(line).append('\n');
+                continue;
+            }
+            switch (line) {
+                case "general game updates:":
+                    section = event.generalUpdates;
+                    continue;
+                case "team a updates:":
+                    section = event.teamAUpdates;
+                    continue;
+                case "team b updates:":
+                    section = event.teamBUpdates;
+                    continue;
+                case "description:":
+                    description = new StringBuilder();
+                    continue;
+                default:
+                    break;
+            }
+
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon);
+            String value = line.substring(colon + 1);
+            if (section != null) {
+                section.add(key);
+                section.add(value);
+                continue;
+            }
+            switch (key) {
+                case "team a":
+                    event.teamA = value;
+                    break;
+                case "team b":
+                    event.teamB = value;
+                    break;
+                case "event name":
+                    event.name = value;
+                    hasName = true;
+                    break;
+                case "time":
+                    try {
+                        event.time = Integer.parseInt(value.trim());
+                    } catch (NumberFormatException e) {
+                        event.time = 0;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (!hasName) {
+            return null;
+        }
+        if (description != null) {
+            event.description = description.toString();
+        }
+        return event;
+    }
+
+    /**
+     * @return true if the event happened before halftime - as reported, or by its time if not reported
+     */
+    boolean isBeforeHalftime() {
+        for (int i = 0; i < generalUpdates.size(); i += 2) {
+            if (generalUpdates.get(i).equals("before halftime")) {
+                return generalUpdates.get(i + 1).equals("true");
+            }
+        }
+        return time < HALFTIME_SECONDS;
+    }
+
+    /**
+     * @return true if the event reports the game is no longer active
+     */
+    boolean isFinal() {
+        for (int i = 0; i < generalUpdates.size(); i += 2) {
+            if (generalUpdates.get(i).equals("active")) {
+                return generalUpdates.get(i + 1).equals("false");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a key that orders events the way summaries list them: by half, then by time
+     */
+    long order() {
+        return (isBeforeHalftime() ? 0L : 1L << 40) + time;
+    }
+}
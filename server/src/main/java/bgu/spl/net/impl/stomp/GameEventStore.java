@@ -0,0 +1,124 @@
+package bgu.spl.net.impl.stomp;
+
+import bgu.spl.net.log.Logger;
+import bgu.spl.net.metrics.Metrics;
+import bgu.spl.net.srv.EncodedMessage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MESSAGE frames of every game's event reports, indexed by game channel and event time, so a client can ask
+ * for the events of a game in a time range - for example after it reconnected.
+ *
+ * The frames stored by all games take about -Dstomp.events.memory.bytes at most (64MB by default, 0 stores nothing).
+ * When a report does not fit, whole games are evicted: finished games first (those that reported "active:false"),
+ * then the least recently updated ones. The game being reported to is never evicted for its own report;
+ * if it alone exceeds the budget, the report is not stored.
+ */
+/*package*/ final class GameEventStore {
+
+    private static final Logger LOG = Logger.get(GameEventStore.class);
+
+    private final long budget = Long.getLong("stomp.events.memory.bytes", 64L << 20);
+
+    private final ConcurrentMap<String, GameTimeline> games = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong(); //orders the games by their last update
+    private final AtomicLong evicted = new AtomicLong();
+
+    private GameEventStore() {
+        Metrics.gauge("stomp_event_store_bytes", "Bytes of game event frames stored for range queries", bytes::get);
+        Metrics.counter("stomp_event_store_evicted_games_total", "Games evicted from the event store", evicted::get);
+    }
+
+    static GameEventStore getInstance() {
+        return Instance.instance;
+    }
+
+    /**
+     * Stores the frame of a game event report.
+     * @param game the channel it was sent to
+     * @param event the parsed report
+     * @param frame the MESSAGE frame sent to the channel, without a subscription header or the sender's receipt-id
+     */
+    void add(String game, GameEvent event, EncodedMessage frame) {
+        if (frame.length() > budget) {
+            return;
+        }
+        while (bytes.get() + frame.length() > budget) {
+            if (!evictOne(game)) {
+                return;
+            }
+        }
+        while (true) {
+            GameTimeline timeline = games.computeIfAbsent(game, k -> new GameTimeline());
+            synchronized (timeline) {
+                if (games.get(game) != timeline) {
+                    continue; //evicted meanwhile
+                }
+                bytes.addAndGet(timeline.add(event.time, frame, event.isFinal()));
+                timeline.lastUpdate = updates.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the frames of the game's reports with from <= time <= to, in time order
+     */
+    List<EncodedMessage> range(String game, int from, int to) {
+        GameTimeline timeline = games.get(game);
+        if (timeline == null) {
+            return Collections.emptyList();
+        }
+        synchronized (timeline) {
+            return timeline.range(from, to);
+        }
+    }
+
+    /**
+     * Evicts the finished game, or else the game, updated least recently - other than the given one.
+     * @return false if there was nothing to evict
+     */
+    private synchronized boolean evictOne(String keep) {
+        String victim = null;
+        boolean victimFinished = false;
+        long victimUpdate = Long.MAX_VALUE;
+        for (Map.Entry<String, GameTimeline> entry : games.entrySet()) {
+            GameTimeline timeline = entry.getValue();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            synchronized (timeline) {
+                boolean finished = timeline.isFinished();
+                if ((finished && !victimFinished) || (finished == victimFinished && timeline.lastUpdate < victimUpdate)) {
+                    victim = entry.getKey();
+                    victimFinished = finished;
+                    victimUpdate = timeline.lastUpdate;
+                }
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        GameTimeline timeline = games.get(victim);
+        synchronized (timeline) {
+            games.remove(victim);
+            bytes.addAndGet(-timeline.bytes());
+        }
+        evicted.incrementAndGet();
+        String name = victim;
+        boolean finished = victimFinished;
+        LOG.debug(() -> "Evicted the events of " + name + (finished ? " (finished)" : ""));
+        return true;
+    }
+
+    private static class Instance {
+        static GameEventStore instance = new GameEventStore();
+    }
+}
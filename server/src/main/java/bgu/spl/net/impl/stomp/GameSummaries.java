@@ -0,0 +1,111 @@
+package bgu.spl.net.impl.stomp;
+
+import bgu.spl.net.metrics.Metrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Summaries of every (game, reporting user) pair, built from the game event reports sent to the game's channel,
+ * so a client can ask the server for a summary instead of deriving it from the events it received.
+ * The reporting user is the logged in sender of the report, whatever its body says.
+ *
+ * At most -Dstomp.summaries.max summaries are kept (10000 by default). Beyond that the summary of a finished game
+ * (one that reported "active:false") is evicted first, then the least recently updated one.
+ * Finished and active summaries are kept in two maps in the order they were last updated, so eviction takes the
+ * first entry instead of searching. Both are guarded by the GameSummaries.
+ */
+/*package*/ final class GameSummaries {
+
+    private final int maxSummaries;
+
+    private final LinkedHashMap<String, GameSummary> active = new LinkedHashMap<>();
+    private final LinkedHashMap<String, GameSummary> finished = new LinkedHashMap<>();
+    private final LongAdder events = new LongAdder();
+    private final AtomicLong evicted = new AtomicLong();
+
+    private GameSummaries() {
+        this(Integer.getInteger("stomp.summaries.max", 10000));
+    }
+
+    /*package*/ GameSummaries(int maxSummaries) {
+        this.maxSummaries = maxSummaries;
+        Metrics.gauge("stomp_game_summaries", "(game, user) pairs with a summary", this::size);
+        Metrics.counter("stomp_game_events_total", "Game event reports added to summaries", events::sum);
+        Metrics.counter("stomp_game_summaries_evicted_total", "Summaries evicted to stay within the limit", evicted::get);
+    }
+
+    static GameSummaries getInstance() {
+        return Instance.instance;
+    }
+
+    /**
+     * Adds the report to the summary of its game and user.
+     * @param game the channel it was sent to
+     * @param event the parsed report
+     * @param sender the logged in user who sent it, null if it did not log in - then nothing is recorded
+     */
+    void record(String game, GameEvent event, String sender) {
+        if (sender == null || maxSummaries <= 0) {
+            return;
+        }
+        String key = key(game, sender);
+        synchronized (this) {
+            // taken out and put back last, as the most recently updated
+            GameSummary summary = finished.remove(key);
+            if (summary == null) {
+                summary = active.remove(key);
+            }
+            if (summary == null) {
+                if (finished.size() + active.size() >= maxSummaries) {
+                    evictOne();
+                }
+                summary = new GameSummary();
+            }
+            summary.add(event);
+            (summary.isFinished() ? finished : active).put(key, summary);
+        }
+        events.increment();
+    }
+
+    /**
+     * @return the summary of what the user reported about the game, in the format of the client's summary command
+     */
+    String summarize(String game, String user) {
+        String key = key(game, user);
+        GameSummary summary;
+        synchronized (this) {
+            summary = finished.containsKey(key) ? finished.get(key) : active.get(key);
+        }
+        if (summary == null) {
+            return "No updates found for " + game + " from user " + user;
+        }
+        return summary.render();
+    }
+
+    synchronized long size() {
+        return finished.size() + active.size();
+    }
+
+    /**
+     * Evicts the least recently updated summary of a finished game, or else of an active one.
+     */
+    private void evictOne() {
+        Iterator<GameSummary> victims = (finished.isEmpty() ? active : finished).values().iterator();
+        if (victims.hasNext()) {
+            victims.next();
+            victims.remove();
+            evicted.incrementAndGet();
+        }
+    }
+
+    private static String key(String game, String user) {
+        return game + '\n' + user; //header values have no new lines
+    }
+
+    private static class Instance {
+        static GameSummaries instance = new GameSummaries();
+    }
+}
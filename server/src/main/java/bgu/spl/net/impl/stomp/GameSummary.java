@@ -0,0 +1,115 @@
+package bgu.spl.net.impl.stomp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What one user reported about one game, updated as each report arrives.
+ * A stat holds the value of the latest event (by half, then time) that updated it, so an update costs one map
+ * write per reported stat no matter the arrival order. The event log is kept sorted the same way - reports
+ * normally arrive in order and are appended. Thread safe.
+ */
+/*package*/ final class GameSummary {
+
+    private String teamA = null;
+    private String teamB = null;
+    private final Map<String, Stat> generalStats = new HashMap<>();
+    private final Map<String, Stat> teamAStats = new HashMap<>();
+    private final Map<String, Stat> teamBStats = new HashMap<>();
+    private final List<Report> reports = new ArrayList<>();
+    private boolean finished = false;
+
+    synchronized void add(GameEvent event) {
+        if (teamA == null) {
+            teamA = event.teamA;
+            teamB = event.teamB;
+        }
+        long order = event.order();
+        update(generalStats, event.generalUpdates, order);
+        update(teamAStats, event.teamAUpdates, order);
+        update(teamBStats, event.teamBUpdates, order);
+
+        // after the reports of the same order, like a stable sort
+        int index = reports.size();
+        while (index > 0 && reports.get(index - 1).order > order) {
+            index--;
+        }
+        reports.add(index, new Report(order, event.time, event.name, event.description));
+        finished |= event.isFinal();
+    }
+
+    /**
+     * @return true once the final report of the game was added
+     */
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    private static void update(Map<String, Stat> stats, List<String> updates, long order) {
+        for (int i = 0; i < updates.size(); i += 2) {
+            Stat stat = stats.get(updates.get(i));
+            if (stat == null) {
+                stats.put(updates.get(i), new Stat(updates.get(i + 1), order));
+            } else if (order >= stat.order) {
+                stat.value = updates.get(i + 1);
+                stat.order = order;
+            }
+        }
+    }
+
+    /**
+     * @return the summary, in the format of the client's summary command
+     */
+    synchronized String render() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(teamA).append(" vs ").append(teamB).append('\n');
+        summary.append("Game stats:\n");
+        summary.append("General stats:\n");
+        appendStats(summary, generalStats);
+        summary.append(teamA).append(" stats:\n");
+        appendStats(summary, teamAStats);
+        summary.append(teamB).append(" stats:\n");
+        appendStats(summary, teamBStats);
+        summary.append("Game event reports:\n");
+        for (Report report : reports) {
+            summary.append(report.time).append(" - ").append(report.name).append(":\n");
+            summary.append('\n');
+            summary.append(report.description).append('\n');
+            summary.append('\n');
+        }
+        return summary.toString();
+    }
+
+    private static void appendStats(StringBuilder summary, Map<String, Stat> stats) {
+        for (Map.Entry<String, Stat> entry : new TreeMap<>(stats).entrySet()) {
+            summary.append(entry.getKey()).append(": ").append(entry.getValue().value).append('\n');
+        }
+    }
+
+    private static final class Stat {
+        String value;
+        long order;
+
+        Stat(String value, long order) {
+            this.value = value;
+            this.order = order;
+        }
+    }
+
+    private static final class Report {
+        final long order;
+        final int time;
+        final String name;
+        final String description;
+
+        Report(long order, int time, String name, String description) {
+            this.order = order;
+            this.time = time;
+            this.name = name;
+            this.description = description;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bgu.spl.net.impl.stomp;
+
+import bgu.spl.net.srv.EncodedMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The MESSAGE frames of one game's event reports, sorted by event time.
+ * Times live in chunks of primitive int arrays with the frames in parallel chunks, so appending never copies
+ * what is already stored. Reports normally arrive in time order and are appended; a late one is inserted after
+ * the reports with the same time. Guarded by its own monitor, which GameEventStore locks.
+ */
+/*package*/ final class GameTimeline {
+
+    private static final int CHUNK = 256;
+    // Counted per report besides its frame: the time, the reference and the frame's object headers
+    private static final int REPORT_OVERHEAD = 64;
+
+    private final List<int[]> times = new ArrayList<>();
+    private final List<EncodedMessage[]> frames = new ArrayList<>();
+    private int size = 0;
+    private long bytes = 0;
+    private boolean finished = false;
+    long lastUpdate; //store sequence number of the last append, for eviction
+
+    /**
+     * @param last true if this is the final report of the game
+     * @return the bytes it added
+     */
+    long add(int time, EncodedMessage frame, boolean last) {
+        if (size == times.size() * CHUNK) {
+            times.add(new int[CHUNK]);
+            frames.add(new EncodedMessage[CHUNK]);
+        }
+        int index = size;
+        // shift later reports up by one, normally none
+        while (index > 0 && timeAt(index - 1) > time) {
+            set(index, timeAt(index - 1), frameAt(index - 1));
+            index--;
+        }
+        set(index, time, frame);
+        size++;
+        bytes += frame.length() + REPORT_OVERHEAD;
+        finished |= last;
+        return frame.length() + REPORT_OVERHEAD;
+    }
+
+    /**
+     * @return the frames of the reports with from <= time <= to, in time order
+     */
+    List<EncodedMessage> range(int from, int to) {
+        List<EncodedMessage> result = new ArrayList<>();
+        for (int i = firstAtOrAfter(from); i < size && timeAt(i) <= to; i++) {
+            result.add(frameAt(i));
+        }
+        return result;
+    }
+
+    /**
+     * Binary search for the first chunk that may hold the time, then within it.
+     */
+    private int firstAtOrAfter(int time) {
+        int low = 0;
+        int high = times.size() - 1;
+        while (low < high) { //first chunk whose last stored time is >= time
+            int mid = (low + high) >>> 1;
+            if (timeAt(Math.min((mid + 1) * CHUNK, size) - 1) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (times.isEmpty()) {
+            return 0;
+        }
+        int chunkSize = Math.min(CHUNK, size - low * CHUNK);
+        int index = Arrays.binarySearch(times.get(low), 0, chunkSize, time);
+        if (index < 0) {
+            return low * CHUNK - index - 1;
+        }
+        while (index > 0 && times.get(low)[index - 1] == time) { //first of equal times
+            index--;
+        }
+        return low * CHUNK + index;
+    }
+
+    private int timeAt(int index) {
+        return times.get(index / CHUNK)[index % CHUNK];
+    }
+
+    private EncodedMessage frameAt(int index) {
+        return frames.get(index / CHUNK)[index % CHUNK];
+    }
+
+    private void set(int index, int time, EncodedMessage frame) {
+        times.get(index / CHUNK)[index % CHUNK] = time;
+        frames.get(index / CHUNK)[index % CHUNK] = frame;
+    }
+
+    /**
+     * @return the bytes of the stored frames
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true once the final report of the game was stored
+     */
+    boolean isFinished() {
+        return finished;
+    }
+}
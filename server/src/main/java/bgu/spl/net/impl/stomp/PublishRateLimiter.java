@@ -0,0 +1,186 @@
+package bgu.spl.net.impl.stomp;
+
+import bgu.spl.net.metrics.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket limits on the messages sent to channels, in messages and bytes (of the MESSAGE frame) per second,
+ * per connection and per destination. Each limit is off unless configured:
+ * -Dstomp.ratelimit.connection.messages, -Dstomp.ratelimit.connection.bytes,
+ * -Dstomp.ratelimit.destination.messages and -Dstomp.ratelimit.destination.bytes.
+ * A bucket holds -Dstomp.ratelimit.burst.millis of its rate (1000 by default).
+ * A destination's buckets are removed once they are full again, as they would be recreated the same, so
+ * publishing to many distinct destinations does not keep a bucket for each of them.
+ *
+ * -Dstomp.ratelimit.action decides what happens to a message over a limit:
+ * DELAY (the default) sends it and stops reading from the publisher until it is back within its rate,
+ * DROP drops it and answers with an ERROR if it asked for a receipt,
+ * DISCONNECT drops it and disconnects the publisher.
+ */
+/*package*/ final class PublishRateLimiter {
+
+    enum Action {
+        DELAY, DROP, DISCONNECT
+    }
+
+    private final long connectionMessages = Long.getLong("stomp.ratelimit.connection.messages", 0);
+    private final long connectionBytes = Long.getLong("stomp.ratelimit.connection.bytes", 0);
+    private final long destinationMessages = Long.getLong("stomp.ratelimit.destination.messages", 0);
+    private final long destinationBytes = Long.getLong("stomp.ratelimit.destination.bytes", 0);
+    private final long burstMillis = Long.getLong("stomp.ratelimit.burst.millis", 1000);
+    private final Action action = Action.valueOf(System.getProperty("stomp.ratelimit.action", "DELAY"));
+
+    private final ConcurrentMap<String, Rate> destinations = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    private PublishRateLimiter() {
+        Metrics.counter("stomp_publish_delayed_total", "Messages over a publish rate limit whose publisher was paused", delayed::sum);
+        Metrics.counter("stomp_publish_dropped_total", "Messages dropped for going over a publish rate limit", dropped::sum);
+        Metrics.counter("stomp_publish_rate_disconnects_total", "Publishers disconnected for going over a publish rate limit",
+                disconnected::sum);
+        Metrics.gauge("stomp_publish_rate_destinations", "Destinations with publish rate buckets", destinations::size);
+    }
+
+    static PublishRateLimiter getInstance() {
+        return Instance.instance;
+    }
+
+    boolean isEnabled() {
+        return connectionMessages > 0 || connectionBytes > 0 || destinationMessages > 0 || destinationBytes > 0;
+    }
+
+    Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return the buckets of a new connection
+     */
+    Rate newConnectionRate() {
+        return new Rate(connectionMessages, connectionBytes, burstMillis);
+    }
+
+    /**
+     * Takes a message of the given size from the connection's and the destination's buckets, only if all have it.
+     * @return 0 if it was taken, otherwise the nanoseconds until it could be
+     */
+    long tryAcquire(Rate connection, String destination, long bytes) {
+        long now = System.nanoTime();
+        long wait = connection.tryAcquire(bytes, now);
+        if (wait > 0) {
+            return wait;
+        }
+        wait = destinationRate(destination, now).tryAcquire(bytes, now);
+        if (wait > 0) {
+            connection.release(bytes);
+        }
+        return wait;
+    }
+
+    /**
+     * Takes a message of the given size from the connection's and the destination's buckets, even into debt.
+     * @return the nanoseconds until both are out of debt, 0 if neither was overdrawn
+     */
+    long acquire(Rate connection, String destination, long bytes) {
+        long now = System.nanoTime();
+        return Math.max(connection.acquire(bytes, now), destinationRate(destination, now).acquire(bytes, now));
+    }
+
+    private Rate destinationRate(String destination, long now) {
+        if (destinationMessages == 0 && destinationBytes == 0) {
+            return Rate.UNLIMITED;
+        }
+        sweepIfDue(now);
+        return destinations.computeIfAbsent(destination, k -> new Rate(destinationMessages, destinationBytes, burstMillis));
+    }
+
+    /**
+     * Removes the destinations whose buckets are full, at most once per burst period - by then the buckets of a
+     * destination that was not published to since the last sweep are full.
+     * A message taken from a bucket just as it is removed is not counted against the destination.
+     */
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last < burstMillis * 1_000_000 || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, Rate> entry : destinations.entrySet()) {
+            if (entry.getValue().isFull(now)) {
+                destinations.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    void recordDelayed() {
+        delayed.increment();
+    }
+
+    void recordDropped() {
+        dropped.increment();
+    }
+
+    void recordDisconnected() {
+        disconnected.increment();
+    }
+
+    /**
+     * A message bucket and a byte bucket, either one null if it is not limited.
+     */
+    static final class Rate {
+        static final Rate UNLIMITED = new Rate(0, 0, 0);
+
+        private final TokenBucket messages;
+        private final TokenBucket bytes;
+
+        private Rate(long messagesPerSecond, long bytesPerSecond, long burstMillis) {
+            this.messages = messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond, capacity(messagesPerSecond, burstMillis)) : null;
+            this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, capacity(bytesPerSecond, burstMillis)) : null;
+        }
+
+        private static long capacity(long perSecond, long burstMillis) {
+            return Math.max(1, perSecond * burstMillis / 1000);
+        }
+
+        private long tryAcquire(long size, long now) {
+            long wait = messages == null ? 0 : messages.tryAcquire(1, now);
+            if (wait > 0 || bytes == null) {
+                return wait;
+            }
+            wait = bytes.tryAcquire(size, now);
+            if (wait > 0 && messages != null) {
+                messages.release(1);
+            }
+            return wait;
+        }
+
+        private boolean isFull(long now) {
+            return (messages == null || messages.isFull(now)) && (bytes == null || bytes.isFull(now));
+        }
+
+        private long acquire(long size, long now) {
+            return Math.max(messages == null ? 0 : messages.acquire(1, now), bytes == null ? 0 : bytes.acquire(size, now));
+        }
+
+        private void release(long size) {
+            if (messages != null) {
+                messages.release(1);
+            }
+            if (bytes != null) {
+                bytes.release(size);
+            }
+        }
+    }
+
+    private static class Instance {
+        static PublishRateLimiter instance = new PublishRateLimiter();
+    }
+}
@@ -1,5 +1,7 @@
 package bgu.spl.net.impl.stomp;
 
+import bgu.spl.net.log.Logger;
+
 public enum StompClientCommand {
     CONNECT("accept-version", "host", "login", "passcode"),
     SEND("destination"),
@@ -8,6 +10,8 @@ public enum StompClientCommand {
     DISCONNECT("receipt"),
     UNKNOWN();
 
+    private static final Logger LOG = Logger.get(StompClientCommand.class);
+
     private final String[] requiredHeaders;
 
     StompClientCommand(String... requiredHeaders) {
@@ -23,7 +27,7 @@ public enum StompClientCommand {
      * @param frame
      * @return boolean
      */
-    public boolean validate(StompFrameParser frame) {
+    public boolean validate(StompFrame frame) {
         for (String header : requiredHeaders) {
             if (!frame.hasHeader(header)) {
                 return false;
@@ -33,11 +37,11 @@ public enum StompClientCommand {
     }
 
     /**
-     * Returns a missing required header for the StompFrameParser. If all required headers exist - returns null.
+     * Returns a missing required header for the StompFrame. If all required headers exist - returns null.
      * @param frame
      * @return String represeting the missing header.
      */
-    public String getMissingHeader(StompFrameParser frame){
+    public String getMissingHeader(StompFrame frame){
         for (String header : requiredHeaders) {
             if (!frame.hasHeader(header)) {
                 return header;
@@ -56,7 +60,7 @@ public enum StompClientCommand {
         try {
             return StompClientCommand.valueOf(commandString);
         } catch (IllegalArgumentException | NullPointerException e) {
-            e.printStackTrace();
+            LOG.debug(() -> "Unknown command " + commandString);
             return UNKNOWN;
         }
     }
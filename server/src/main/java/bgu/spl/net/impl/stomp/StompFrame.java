@@ -0,0 +1,167 @@
+package bgu.spl.net.impl.stomp;
+
+import java.util.Arrays;
+
+/**
+ * A received STOMP frame, parsed in a single pass over the decoded message.
+ * Only the command is copied while parsing - headers are kept as offsets into the message and their values
+ * are created the first time they are asked for, the body is a range of the message.
+ */
+public class StompFrame {
+
+    private static final String[] NO_VALUES = new String[0];
+
+    private final String raw;
+    private final String command;
+
+    // for header i: [3i] start of the name, [3i+1] end of the name (the colon, or end of line if there is none), [3i+2] end of line
+    private final int[] headerOffsets;
+    private final int headerCount;
+    private String[] headerValues = NO_VALUES;
+
+    private final int bodyStart;
+    private String body = null;
+
+    private StompFrame(String raw, String command, int[] headerOffsets, int headerCount, int bodyStart) {
+        this.raw = raw;
+        this.command = command;
+        this.headerOffsets = headerOffsets;
+        this.headerCount = headerCount;
+        this.bodyStart = bodyStart;
+    }
+
+    /**
+     * Parses a STOMP frame from the user (without its NUL terminator). Lines may end with LF or CRLF.
+     * If the frame is malformed, the command will not be a valid one.
+     * @param rawMessage
+     * @return StompFrame
+     */
+    public static StompFrame parse(String rawMessage) {
+        int length = rawMessage.length();
+        int pos = 0;
+        //frames may be preceded by heart-beat EOLs
+        while (pos < length && (rawMessage.charAt(pos) == '\n' || rawMessage.charAt(pos) == '\r')) {
+            pos++;
+        }
+
+        int lineEnd = lineEnd(rawMessage, pos);
+        String command = rawMessage.substring(pos, contentEnd(rawMessage, pos, lineEnd));
+        pos = nextLine(lineEnd, length);
+
+        int[] offsets = new int[3 * 4];
+        int count = 0;
+        while (pos < length) {
+            lineEnd = lineEnd(rawMessage, pos);
+            int end = contentEnd(rawMessage, pos, lineEnd);
+            if (end == pos) { //empty line - end of headers
+                pos = nextLine(lineEnd, length);
+                break;
+            }
+
+            int colon = pos;
+            while (colon < end && rawMessage.charAt(colon) != ':') {
+                colon++;
+            }
+
+            if (3 * count + 3 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[3 * count] = pos;
+            offsets[3 * count + 1] = colon;
+            offsets[3 * count + 2] = end;
+            count++;
+
+            pos = nextLine(lineEnd, length);
+        }
+
+        return new StompFrame(rawMessage, command, offsets, count, Math.min(pos, length));
+    }
+
+    /**
+     * @return index of the LF ending the line starting at from, or the message length for the last line
+     */
+    private static int lineEnd(String raw, int from) {
+        int lf = raw.indexOf('\n', from);
+        return lf < 0 ? raw.length() : lf;
+    }
+
+    /**
+     * @return end of the line content, without a CR preceding the LF
+     */
+    private static int contentEnd(String raw, int from, int lineEnd) {
+        return (lineEnd > from && raw.charAt(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+    }
+
+    private static int nextLine(int lineEnd, int length) {
+        return Math.min(lineEnd + 1, length);
+    }
+
+    /**
+     * @param header
+     * @return index of the first header with the given name, or -1 if it does not exist.
+     */
+    private int indexOfHeader(String header) {
+        int nameLength = header.length();
+        for (int i = 0; i < headerCount; i++) {
+            int start = headerOffsets[3 * i];
+            if (headerOffsets[3 * i + 1] - start == nameLength && raw.regionMatches(start, header, 0, nameLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the frame has the header. A header repeated in the frame counts once, its first value is used.
+     * @param header
+     * @return true iff the header exists in the frame
+     */
+    public boolean hasHeader(String header) {
+        return indexOfHeader(header) >= 0;
+    }
+
+    /**
+     * @param key
+     * @return the value of the header, null if it does not exist or has no value.
+     */
+    public String getHeaderValue(String key) {
+        int i = indexOfHeader(key);
+        if (i < 0) {
+            return null;
+        }
+        int colon = headerOffsets[3 * i + 1];
+        int end = headerOffsets[3 * i + 2];
+        if (colon == end) {
+            return null; //header line without a colon
+        }
+
+        if (headerValues == NO_VALUES) {
+            headerValues = new String[headerCount];
+        }
+        if (headerValues[i] == null) {
+            headerValues[i] = raw.substring(colon + 1, end);
+        }
+        return headerValues[i];
+    }
+
+    public String getCommand() {
+        return this.command;
+    }
+
+    /**
+     * @return the body of the frame, empty if it has none.
+     */
+    public String getBody() {
+        if (body == null) {
+            body = raw.substring(bodyStart);
+        }
+        return body;
+    }
+
+    /**
+     * @return the length of the body, without creating it.
+     */
+    public int getBodyLength() {
+        return raw.length() - bodyStart;
+    }
+}
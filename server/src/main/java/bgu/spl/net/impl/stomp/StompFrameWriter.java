@@ -0,0 +1,160 @@
+package bgu.spl.net.impl.stomp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import bgu.spl.net.srv.EncodedMessage;
+
+/**
+ * Writes server frames straight into bytes (UTF-8), without building the frame as a String first.
+ * Each thread reuses its own buffer, so a frame costs a single copy of its final size.
+ * Headers are written in the order they are added.
+ *
+ * Usage: StompFrameWriter.start(StompServerFrame.RECEIPT).header(StompFrameWriter.RECEIPT_ID, id).end(null)
+ */
+public final class StompFrameWriter {
+
+    public static final byte[] DESTINATION = headerName("destination");
+    public static final byte[] MESSAGE_ID = headerName("message-id");
+    public static final byte[] SUBSCRIPTION = headerName("subscription");
+    public static final byte[] RECEIPT_ID = headerName("receipt-id");
+    public static final byte[] VERSION = headerName("version");
+    public static final byte[] MESSAGE = headerName("message");
+    public static final byte[] COMPRESSION = headerName("compression");
+    public static final byte[] HEART_BEAT = headerName("heart-beat");
+
+    private static final int INITIAL_SIZE = 1 << 10;
+    // Buffers that grew past this size (large bodies) are not kept by the thread
+    private static final int MAX_RETAINED_SIZE = 1 << 17;
+
+    private static final ThreadLocal<StompFrameWriter> WRITERS = ThreadLocal.withInitial(StompFrameWriter::new);
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int len = 0;
+
+    private StompFrameWriter() {
+    }
+
+    private static byte[] headerName(String name) {
+        return (name + ":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts a new frame with the given command, using the writer of the calling thread.
+     * The frame must be ended before another one is started on the same thread.
+     * @param frame
+     * @return StompFrameWriter
+     */
+    public static StompFrameWriter start(StompServerFrame frame) {
+        StompFrameWriter writer = WRITERS.get();
+        writer.len = 0;
+        writer.put(frame.getCommandLine());
+        return writer;
+    }
+
+    /**
+     * Adds a header line.
+     * @param name encoded header name including the colon, one of the constants of this class
+     * @param value header value, written as empty if null
+     * @return this writer
+     */
+    public StompFrameWriter header(byte[] name, CharSequence value) {
+        put(name);
+        if (value != null) {
+            putUtf8(value);
+        }
+        putByte('\n');
+        return this;
+    }
+
+    /**
+     * Ends the headers, writes the body and the NUL terminator.
+     * @param body may be null or empty
+     * @return the encoded frame
+     */
+    public EncodedMessage end(CharSequence body) {
+        putByte('\n'); // new line between headers and body
+        if (body != null) {
+            putUtf8(body);
+        }
+        putByte('\u0000');
+
+        byte[] frame = Arrays.copyOf(buffer, len);
+        len = 0;
+        if (buffer.length > MAX_RETAINED_SIZE) {
+            buffer = new byte[INITIAL_SIZE];
+        }
+        return EncodedMessage.of(frame);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (len + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, len + extra));
+        }
+    }
+
+    private void putByte(char b) {
+        ensureCapacity(1);
+        buffer[len++] = (byte) b;
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, len, bytes.length);
+        len += bytes.length;
+    }
+
+    /**
+     * Encodes the characters as UTF-8 into the buffer. Unpaired surrogates are written as '?', like String.getBytes.
+     */
+    private void putUtf8(CharSequence chars) {
+        int n = chars.length();
+        ensureCapacity(n);
+        int i = 0;
+        // ASCII fast path
+        while (i < n) {
+            char c = chars.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buffer[len++] = (byte) c;
+            i++;
+        }
+
+        for (; i < n; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(1);
+                buffer[len++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[len++] = (byte) (0xC0 | (c >> 6));
+                buffer[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                int codePoint = -1;
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                }
+                if (codePoint < 0) {
+                    ensureCapacity(1);
+                    buffer[len++] = (byte) '?';
+                }
+                else {
+                    ensureCapacity(4);
+                    buffer[len++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[len++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[len++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[len++] = (byte) (0x80 | (codePoint & 0x3F));
+                }
+            }
+            else {
+                ensureCapacity(3);
+                buffer[len++] = (byte) (0xE0 | (c >> 12));
+                buffer[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
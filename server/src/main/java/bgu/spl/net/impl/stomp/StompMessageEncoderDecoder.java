@@ -1,25 +1,100 @@
 package bgu.spl.net.impl.stomp;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import bgu.spl.net.api.MessageEncoderDecoder;
 
+/**
+ * Frames end with a NUL, unless they have a content-length header: then the body is exactly that many bytes
+ * (and may contain NULs), followed by the NUL.
+ * A body with content-encoding:deflate is inflated, and the frame is returned without its content-encoding and
+ * content-length headers - as if it was sent uncompressed. A body that fails to inflate keeps its headers.
+ */
 public class StompMessageEncoderDecoder implements MessageEncoderDecoder<String>{
-    
+
+    // Inflated bodies larger than this are not accepted
+    private static final int MAX_INFLATED_SIZE = Integer.getInteger("stomp.compression.max.inflated", 16 << 20);
+
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_ENCODING = "content-encoding:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DEFLATE = "deflate".getBytes(StandardCharsets.UTF_8);
+
     private byte[] bytes = new byte[1 << 10];
     private int len = 0;
 
+    private int bodyStart = -1; //-1 while reading the headers
+    private int contentLength = -1; //-1 if the frame has none
+    private boolean deflated = false;
+
     @Override
     public String decodeNextByte(byte nextByte){
+        if(bodyStart >= 0 && contentLength >= 0 && len < bodyStart + contentLength){
+            pushByte(nextByte);
+            return null;
+        }
         if(nextByte == '\u0000'){
             return this.popString();
         }
+        if(bodyStart < 0){
+            if(len == 0 && (nextByte == '\n' || nextByte == '\r')){
+                return null; //heart-beat EOLs between frames
+            }
+            pushByte(nextByte);
+            if(nextByte == '\n' && isEndOfHeaders()){
+                readContentHeaders();
+            }
+            return null;
+        }
 
         pushByte(nextByte);
         return null;
     }
 
+    /**
+     * Decodes the headers byte by byte, then copies whole runs of body bytes instead of pushing them one by one:
+     * up to the NUL terminator, or content-length bytes.
+     */
+    @Override
+    public List<String> decode(ByteBuffer buffer){
+        List<String> messages = null;
+        while(buffer.hasRemaining()){
+            String message;
+            if(bodyStart < 0){
+                message = decodeNextByte(buffer.get());
+            }
+            else if(contentLength >= 0 && len < bodyStart + contentLength){
+                pushBytes(buffer, Math.min(buffer.remaining(), bodyStart + contentLength - len));
+                continue;
+            }
+            else{
+                int start = buffer.position();
+                int end = indexOfNull(buffer, start, buffer.limit());
+
+                pushBytes(buffer, (end < 0 ? buffer.limit() : end) - start);
+                if(end < 0){
+                    break;
+                }
+
+                buffer.get(); //skip the NUL
+                message = this.popString();
+            }
+            if(message != null){
+                if(messages == null){
+                    messages = new ArrayList<>();
+                }
+                messages.add(message);
+            }
+        }
+        return messages == null ? Collections.emptyList() : messages;
+    }
+
     @Override
     public byte[] encode(String message){
         return message.getBytes(); //uses utf8 by default
@@ -33,13 +108,150 @@ public class StompMessageEncoderDecoder implements MessageEncoderDecoder<String>
         bytes[len++] = nextByte;
     }
 
+    /**
+     * Copies the next count bytes of the buffer, advancing its position.
+     */
+    private void pushBytes(ByteBuffer buffer, int count) {
+        if (len + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, len + count));
+        }
+
+        buffer.get(bytes, len, count);
+        len += count;
+    }
+
+    /**
+     * @return true if the last byte pushed ends an empty line (LF or CRLF)
+     */
+    private boolean isEndOfHeaders() {
+        return (len >= 2 && bytes[len - 2] == '\n')
+                || (len >= 3 && bytes[len - 2] == '\r' && bytes[len - 3] == '\n');
+    }
+
+    /**
+     * Starts the body, reading content-length and content-encoding from the headers.
+     * Like any header, the first occurrence counts.
+     */
+    private void readContentHeaders() {
+        bodyStart = len;
+        contentLength = -1;
+        deflated = false;
+        boolean encodingSeen = false;
+        int lineStart = 0;
+        for (int i = 0; i < bodyStart; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (lineStart > 0) { //not the command line
+                if (contentLength < 0 && startsWith(lineStart, CONTENT_LENGTH)) {
+                    contentLength = parseLength(lineStart + CONTENT_LENGTH.length, i);
+                }
+                else if (!encodingSeen && startsWith(lineStart, CONTENT_ENCODING)) {
+                    encodingSeen = true;
+                    int valueStart = lineStart + CONTENT_ENCODING.length;
+                    int valueEnd = i > valueStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                    deflated = valueEnd - valueStart == DEFLATE.length && startsWith(valueStart, DEFLATE);
+                }
+            }
+            lineStart = i + 1;
+        }
+    }
+
+    private boolean startsWith(int from, byte[] prefix) {
+        if (from + prefix.length > len) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the decimal number in bytes[from, to) (ignoring a trailing CR), or -1 if it is not one
+     */
+    private int parseLength(int from, int to) {
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9' || value > Integer.MAX_VALUE / 10) {
+                return -1;
+            }
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return to > from && value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    private static int indexOfNull(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\u0000') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * notice that we explicitly requesting that the string will be decoded from UTF-8, this is not actually required as it is the default encoding in java.
      * @return
      */
     private String popString() {
-        String result = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        String result = null;
+        if (deflated && bodyStart >= 0) {
+            result = inflateFrame();
+        }
+        if (result == null) {
+            result = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
         len = 0;
+        bodyStart = -1;
+        contentLength = -1;
+        deflated = false;
         return result;
     }
+
+    /**
+     * @return the frame with its body inflated and without its content headers, or null if the body is not valid
+     */
+    private String inflateFrame() {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, bodyStart, len - bodyStart);
+            byte[] body = new byte[Math.max(64, (len - bodyStart) * 4)];
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == body.length) {
+                    if (body.length >= MAX_INFLATED_SIZE) {
+                        return null;
+                    }
+                    body = Arrays.copyOf(body, Math.min(body.length * 2, MAX_INFLATED_SIZE));
+                }
+                int n = inflater.inflate(body, size, body.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null; //truncated
+                }
+                size += n;
+            }
+
+            StringBuilder frame = new StringBuilder(bodyStart + size);
+            int lineStart = 0;
+            for (int i = 0; i < bodyStart; i++) {
+                if (bytes[i] == '\n') {
+                    if (!startsWith(lineStart, CONTENT_LENGTH) && !startsWith(lineStart, CONTENT_ENCODING)) {
+                        frame.append(new String(bytes, lineStart, i + 1 - lineStart, StandardCharsets.UTF_8));
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            return frame.append(new String(body, 0, size, StandardCharsets.UTF_8)).toString();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
 }
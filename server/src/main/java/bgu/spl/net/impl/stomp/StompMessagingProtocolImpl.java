@@ -1,16 +1,49 @@
 package bgu.spl.net.impl.stomp;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import bgu.spl.net.api.StompMessagingProtocol;
 import bgu.spl.net.srv.Connections;
+import bgu.spl.net.srv.DestinationTrie;
+import bgu.spl.net.srv.EncodedMessage;
 
 import bgu.spl.net.impl.data.Database;
 import bgu.spl.net.impl.data.LoginStatus;
+import bgu.spl.net.log.Logger;
+import bgu.spl.net.metrics.Histogram;
+import bgu.spl.net.metrics.Metrics;
 
 public class StompMessagingProtocolImpl implements StompMessagingProtocol<String>{
+
+    private static final Logger LOG = Logger.get(StompMessagingProtocolImpl.class);
+
+    // Subscribers of this destination get the server metrics, once when subscribing and again on every SEND to it
+    public static final String STATS_DESTINATION = "/admin/stats";
+
+    // A SEND to this destination with game and user headers gets the server's summary of what the user reported
+    public static final String SUMMARY_DESTINATION = "/summary";
+
+    // A SEND to this destination with a game header (and optional from, to times in seconds) gets the stored
+    // MESSAGE frames of the game's events in that time range
+    public static final String EVENTS_DESTINATION = "/events";
+
+    // Heart-beating the server offers: a heart-beat every SEND millis, and one expected from the client every RECEIVE
+    // millis (0 for none). A client is disconnected after HEART_BEAT_TOLERANCE negotiated intervals of silence.
+    private static final long HEART_BEAT_SEND_MILLIS = Long.getLong("stomp.heartbeat.send.millis", 10000);
+    private static final long HEART_BEAT_RECEIVE_MILLIS = Long.getLong("stomp.heartbeat.receive.millis", 10000);
+    private static final int HEART_BEAT_TOLERANCE = 2;
+
+    // Processing time of a frame by its command, indexed by ordinal
+    private static final Histogram[] COMMAND_LATENCY = new Histogram[StompClientCommand.values().length];
+
+    static {
+        for (StompClientCommand command : StompClientCommand.values()) {
+            COMMAND_LATENCY[command.ordinal()] = Metrics.histogram("stomp_command_seconds",
+                    "Time to process a client frame, by command", Metrics.NANOS_PER_SECOND, "command", command.name());
+        }
+    }
     
     private int connectionId;
     Connections<String> connections;
@@ -18,6 +51,7 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
     private String username = null;
 
     private AtomicLong messageCounter = new AtomicLong(0); 
+    private PublishRateLimiter.Rate publishRate = null; //this connection's publish rate buckets, created on its first SEND
 
 	@Override
     public void start(int connectionId, Connections<String> connections){
@@ -27,11 +61,12 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
     
     @Override
     public String process(String message){
-        System.out.println("--------------");
-        System.out.println("[DEBUG] Received the following message from user: "+ this.connectionId + "\n" + message);
+        LOG.debug(() -> "Received the following message from user: " + connectionId + "\n" + message);
+        long start = System.nanoTime();
+        StompClientCommand clientCommand = StompClientCommand.UNKNOWN;
         try{
-            StompFrameParser stompFrame = StompFrameParser.parse(message);
-            StompClientCommand clientCommand = StompClientCommand.validatedStompCommand(stompFrame.getCommand());
+            StompFrame stompFrame = StompFrame.parse(message);
+            clientCommand = StompClientCommand.validatedStompCommand(stompFrame.getCommand());
             if(!clientCommand.validate(stompFrame)){
                 this.processError(stompFrame, "Missing mandatory header","The following header is missing for the given command: " + clientCommand.getMissingHeader(stompFrame));
                 return null;
@@ -57,8 +92,10 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
                     return null;
             }
         } catch(Exception e){
-                e.printStackTrace();
+                LOG.error("Could not process a frame from user " + this.connectionId, e);
                 this.processError(null, "Could not process request", "Unkown issue occured: " + e);
+        } finally {
+            COMMAND_LATENCY[clientCommand.ordinal()].recordSince(start);
         }
         return null;
     }
@@ -67,7 +104,7 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
      * process for connect
      * @param stompFrame
      */
-    private void processConnect(StompFrameParser stompFrame){
+    private void processConnect(StompFrame stompFrame){
         String login = stompFrame.getHeaderValue("login");
         String accept_version = stompFrame.getHeaderValue("accept-version").trim();
         String passcode = stompFrame.getHeaderValue("passcode");
@@ -76,12 +113,23 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
             this.processError(stompFrame, "Incorrect STOMP version", "accept-version must be 1.2.");
             return;
         }
+        long[] clientHeartBeat = this.parseHeartBeat(stompFrame.getHeaderValue("heart-beat"));
+        if(clientHeartBeat == null){
+            this.processError(stompFrame, "Invalid heart-beat", "heart-beat must be two non negative numbers of milliseconds, separated by a comma.");
+            return;
+        }
         try{
             LoginStatus loginStatus = Database.getInstance().login(this.connectionId, login, passcode);
             switch(loginStatus){
                 case LOGGED_IN_SUCCESSFULLY:
                 case ADDED_NEW_USER:
-                    this.connections.send(this.connectionId, buildConnectMessage(stompFrame, accept_version));
+                    // compression:deflate asks for deflated channel message bodies, the server confirms it in CONNECTED
+                    boolean compression = "deflate".equals(stompFrame.getHeaderValue("compression"));
+                    if(compression){
+                        this.connections.enableCompression(this.connectionId);
+                    }
+                    String heartBeat = stompFrame.hasHeader("heart-beat") ? this.startHeartBeat(clientHeartBeat) : null;
+                    this.connections.sendEncoded(this.connectionId, buildConnectMessage(stompFrame, accept_version, compression, heartBeat));
                     this.username = login;
                     break;
                 case WRONG_PASSWORD:
@@ -102,15 +150,58 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
         }
     }
 
+    /**
+     * Parses a heart-beat header "cx,cy".
+     * @param value header value, may be null
+     * @return {cx, cy}, {0, 0} if value is null, or null if it is invalid
+     */
+    private long[] parseHeartBeat(String value){
+        if(value == null){
+            return new long[]{0, 0};
+        }
+        String[] parts = value.split(",");
+        if(parts.length != 2){
+            return null;
+        }
+        try{
+            long[] heartBeat = {Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim())};
+            return heartBeat[0] < 0 || heartBeat[1] < 0 ? null : heartBeat;
+        }
+        catch(NumberFormatException e){
+            return null;
+        }
+    }
+
+    /**
+     * Negotiates heart-beating as STOMP 1.2 does: each side heart-beats at the slower of what one side can do and
+     * the other one wants, if both want it at all.
+     * @param clientHeartBeat the client's {cx, cy}
+     * @return the heart-beat header value of CONNECTED
+     */
+    private String startHeartBeat(long[] clientHeartBeat){
+        long send = clientHeartBeat[1] == 0 || HEART_BEAT_SEND_MILLIS == 0 ? 0 : Math.max(clientHeartBeat[1], HEART_BEAT_SEND_MILLIS);
+        long receive = clientHeartBeat[0] == 0 || HEART_BEAT_RECEIVE_MILLIS == 0 ? 0 : Math.max(clientHeartBeat[0], HEART_BEAT_RECEIVE_MILLIS);
+        if((send == 0 && receive == 0) || !this.connections.startHeartBeat(this.connectionId, send, receive * HEART_BEAT_TOLERANCE)){
+            return "0,0"; // the thread per client server does not heart-beat
+        }
+        return send + "," + receive;
+    }
+
     /**
      * process for send
      * @param stompFrame
      */
-    private void processSend(StompFrameParser stompFrame){
-        System.out.println("--------------");
-        System.out.println("[DEBUG] Inside processSend()");
-        System.out.println("--------------");
+    private void processSend(StompFrame stompFrame){
         String destination = stompFrame.getHeaderValue("destination");
+        if(DestinationTrie.isPattern(destination)){
+            this.processError(stompFrame, "Wildcard destination", "Can't send a message to a wildcard destination, only subscribe to it.");
+            return;
+        }
+        if(stompFrame.hasHeader("content-encoding")){
+            // the decoder inflates deflate bodies and removes the header, so it is either another encoding or corrupt
+            this.processError(stompFrame, "Unsupported content-encoding", "Only a valid deflate body can be sent encoded.");
+            return;
+        }
         if(!this.connections.isUserSubscribed(this.connectionId, destination))
             this.processError(stompFrame, "Not subscibed to topic", "Must be subscribed to the topic in order to send it a message!");
         
@@ -119,12 +210,39 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
         if(messageBody== null || messageBody.isEmpty())
             this.processError(stompFrame, "Empty message", "Can't send an empty message to the topic.");
 
-        if(stompFrame.hasHeader("file path")){
-            Database.getInstance().trackFileUpload(this.username, stompFrame.getHeaderValue("file path") , destination);
+        if(STATS_DESTINATION.equals(destination)){
+            this.sendStats(stompFrame);
+            return;
         }
-        
+
+        if(SUMMARY_DESTINATION.equals(destination)){
+            this.sendSummary(stompFrame);
+            return;
+        }
+
+        if(EVENTS_DESTINATION.equals(destination)){
+            this.sendEvents(stompFrame);
+            return;
+        }
+
         try{
-            this.connections.send(destination, this.buildServerMessage(stompFrame, destination, String.valueOf(this.messageCounter.addAndGet(1)), messageBody));
+            String messageId = String.valueOf(this.messageCounter.addAndGet(1));
+            EncodedMessage message = this.buildServerMessage(stompFrame, destination, messageId, messageBody);
+            if(!this.admitPublish(stompFrame, destination, message.length())){
+                return;
+            }
+            this.connections.sendEncoded(destination, message);
+            if(stompFrame.hasHeader("file path")){
+                Database.getInstance().trackFileUpload(this.username, stompFrame.getHeaderValue("file path") , destination);
+            }
+
+            GameEvent event = GameEvent.parse(messageBody);
+            if(event != null){
+                GameSummaries.getInstance().record(destination, event, this.username);
+                // replayed to other clients later, so it must not carry this SEND's receipt
+                EncodedMessage stored = stompFrame.hasHeader("receipt") ? this.buildServerMessage(null, destination, messageId, messageBody) : message;
+                GameEventStore.getInstance().add(destination, event, stored);
+            }
 
             sendReceiptIfRequested(stompFrame);
         }
@@ -133,28 +251,183 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
         }
     }
 	
+    /**
+     * Applies the publish rate limits to a message about to be sent to the destination, see PublishRateLimiter.
+     * @param stompFrame the SEND frame
+     * @param destination
+     * @param bytes size of the MESSAGE frame
+     * @return false if the message must not be sent
+     */
+    private boolean admitPublish(StompFrame stompFrame, String destination, long bytes){
+        PublishRateLimiter limiter = PublishRateLimiter.getInstance();
+        if(!limiter.isEnabled()){
+            return true;
+        }
+        if(this.shouldTerminate){
+            return false; // disconnected for its rate already, the rest of what it sent is dropped
+        }
+        if(this.publishRate == null){
+            this.publishRate = limiter.newConnectionRate();
+        }
+        switch(limiter.getAction()){
+            case DELAY:
+                long ahead = limiter.acquire(this.publishRate, destination, bytes);
+                if(ahead > 0 && this.connections.suspendReading(this.connectionId, (ahead + 999_999) / 1_000_000)){
+                    limiter.recordDelayed();
+                }
+                return true;
+            case DROP:
+                if(limiter.tryAcquire(this.publishRate, destination, bytes) == 0){
+                    return true;
+                }
+                limiter.recordDropped();
+                if(stompFrame.hasHeader("receipt")){
+                    // unlike processError, the connection stays open
+                    this.connections.sendEncoded(this.connectionId, this.addReceiptIfExist(stompFrame,
+                            StompFrameWriter.start(StompServerFrame.ERROR).header(StompFrameWriter.MESSAGE, "Rate limit exceeded"))
+                            .end("The message to " + destination + " was dropped, it was sent faster than allowed."));
+                }
+                return false;
+            case DISCONNECT:
+            default:
+                if(limiter.tryAcquire(this.publishRate, destination, bytes) == 0){
+                    return true;
+                }
+                limiter.recordDisconnected();
+                this.processError(stompFrame, "Rate limit exceeded", "Messages to " + destination + " were sent faster than allowed.");
+                return false;
+        }
+    }
+
     /**
      * process for subscribe
      * @param stompFrame
      */
-    private void processSubscribe(StompFrameParser stompFrame){
+    private void processSubscribe(StompFrame stompFrame){
         String destination = stompFrame.getHeaderValue("destination");
         String id = stompFrame.getHeaderValue("id");
-        
-        this.connections.subscribe(destination, this.connectionId, id);
+
+        // Replayed messages are sent before the receipt:
+        // replay:N asks for the last N messages the destination retained,
+        // journal-offset:N for the journaled messages from offset N, journal-since:T for those published since T (epoch ms)
+        long replay = this.nonNegativeHeader(stompFrame, "replay");
+        long journalOffset = this.nonNegativeHeader(stompFrame, "journal-offset");
+        long journalSince = this.nonNegativeHeader(stompFrame, "journal-since");
+        if(replay < -1 || journalOffset < -1 || journalSince < -1){
+            this.processError(stompFrame, "Invalid replay header", "replay, journal-offset and journal-since must be non-negative numbers.");
+            return;
+        }
+
+        boolean subscribed;
+        if(journalOffset >= 0 || journalSince >= 0){
+            subscribed = this.connections.subscribeFromJournal(destination, this.connectionId, id, journalOffset, journalSince);
+        }
+        else{
+            subscribed = this.connections.subscribe(destination, this.connectionId, id, (int) Math.min(Math.max(replay, 0), Integer.MAX_VALUE));
+        }
+        if(!subscribed){
+            this.processError(stompFrame, "Duplicate subscription id", "The subscription id " + id + " is already used for another destination.");
+            return;
+        }
         
         sendReceiptIfRequested(stompFrame);
+
+        if(STATS_DESTINATION.equals(destination)){
+            this.sendStats(null);
+        }
+    }
+
+    /**
+     * @return the value of the header, -1 if it is missing or -2 if it is not a non-negative number
+     */
+    private long nonNegativeHeader(StompFrame stompFrame, String header){
+        if(!stompFrame.hasHeader(header)){
+            return -1;
+        }
+        try{
+            long value = Long.parseLong(stompFrame.getHeaderValue(header).trim());
+            return value < 0 ? -2 : value;
+        }
+        catch(NumberFormatException e){
+            return -2;
+        }
+    }
+
+    /**
+     * Sends the current server metrics to this client only, as a MESSAGE of its STATS_DESTINATION subscription.
+     * @param stompFrame the SEND asking for them, or null - its receipt is acknowledged.
+     */
+    private void sendStats(StompFrame stompFrame){
+        this.sendToSelf(STATS_DESTINATION, stompFrame, Metrics.render());
+    }
+
+    /**
+     * Sends this client the summary of the game and user named by the SEND's headers, as a MESSAGE of its
+     * SUMMARY_DESTINATION subscription.
+     * @param stompFrame the SEND asking for it - its receipt is acknowledged.
+     */
+    private void sendSummary(StompFrame stompFrame){
+        if(!stompFrame.hasHeader("game") || !stompFrame.hasHeader("user")){
+            this.processError(stompFrame, "Missing mandatory header", "A summary request must have the game and user headers.");
+            return;
+        }
+        String summary = GameSummaries.getInstance().summarize(stompFrame.getHeaderValue("game"), stompFrame.getHeaderValue("user"));
+        this.sendToSelf(SUMMARY_DESTINATION, stompFrame, summary);
+    }
+
+    /**
+     * Sends this client the stored frames of the game's events in the requested time range, on its
+     * EVENTS_DESTINATION subscription, then the receipt if requested. It must be subscribed to the game as well.
+     * @param stompFrame the SEND asking for them
+     */
+    private void sendEvents(StompFrame stompFrame){
+        long from = this.nonNegativeHeader(stompFrame, "from");
+        long to = this.nonNegativeHeader(stompFrame, "to");
+        if(!stompFrame.hasHeader("game") || from < -1 || to < -1){
+            this.processError(stompFrame, "Invalid events request", "An events request must have a game header, from and to must be non-negative numbers.");
+            return;
+        }
+        String game = stompFrame.getHeaderValue("game");
+        if(!this.connections.isUserSubscribed(this.connectionId, game)){
+            this.processError(stompFrame, "Not subscibed to topic", "Must be subscribed to the game in order to request its events!");
+            return;
+        }
+        String subscriptionId = this.connections.getSubscriptionId(this.connectionId, EVENTS_DESTINATION);
+        if(subscriptionId == null){
+            return;
+        }
+        byte[] subscriptionHeader = ("subscription:" + subscriptionId + "\n").getBytes(StandardCharsets.UTF_8);
+        List<EncodedMessage> frames = GameEventStore.getInstance().range(game,
+                (int) Math.min(Math.max(from, 0), Integer.MAX_VALUE), (int) Math.min(to < 0 ? Integer.MAX_VALUE : to, Integer.MAX_VALUE));
+        for(EncodedMessage frame : frames){
+            this.connections.sendEncoded(this.connectionId, frame.splice(frame.indexOf((byte) '\n') + 1, subscriptionHeader));
+        }
+        sendReceiptIfRequested(stompFrame);
+    }
+
+    /**
+     * Sends a MESSAGE to this client only, on its subscription to the destination. Nothing is sent if it is not subscribed.
+     * @param stompFrame the frame it answers, or null - its receipt is acknowledged.
+     */
+    private void sendToSelf(String destination, StompFrame stompFrame, String body){
+        String subscriptionId = this.connections.getSubscriptionId(this.connectionId, destination);
+        if(subscriptionId == null){
+            return;
+        }
+        StompFrameWriter writer = StompFrameWriter.start(StompServerFrame.MESSAGE)
+                .header(StompFrameWriter.SUBSCRIPTION, subscriptionId)
+                .header(StompFrameWriter.DESTINATION, destination)
+                .header(StompFrameWriter.MESSAGE_ID, String.valueOf(this.messageCounter.addAndGet(1)));
+        this.connections.sendEncoded(this.connectionId, this.addReceiptIfExist(stompFrame, writer).end(body));
     }
 
     /**
      * If the client sent a receipt, send him a receipt-id frame back.
      * @param stompFrame
      */
-    private void sendReceiptIfRequested(StompFrameParser stompFrame){
+    private void sendReceiptIfRequested(StompFrame stompFrame){
         if(stompFrame.hasHeader("receipt")) {
-            Map<String, String> msgHeaders = new HashMap<>();
-            this.addReceiptIfExist(stompFrame, msgHeaders);
-            this.connections.send(this.connectionId, this.buildReceiptMessage(stompFrame));
+            this.connections.sendEncoded(this.connectionId, this.buildReceiptMessage(stompFrame));
         }              
     }
 
@@ -162,7 +435,7 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
      * process for unsubscribe
      * @param stompFrame
      */
-    private void processUnsubscribe(StompFrameParser stompFrame){
+    private void processUnsubscribe(StompFrame stompFrame){
         String id = stompFrame.getHeaderValue("id");
         this.connections.unsubscribe(id, this.connectionId);
 
@@ -173,20 +446,18 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
      * Process for disconnect
      * @param stompFrame
      */
-    private void processDisconnect(StompFrameParser stompFrame){
+    private void processDisconnect(StompFrame stompFrame){
         String receipt = stompFrame.getHeaderValue("receipt");
-        this.connections.send(this.connectionId, buildDisconnectMessage(stompFrame, receipt));
+        this.connections.sendEncoded(this.connectionId, buildDisconnectMessage(stompFrame, receipt));
         close();
     }
 
     /**
      * Builds a disconnect message
      * @param receipt
-     * @return String representing disconnect message
+     * @return EncodedMessage representing disconnect message
      */
-    private String buildDisconnectMessage(StompFrameParser stompFrame,String receipt){
-        Map<String, String> msgHeaders = new HashMap<String,String>();
-        this.addReceiptIfExist(stompFrame, msgHeaders);
+    private EncodedMessage buildDisconnectMessage(StompFrame stompFrame,String receipt){
         return this.buildReceiptMessage(stompFrame);
     }
 
@@ -194,54 +465,45 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
      * Builds a connect message
      * @param stompFrame
      * @param version
-     * @return String representing connect message
+     * @param compression true if compression was negotiated
+     * @param heartBeat the negotiated heart-beat header value, null to leave the header out
+     * @return EncodedMessage representing connect message
      */
-    private String buildConnectMessage(StompFrameParser stompFrame,String version){
-        Map<String, String> msgHeaders = new HashMap<String,String>();
-        msgHeaders.put("version",version);
-        this.addReceiptIfExist(stompFrame, msgHeaders);
-        return this.buildResponseMessage("CONNECTED", msgHeaders, null);
+    private EncodedMessage buildConnectMessage(StompFrame stompFrame,String version, boolean compression, String heartBeat){
+        StompFrameWriter writer = StompFrameWriter.start(StompServerFrame.CONNECTED)
+                .header(StompFrameWriter.VERSION, version);
+        if(heartBeat != null){
+            writer.header(StompFrameWriter.HEART_BEAT, heartBeat);
+        }
+        if(compression){
+            writer.header(StompFrameWriter.COMPRESSION, "deflate");
+        }
+        return this.addReceiptIfExist(stompFrame, writer).end(null);
     }
 
     /**
      * Builds a server message (MESSAGE).
-     * @param stompFrame
+     * @param stompFrame the SEND, or null to leave its receipt out
      * @param destination 
      * @param message_id
      * @param msgBody
-     * @return String represeting MESSAGE
-     * @implNote subscription ID is added by Connections (addSubIdToMessage)
+     * @return EncodedMessage represeting MESSAGE
+     * @implNote subscription ID is added by Connections when sending to each subscriber
      */
-    private String buildServerMessage(StompFrameParser stompFrame,String destination, String message_id, String msgBody){
-        Map<String, String> msgHeaders = new HashMap<String,String>();
-        msgHeaders.put("destination",destination);
-        msgHeaders.put("message-id",message_id);
-        this.addReceiptIfExist(stompFrame, msgHeaders);
-
-        return this.buildResponseMessage("MESSAGE", msgHeaders, msgBody);
+    private EncodedMessage buildServerMessage(StompFrame stompFrame,String destination, String message_id, String msgBody){
+        StompFrameWriter writer = StompFrameWriter.start(StompServerFrame.MESSAGE)
+                .header(StompFrameWriter.DESTINATION, destination)
+                .header(StompFrameWriter.MESSAGE_ID, message_id);
+        return this.addReceiptIfExist(stompFrame, writer).end(msgBody);
     }
 
     /**
      * Builds Receipt message
      * @param stompFrame
-     * @return
-     */
-    private String buildReceiptMessage(StompFrameParser stompFrame){
-        Map<String, String> msgHeaders = new HashMap<String,String>();
-        addReceiptIfExist(stompFrame, msgHeaders);
-        return this.buildResponseMessage("RECEIPT", msgHeaders, null);
-    }
-
-
-    /**
-     * Builds a general message based on input.
-     * @param msgCommand
-     * @param msgHeaders
-     * @param msgBody
-     * @return String representing a general message to send
+     * @return EncodedMessage representing RECEIPT
      */
-    private String buildResponseMessage(String msgCommand, Map<String, String> msgHeaders, String msgBody){
-        return new StompFrameParser(msgCommand, msgHeaders, msgBody).toString();
+    private EncodedMessage buildReceiptMessage(StompFrame stompFrame){
+        return this.addReceiptIfExist(stompFrame, StompFrameWriter.start(StompServerFrame.RECEIPT)).end(null);
     }
 
     /**
@@ -250,25 +512,26 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
      * @param errorHeader
      * @param errorBody
      */
-    private void processError(StompFrameParser stompFrame, String errorHeader, String errorBody){
+    private void processError(StompFrame stompFrame, String errorHeader, String errorBody){
         this.shouldTerminate = true;
-        Map<String,String> errorHeaders = new HashMap<String,String>();
-        errorHeaders.put("message", errorHeader);
-        this.addReceiptIfExist(stompFrame, errorHeaders);
+        StompFrameWriter writer = StompFrameWriter.start(StompServerFrame.ERROR)
+                .header(StompFrameWriter.MESSAGE, errorHeader);
 
-        this.connections.send(this.connectionId, buildResponseMessage("ERROR", errorHeaders , errorBody));
+        this.connections.sendEncoded(this.connectionId, this.addReceiptIfExist(stompFrame, writer).end(errorBody));
         this.close();
     }
 
     /**
-     * Check if receipt exists in client frame - if yes, adds it to the given map (which will be sent back to the user)
+     * Check if receipt exists in client frame - if yes, adds it as receipt-id to the frame being written (which will be sent back to the user)
      * @param stompFrame
-     * @param responseHeaders
+     * @param writer
+     * @return the writer
      */
-    private void addReceiptIfExist(StompFrameParser stompFrame, Map<String,String> responseHeaders){
+    private StompFrameWriter addReceiptIfExist(StompFrame stompFrame, StompFrameWriter writer){
         if(stompFrame != null && stompFrame.hasHeader("receipt")){
-            responseHeaders.put("receipt-id", stompFrame.getHeaderValue("receipt"));
+            writer.header(StompFrameWriter.RECEIPT_ID, stompFrame.getHeaderValue("receipt"));
         }
+        return writer;
     }
 
     @Override
@@ -284,7 +547,7 @@ public class StompMessagingProtocolImpl implements StompMessagingProtocol<String
             connections.disconnect(this.connectionId);
         }
         Database.getInstance().logout(this.connectionId);
-        System.out.println("[DEBUG] Connection closed for ID " + this.connectionId + ". User logged out.");
+        LOG.debug(() -> "Connection closed for ID " + this.connectionId + ". User logged out.");
     }
     
 }
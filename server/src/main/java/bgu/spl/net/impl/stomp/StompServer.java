@@ -2,7 +2,12 @@ package bgu.spl.net.impl.stomp;
 
 import bgu.spl.net.api.MessagingProtocol;
 import bgu.spl.net.impl.data.Database;
+import bgu.spl.net.metrics.AdminServer;
+import bgu.spl.net.srv.OutboundLimits;
 import bgu.spl.net.srv.Server;
+import bgu.spl.net.srv.SlowConsumerPolicy;
+
+import java.io.IOException;
 
 public class StompServer {
 
@@ -10,18 +15,24 @@ public class StompServer {
         // TODO: implement this
 
         if(args.length != 2){
-            System.out.println("Need exactly two inputs: port, and either \"tpc\" or \"reactor\"");
+            System.out.println("Need exactly two inputs: port, and either \"tpc\", \"vtpc\" (virtual threads, Java 21+), \"reactor\" or \"reactor:N\" (N selector threads)");
             return;
         }
 
         int port = Integer.parseInt(args[0]);
         String serverType = args[1];
-        if(serverType.equals("reactor")){
+        // Write the queued SQL statements before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> Database.getInstance().shutdown()));
+        startAdminServer();
+        if(serverType.equals("reactor") || serverType.startsWith("reactor:")){
+            int selectorThreads = serverType.equals("reactor") ? 0 : Integer.parseInt(serverType.substring("reactor:".length()));
             Server.reactor(
                 Runtime.getRuntime().availableProcessors(), 
+                selectorThreads,
                 port, 
                 () -> new StompMessagingProtocolImpl(), 
-                () -> new StompMessageEncoderDecoder()
+                () -> new StompMessageEncoderDecoder(),
+                outboundLimits()
             ).serve();
         }
         else if(serverType.equals("tpc")){
@@ -30,9 +41,53 @@ public class StompServer {
                 () -> new StompMessagingProtocolImpl(), 
                 () -> new StompMessageEncoderDecoder()
             ).serve();
+        }
+        else if(serverType.equals("vtpc")){
+            Server<String> server;
+            try{
+                server = Server.virtualThreadPerClient(
+                    port, 
+                    () -> new StompMessagingProtocolImpl(), 
+                    () -> new StompMessageEncoderDecoder()
+                );
+            } catch(UnsupportedOperationException e){
+                System.out.println(e.getMessage());
+                return;
+            }
+            server.serve();
         } else{
-            System.out.println("Not a supported server type (" + serverType + "). Supported server types are \"tpc\" or \"reactor\".");
+            System.out.println("Not a supported server type (" + serverType + "). Supported server types are \"tpc\", \"vtpc\", \"reactor\" or \"reactor:N\".");
         }
         Database.getInstance().printReport();
     }
+
+    /**
+     * Serves the metrics over HTTP on 127.0.0.1, if a port is given with -Dstomp.admin.port.
+     */
+    private static void startAdminServer() {
+        Integer adminPort = Integer.getInteger("stomp.admin.port");
+        if(adminPort == null){
+            return;
+        }
+        try{
+            AdminServer.start(adminPort);
+        } catch(IOException e){
+            System.out.println("Could not start the admin server on port " + adminPort + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Outbound queue bounds for the reactor. Configurable with -Dstomp.outbound.high and -Dstomp.outbound.low (bytes)
+     * and -Dstomp.outbound.policy (DROP_OLDEST, DISCONNECT or PAUSE_PUBLISHERS).
+     * @return OutboundLimits
+     */
+    private static OutboundLimits outboundLimits() {
+        long high = Long.getLong("stomp.outbound.high", 8L << 20);
+        long low = Long.getLong("stomp.outbound.low", 2L << 20);
+        SlowConsumerPolicy policy = SlowConsumerPolicy.valueOf(System.getProperty("stomp.outbound.policy", "DISCONNECT"));
+
+        return new OutboundLimits(high, low, policy, StompFrameWriter.start(StompServerFrame.ERROR)
+                .header(StompFrameWriter.MESSAGE, "Slow consumer")
+                .end("The server disconnected you since you did not read messages fast enough."));
+    }
 }
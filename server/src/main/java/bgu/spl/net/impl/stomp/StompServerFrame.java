@@ -1,10 +1,26 @@
 package bgu.spl.net.impl.stomp;
 
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames sent by the server. Each one keeps its command line already encoded.
+ */
 public enum StompServerFrame {
-    
+    CONNECTED,
+    MESSAGE,
+    RECEIPT,
+    ERROR;
+
+    private final byte[] commandLine;
+
+    StompServerFrame() {
+        this.commandLine = (name() + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the encoded command followed by its new line. Must not be modified.
+     */
+    byte[] getCommandLine() {
+        return commandLine;
+    }
 }
-// Server Frames:
-//ERROR
-// CONNECT -> CONNECTED
-// MESSAGE
-//RECEIPT
\ No newline at end of file
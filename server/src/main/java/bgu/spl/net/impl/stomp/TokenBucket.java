@@ -0,0 +1,85 @@
+package bgu.spl.net.impl.stomp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket refilled at a fixed rate, lock free.
+ * Instead of a token count it keeps the time at which the bucket would be full again (the generic cell rate
+ * algorithm's "theoretical arrival time"), so taking tokens is a single compare-and-set of one long and refilling
+ * costs nothing. Taking n tokens moves that time n / rate seconds forward; it is allowed while the time stays
+ * within capacity / rate seconds of now.
+ */
+/*package*/ final class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long rate;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param rate tokens added per second, positive
+     * @param capacity tokens the bucket holds, the largest burst - it starts full
+     */
+    TokenBucket(long rate, long capacity) {
+        if (rate <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive, got rate=" + rate + " capacity=" + capacity);
+        }
+        this.rate = rate;
+        this.capacityNanos = nanosFor(capacity);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes the tokens if the bucket has them, otherwise takes nothing. More tokens than the capacity are taken
+     * from a full bucket, going into debt, or they could never be.
+     * @return 0 if they were taken, otherwise the nanoseconds until the bucket would have them
+     */
+    long tryAcquire(long tokens, long nowNanos) {
+        long cost = nanosFor(tokens);
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + cost;
+            long excess = next - nowNanos - capacityNanos;
+            if (excess > 0 && current > nowNanos) {
+                return excess;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Takes the tokens even if the bucket does not have them, going into debt.
+     * @return the nanoseconds until the bucket is out of debt, 0 if it was not overdrawn
+     */
+    long acquire(long tokens, long nowNanos) {
+        long cost = nanosFor(tokens);
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + cost;
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, next - nowNanos - capacityNanos);
+            }
+        }
+    }
+
+    /**
+     * @return true if the bucket is full, so it behaves exactly like a new one
+     */
+    boolean isFull(long nowNanos) {
+        return fullAt.get() - nowNanos <= 0;
+    }
+
+    /**
+     * Gives back tokens taken by tryAcquire, when what they were taken for did not happen after all.
+     */
+    void release(long tokens) {
+        fullAt.addAndGet(-nanosFor(tokens));
+    }
+
+    private long nanosFor(long tokens) {
+        return tokens * NANOS_PER_SECOND / rate;
+    }
+}
@@ -0,0 +1,169 @@
+package bgu.spl.net.journal;
+
+import bgu.spl.net.log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The journal of one channel: its messages in order, numbered by offsets from 0, in a directory of segment files.
+ * The last segment takes the appends; when a message does not fit, a new segment is started and the oldest segments
+ * beyond the retention limits are deleted. Thread safe - appends, replays and rolling are serialized.
+ */
+public final class ChannelJournal {
+
+    private static final Logger LOG = Logger.get(ChannelJournal.class);
+
+    private final Path dir;
+    private final Journal journal;
+
+    private final List<Segment> segments = new ArrayList<>(); //oldest first, the last one is active
+    private long closedBytes = 0; //written to all segments but the active one
+
+    ChannelJournal(Path dir, Journal journal) throws IOException {
+        this.dir = dir;
+        this.journal = journal;
+        Files.createDirectories(dir);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.log")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null); //names are zero padded base offsets
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            if (!segments.isEmpty()) {
+                closedBytes += active().position();
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(dir, 0, journal.getSegmentBytes()));
+        }
+    }
+
+    /**
+     * Appends a message made of the given buffers (read from their positions, which are not moved).
+     * @param timestampMillis when the message was published; earlier than the previous one counts as equal to it
+     * @return the offset of the message
+     */
+    public synchronized long append(long timestampMillis, ByteBuffer... payload) throws IOException {
+        int length = 0;
+        for (ByteBuffer part : payload) {
+            length += part.remaining();
+        }
+        Segment segment = active();
+        long offset = segment.nextOffset();
+        if (!segment.append(timestampMillis, payload, length)) {
+            segment = roll(length);
+            segment.append(timestampMillis, payload, length);
+        }
+        Journal.APPENDED_BYTES.add(length);
+        if (journal.getFlushIntervalMillis() == 0) {
+            segment.flush(segment.position());
+        }
+        return offset;
+    }
+
+    /**
+     * Visits the retained messages from the given offset on, in order, until the visitor returns false.
+     * Appends wait for the replay to end.
+     * @param fromOffset the first offset to visit; offsets older than the journal retains are skipped
+     */
+    public synchronized void replay(long fromOffset, Journal.Visitor visitor) {
+        for (Segment segment : segments) {
+            if (segment.nextOffset() > fromOffset && !segment.read(fromOffset, visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the offset of the first retained message published at or after the given time,
+     *         or the next offset if there is none
+     */
+    public synchronized long offsetAt(long timestampMillis) {
+        for (Segment segment : segments) {
+            if (segment.lastTimestamp() >= timestampMillis) {
+                return segment.offsetAt(timestampMillis);
+            }
+        }
+        return active().nextOffset();
+    }
+
+    /**
+     * @return the offset the next message will get
+     */
+    public synchronized long nextOffset() {
+        return active().nextOffset();
+    }
+
+    /**
+     * @return the offset of the oldest retained message
+     */
+    public synchronized long firstOffset() {
+        return segments.get(0).baseOffset;
+    }
+
+    /**
+     * Forces everything appended so far to disk. The force itself runs without blocking appends.
+     * @return the number of segments forced
+     */
+    int flush() {
+        Segment[] dirty;
+        int[] positions;
+        synchronized (this) {
+            dirty = new Segment[segments.size()];
+            positions = new int[segments.size()];
+            int n = 0;
+            for (Segment segment : segments) {
+                if (segment.isDirty()) {
+                    dirty[n] = segment;
+                    positions[n++] = segment.position();
+                }
+            }
+        }
+        int n = 0;
+        for (; n < dirty.length && dirty[n] != null; n++) {
+            dirty[n].flush(positions[n]);
+        }
+        return n;
+    }
+
+    private Segment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Starts a new segment that fits at least a message of the given length, then applies retention.
+     */
+    private Segment roll(int length) throws IOException {
+        Segment previous = active();
+        int capacity = Math.max(journal.getSegmentBytes(), Segment.RECORD_HEADER + length);
+        Segment segment = Segment.create(dir, previous.nextOffset(), capacity);
+        closedBytes += previous.position();
+        segments.add(segment);
+        LOG.debug(() -> "Rolled " + dir.getFileName() + " to segment " + segment.baseOffset);
+
+        long now = System.currentTimeMillis();
+        while (segments.size() > 1 && isExpired(segments.get(0), now)) {
+            Segment oldest = segments.remove(0);
+            closedBytes -= oldest.position();
+            // the mapping stays valid until it is collected, so deleting the file is safe
+            Files.deleteIfExists(oldest.path);
+        }
+        return segment;
+    }
+
+    private boolean isExpired(Segment segment, long now) {
+        return closedBytes > journal.getRetentionBytes()
+                || (journal.getRetentionMillis() > 0 && now - segment.lastTimestamp() > journal.getRetentionMillis());
+    }
+}
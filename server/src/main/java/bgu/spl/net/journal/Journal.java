@@ -0,0 +1,194 @@
+package bgu.spl.net.journal;
+
+import bgu.spl.net.log.Logger;
+import bgu.spl.net.metrics.Histogram;
+import bgu.spl.net.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durable, append-only journals of channel messages, one directory of memory mapped segment files per channel.
+ *
+ * Appends only copy into the mapped file. A background thread forces all written segments to disk every
+ * flush interval, so one fsync commits every message appended in between (group commit); a message is durable
+ * once the flush after it ran. With a flush interval of 0 every append forces its segment before returning.
+ *
+ * Each channel keeps at least its active segment, older segments are deleted when the channel's closed segments
+ * exceed the retention bytes or are older than the retention time.
+ */
+public final class Journal {
+
+    private static final Logger LOG = Logger.get(Journal.class);
+
+    private static final Histogram FLUSH_LATENCY = Metrics.histogram("journal_flush_seconds",
+            "Time to force the written journal segments to disk", Metrics.NANOS_PER_SECOND);
+
+    static final LongAdder APPENDED_BYTES = new LongAdder();
+
+    static {
+        Metrics.counter("journal_appended_bytes_total", "Message bytes appended to the journal", APPENDED_BYTES::sum);
+    }
+
+    /**
+     * Visits journaled messages in order.
+     */
+    public interface Visitor {
+        /**
+         * @return false to stop visiting
+         */
+        boolean visit(long offset, long timestampMillis, byte[] payload);
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final long flushIntervalMillis;
+
+    private final ConcurrentMap<String, ChannelJournal> channels = new ConcurrentHashMap<>();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    /**
+     * @param dir directory holding a subdirectory per channel, created if missing
+     * @param segmentBytes size of each segment file
+     * @param retentionBytes bytes kept per channel besides the active segment
+     * @param retentionMillis age after which a segment is deleted, 0 for no limit
+     * @param flushIntervalMillis time between group commits, 0 to force every append
+     */
+    public Journal(Path dir, int segmentBytes, long retentionBytes, long retentionMillis, long flushIntervalMillis) {
+        if (segmentBytes <= Segment.RECORD_HEADER || retentionBytes < 0 || retentionMillis < 0 || flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid journal settings");
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        if (flushIntervalMillis > 0) {
+            flusher = new Thread(this::flushLoop, "journal-flush");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "journal-close"));
+    }
+
+    /**
+     * A journal in -Dstomp.journal.dir, or null if it is not set.
+     * Settings from -Dstomp.journal.segment.bytes (64MB), -Dstomp.journal.retention.bytes (1GB per channel),
+     * -Dstomp.journal.retention.seconds (0, no age limit) and -Dstomp.journal.flush.millis (10).
+     * @return Journal or null
+     */
+    public static Journal fromSystemProperties() {
+        String dir = System.getProperty("stomp.journal.dir");
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        return new Journal(Paths.get(dir),
+                Integer.getInteger("stomp.journal.segment.bytes", 64 << 20),
+                Long.getLong("stomp.journal.retention.bytes", 1L << 30),
+                Long.getLong("stomp.journal.retention.seconds", 0L) * 1000,
+                Long.getLong("stomp.journal.flush.millis", 10L));
+    }
+
+    /**
+     * @return the journal of the channel, recovering it from disk the first time
+     * @throws UncheckedIOException if its files can not be created or read
+     */
+    public ChannelJournal channel(String name) {
+        ChannelJournal channel = channels.get(name);
+        if (channel != null) {
+            return channel;
+        }
+        synchronized (this) {
+            channel = channels.get(name);
+            if (channel == null) {
+                try {
+                    channel = new ChannelJournal(dir.resolve(directoryName(name)), this);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to open the journal of " + name, e);
+                }
+                channels.put(name, channel);
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Channel names are destinations like /topic/a - escaped into a single file name.
+     */
+    private static String directoryName(String channel) {
+        try {
+            return URLEncoder.encode(channel, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     */
+    public void flush() {
+        long start = System.nanoTime();
+        int forced = 0;
+        for (ChannelJournal channel : channels.values()) {
+            try {
+                forced += channel.flush();
+            } catch (RuntimeException e) {
+                LOG.error("Failed to flush the journal", e);
+            }
+        }
+        if (forced > 0) {
+            FLUSH_LATENCY.recordSince(start);
+        }
+    }
+
+    /**
+     * Stops the background flushes and flushes once more. Appending afterwards is not durable.
+     */
+    public void close() {
+        closed = true;
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        flush();
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(flushIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    long getRetentionBytes() {
+        return retentionBytes;
+    }
+
+    long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+}
@@ -0,0 +1,215 @@
+package bgu.spl.net.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One file of a channel journal, preallocated and memory mapped as a whole.
+ * Records are [int record size][long timestamp][payload], back to back from position 0; the file is zero filled,
+ * so a record size of 0 marks the end. The size is written last, so a record is either complete or not there.
+ * A sparse index in memory maps every record that starts a new INDEX_INTERVAL bytes block to its position.
+ * Guarded by the owning ChannelJournal, except for flush.
+ */
+/*package*/ final class Segment {
+
+    static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+
+    private static final int INDEX_INTERVAL = 4096;
+
+    final long baseOffset;
+    final Path path;
+
+    private final MappedByteBuffer buffer;
+
+    private int position = 0; //end of the last record
+    private long nextOffset;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private volatile int flushedPosition = 0;
+
+    // Sparse index: offsetDeltas[i] starts at positions[i] and has timestamp times[i]
+    private int[] offsetDeltas = new int[16];
+    private int[] positions = new int[16];
+    private long[] times = new long[16];
+    private int indexSize = 0;
+
+    private Segment(long baseOffset, Path path, MappedByteBuffer buffer) {
+        this.baseOffset = baseOffset;
+        this.path = path;
+        this.buffer = buffer;
+        this.nextOffset = baseOffset;
+    }
+
+    /**
+     * Creates a new segment file of the given capacity.
+     */
+    static Segment create(Path dir, long baseOffset, int capacity) throws IOException {
+        Path path = dir.resolve(fileName(baseOffset));
+        return new Segment(baseOffset, path, map(path, capacity));
+    }
+
+    /**
+     * Maps an existing segment file and recovers its records and index.
+     */
+    static Segment open(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        long baseOffset = Long.parseLong(name.substring(0, name.length() - ".log".length()));
+        Segment segment = new Segment(baseOffset, path, map(path, (int) Files.size(path)));
+        segment.recover();
+        return segment;
+    }
+
+    static String fileName(long baseOffset) {
+        return String.format("%020d.log", baseOffset);
+    }
+
+    private static MappedByteBuffer map(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity); //the mapping outlives the channel
+        }
+    }
+
+    private void recover() {
+        while (position + RECORD_HEADER <= buffer.capacity()) {
+            int size = buffer.getInt(position);
+            if (size < RECORD_HEADER || position + size > buffer.capacity()) {
+                break;
+            }
+            indexRecord(position, buffer.getLong(position + Integer.BYTES));
+            lastTimestamp = buffer.getLong(position + Integer.BYTES);
+            position += size;
+            nextOffset++;
+        }
+        flushedPosition = position;
+    }
+
+    /**
+     * @return false if the record does not fit in this segment
+     */
+    boolean append(long timestamp, ByteBuffer[] payload, int length) {
+        int size = RECORD_HEADER + length;
+        if (buffer.capacity() - position < size) {
+            return false;
+        }
+        timestamp = Math.max(timestamp, lastTimestamp); //keeps timestamps ordered for searching
+        ByteBuffer out = buffer.duplicate();
+        out.position(position + Integer.BYTES);
+        out.putLong(timestamp);
+        for (ByteBuffer part : payload) {
+            out.put(part.duplicate());
+        }
+        buffer.putInt(position, size);
+
+        indexRecord(position, timestamp);
+        lastTimestamp = timestamp;
+        position += size;
+        nextOffset++;
+        return true;
+    }
+
+    private void indexRecord(int recordPosition, long timestamp) {
+        if (indexSize > 0 && recordPosition / INDEX_INTERVAL == positions[indexSize - 1] / INDEX_INTERVAL) {
+            return;
+        }
+        if (indexSize == positions.length) {
+            offsetDeltas = Arrays.copyOf(offsetDeltas, indexSize * 2);
+            positions = Arrays.copyOf(positions, indexSize * 2);
+            times = Arrays.copyOf(times, indexSize * 2);
+        }
+        offsetDeltas[indexSize] = (int) (nextOffset - baseOffset);
+        positions[indexSize] = recordPosition;
+        times[indexSize] = timestamp;
+        indexSize++;
+    }
+
+    /**
+     * Visits the records from the given offset on.
+     * @return false if the visitor stopped
+     */
+    boolean read(long fromOffset, Journal.Visitor visitor) {
+        long offset = baseOffset;
+        int pos = 0;
+        // start from the last indexed record at or before fromOffset
+        for (int i = indexSize - 1; i >= 0; i--) {
+            if (baseOffset + offsetDeltas[i] <= fromOffset) {
+                offset = baseOffset + offsetDeltas[i];
+                pos = positions[i];
+                break;
+            }
+        }
+        while (pos < position) {
+            int size = buffer.getInt(pos);
+            if (offset >= fromOffset) {
+                byte[] payload = new byte[size - RECORD_HEADER];
+                ByteBuffer in = buffer.duplicate();
+                in.position(pos + RECORD_HEADER);
+                in.get(payload);
+                if (!visitor.visit(offset, buffer.getLong(pos + Integer.BYTES), payload)) {
+                    return false;
+                }
+            }
+            pos += size;
+            offset++;
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset of the first record with a timestamp of at least the given one, or nextOffset if none
+     */
+    long offsetAt(long timestamp) {
+        if (lastTimestamp < timestamp) {
+            return nextOffset;
+        }
+        long offset = baseOffset;
+        int pos = 0;
+        for (int i = indexSize - 1; i >= 0; i--) {
+            if (times[i] < timestamp) {
+                offset = baseOffset + offsetDeltas[i];
+                pos = positions[i];
+                break;
+            }
+        }
+        while (pos < position && buffer.getLong(pos + Integer.BYTES) < timestamp) {
+            pos += buffer.getInt(pos);
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * Forces the records written up to the given position to the file. May run concurrently with appends.
+     */
+    void flush(int upTo) {
+        if (upTo > flushedPosition) {
+            buffer.force();
+            flushedPosition = upTo;
+        }
+    }
+
+    boolean isDirty() {
+        return position > flushedPosition;
+    }
+
+    int position() {
+        return position;
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    boolean isEmpty() {
+        return position == 0;
+    }
+}
@@ -0,0 +1,165 @@
+package bgu.spl.net.log;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands log events from any thread to a single background thread that formats and prints them.
+ *
+ * The events go through a bounded lock-free ring (Vyukov's MPMC queue, used here with one consumer).
+ * A full ring drops the event and counts it instead of blocking the caller - an I/O or actor thread
+ * must never wait for the console. The number of dropped events is reported once the ring drains.
+ * An idle drain thread parks until a producer unparks it, so an idle server does not wake it up at all.
+ *
+ * The capacity is set with -Dstomp.log.buffer (rounded up to a power of two), 8192 by default.
+ */
+final class AsyncAppender {
+
+    private static final AsyncAppender INSTANCE = new AsyncAppender(Integer.getInteger("stomp.log.buffer", 8192));
+
+    private final AtomicReferenceArray<LogEvent> slots;
+    // sequences[i] == position: slot free for the producer of position, position + 1: holds its event
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private long dequeuePosition = 0; //only touched by the drain thread
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread drainer;
+    private volatile boolean drainerParked = false; //set by the drain thread before it parks
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS"); //only used by the drain thread
+
+    private AsyncAppender(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+
+        drainer = new Thread(this::drainLoop, "log-writer");
+        drainer.setDaemon(true);
+        drainer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "log-flush"));
+    }
+
+    static AsyncAppender getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds the event without blocking, drops it if the ring is full.
+     */
+    void append(LogEvent event) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, event);
+                    sequences.set(index, position + 1);
+                    wakeDrainer();
+                    return;
+                }
+                position = enqueuePosition.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                wakeDrainer();
+                return;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Unparks the drain thread if it is parked. Called after publishing, and the drain thread checks the ring after
+     * announcing it parks (both volatile), so either it sees the event or the producer sees it parked.
+     */
+    private void wakeDrainer() {
+        if (drainerParked) {
+            drainerParked = false;
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) dequeuePosition & mask) != dequeuePosition + 1 && dropped.get() == 0;
+    }
+
+    private LogEvent poll() {
+        int index = (int) dequeuePosition & mask;
+        if (sequences.get(index) != dequeuePosition + 1) {
+            return null;
+        }
+        LogEvent event = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, dequeuePosition + mask + 1);
+        dequeuePosition++;
+        return event;
+    }
+
+    private void drainLoop() {
+        while (true) {
+            if (!drain()) {
+                drainerParked = true;
+                if (isEmpty()) {
+                    LockSupport.park(this);
+                }
+                drainerParked = false;
+            }
+        }
+    }
+
+    /**
+     * Prints every available event.
+     * @return true iff anything was printed
+     */
+    private synchronized boolean drain() {
+        // Looked up every time, so a redirected System.out is respected
+        PrintStream out = System.out;
+        boolean printed = false;
+        LogEvent event;
+        while ((event = poll()) != null) {
+            out.println(format(event));
+            printed = true;
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.println(timeFormat.format(new Date()) + " WARN  [log-writer] AsyncAppender - dropped " + lost
+                    + " log events, the log buffer was full");
+            printed = true;
+        }
+        if (printed) {
+            out.flush();
+        }
+        return printed;
+    }
+
+    private String format(LogEvent event) {
+        StringBuilder line = new StringBuilder(128)
+                .append(timeFormat.format(new Date(event.timestamp))).append(' ')
+                .append(event.level.name());
+        for (int i = event.level.name().length(); i < 5; i++) {
+            line.append(' ');
+        }
+        line.append(" [").append(event.thread).append("] ")
+                .append(event.logger).append(" - ")
+                .append(event.message());
+        if (event.error != null) {
+            StringWriter trace = new StringWriter();
+            event.error.printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().trim());
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,12 @@
+package bgu.spl.net.log;
+
+/**
+ * Log levels, from the most verbose. A logger set to a level writes events of that level and above.
+ */
+public enum Level {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
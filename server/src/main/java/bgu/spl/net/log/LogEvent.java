@@ -0,0 +1,41 @@
+package bgu.spl.net.log;
+
+import java.util.function.Supplier;
+
+/**
+ * A single log call, captured on the calling thread and formatted later by the AsyncAppender.
+ */
+final class LogEvent {
+
+    final Level level;
+    final String logger;
+    final String thread;
+    final long timestamp;
+    final Throwable error;
+    private final String message;
+    private final Supplier<String> supplier;
+
+    LogEvent(Level level, String logger, String message, Supplier<String> supplier, Throwable error) {
+        this.level = level;
+        this.logger = logger;
+        this.message = message;
+        this.supplier = supplier;
+        this.error = error;
+        this.thread = Thread.currentThread().getName();
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the message, building it from the supplier if there is one
+     */
+    String message() {
+        if (supplier == null) {
+            return message;
+        }
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            return "<failed to build log message: " + e + ">";
+        }
+    }
+}
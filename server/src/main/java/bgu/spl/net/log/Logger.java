@@ -0,0 +1,96 @@
+package bgu.spl.net.log;
+
+import java.util.function.Supplier;
+
+/**
+ * Leveled logging facade. Events are handed to a background thread which formats and prints them,
+ * so logging never blocks the calling thread, and a disabled level costs a single comparison.
+ *
+ * Messages given as a Supplier are only built if the level is enabled, on the background thread -
+ * a supplier must only capture values that don't change afterwards.
+ *
+ * The level is set with -Dstomp.log.level (DEBUG, INFO, WARN, ERROR or OFF), INFO by default.
+ */
+public final class Logger {
+
+    private static volatile Level level = parseLevel(System.getProperty("stomp.log.level"));
+
+    private final String name;
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param owner
+     * @return a logger named after the class
+     */
+    public static Logger get(Class<?> owner) {
+        return new Logger(owner.getSimpleName());
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    private static Level parseLevel(String value) {
+        if (value == null) {
+            return Level.INFO;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    public boolean isEnabled(Level eventLevel) {
+        return eventLevel != Level.OFF && eventLevel.compareTo(level) >= 0;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message, null, null);
+    }
+
+    public void debug(Supplier<String> message) {
+        log(Level.DEBUG, null, message, null);
+    }
+
+    public void info(String message) {
+        log(Level.INFO, message, null, null);
+    }
+
+    public void info(Supplier<String> message) {
+        log(Level.INFO, null, message, null);
+    }
+
+    public void warn(String message) {
+        log(Level.WARN, message, null, null);
+    }
+
+    public void warn(String message, Throwable error) {
+        log(Level.WARN, message, null, error);
+    }
+
+    public void error(String message) {
+        log(Level.ERROR, message, null, null);
+    }
+
+    public void error(String message, Throwable error) {
+        log(Level.ERROR, message, null, error);
+    }
+
+    private void log(Level eventLevel, String message, Supplier<String> supplier, Throwable error) {
+        if (isEnabled(eventLevel)) {
+            AsyncAppender.getInstance().append(new LogEvent(eventLevel, name, message, supplier, error));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package bgu.spl.net.metrics;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import bgu.spl.net.log.Logger;
+
+/**
+ * Serves Metrics.render() over plain HTTP on a local port, e.g. for curl or a Prometheus scraper.
+ * Every request gets the metrics, whatever its path. Requests are handled one at a time on a daemon thread.
+ */
+public class AdminServer implements Closeable {
+
+    private static final Logger LOG = Logger.get(AdminServer.class);
+
+    private static final int READ_TIMEOUT_MILLIS = 2000;
+
+    private final ServerSocket serverSocket;
+
+    private AdminServer(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Starts serving on the loopback interface.
+     * @param port
+     * @return the running server
+     * @throws IOException if the port could not be bound
+     */
+    public static AdminServer start(int port) throws IOException {
+        AdminServer server = new AdminServer(new ServerSocket(port, 16, InetAddress.getLoopbackAddress()));
+        Thread thread = new Thread(server::serve, "admin");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Metrics served on http://127.0.0.1:" + port + "/metrics");
+        return server;
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try (Socket client = serverSocket.accept()) {
+                client.setSoTimeout(READ_TIMEOUT_MILLIS);
+                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                    //skip the request line and headers
+                }
+                byte[] body = Metrics.render().getBytes(StandardCharsets.UTF_8);
+                OutputStream out = client.getOutputStream();
+                out.write(("HTTP/1.0 200 OK\r\n"
+                        + "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+                        + "Content-Length: " + body.length + "\r\n"
+                        + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(body);
+                out.flush();
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    LOG.debug(() -> "Admin request failed: " + ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,145 @@
+package bgu.spl.net.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the server's histograms and gauges, rendered in the Prometheus text format.
+ *
+ * Histograms are registered once (usually into a static final field) and recorded into directly,
+ * the registry is only consulted when rendering. Histograms are exported as summaries with a few
+ * quantiles, plus a _max series.
+ */
+public final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /** Scale for histograms recorded in nanoseconds and exported in seconds. */
+    public static final double NANOS_PER_SECOND = 1e9;
+
+    // name -> family, in registration order
+    private static final Map<String, Family> families = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param scale the recorded values are divided by it when exported
+     * @return the histogram registered under the name, registering a new one if there is none
+     */
+    public static Histogram histogram(String name, String help, double scale) {
+        return histogram(name, help, scale, null, null);
+    }
+
+    /**
+     * @param label label name, or null for an unlabeled series
+     * @param value label value
+     * @return the histogram registered under the name and label, registering a new one if there is none
+     */
+    public static synchronized Histogram histogram(String name, String help, double scale, String label, String value) {
+        Family family = family(name, help, "summary", scale);
+        String labels = label == null ? "" : label + "=\"" + value + "\"";
+        for (Series series : family.series) {
+            if (series.labels.equals(labels)) {
+                return series.histogram;
+            }
+        }
+        Histogram histogram = new Histogram();
+        family.series.add(new Series(labels, histogram, null));
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, replacing a metric of the same name - e.g. registered by an earlier server in this JVM.
+     */
+    public static void gauge(String name, String help, LongSupplier value) {
+        register(name, help, "gauge", value);
+    }
+
+    /**
+     * Registers a counter, a value that only grows, replacing a metric of the same name.
+     */
+    public static void counter(String name, String help, LongSupplier value) {
+        register(name, help, "counter", value);
+    }
+
+    private static synchronized void register(String name, String help, String type, LongSupplier value) {
+        Family family = family(name, help, type, 1);
+        family.series.clear();
+        family.series.add(new Series("", null, value));
+    }
+
+    private static Family family(String name, String help, String type, double scale) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(help, type, scale);
+            families.put(name, family);
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    public static synchronized String render() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Series series : family.series) {
+                if (series.gauge != null) {
+                    out.append(name).append(' ').append(series.gauge.getAsLong()).append('\n');
+                } else {
+                    renderHistogram(out, name, series, family.scale);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, Series series, double scale) {
+        Histogram histogram = series.histogram;
+        String separator = series.labels.isEmpty() ? "" : ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(series.labels).append(separator)
+                    .append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100) / scale).append('\n');
+        }
+        String labels = series.labels.isEmpty() ? "" : "{" + series.labels + "}";
+        out.append(name).append("_sum").append(labels).append(' ').append(histogram.getSum() / scale).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(histogram.getCount()).append('\n');
+        out.append(name).append("_max").append(labels).append(' ').append(histogram.getMax() / scale).append('\n');
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final double scale;
+        final List<Series> series = new ArrayList<>();
+
+        Family(String help, String type, double scale) {
+            this.help = help;
+            this.type = type;
+            this.scale = scale;
+        }
+    }
+
+    private static final class Series {
+        final String labels;
+        final Histogram histogram;
+        final LongSupplier gauge;
+
+        Series(String labels, Histogram histogram, LongSupplier gauge) {
+            this.labels = labels;
+            this.histogram = histogram;
+            this.gauge = gauge;
+        }
+    }
+}
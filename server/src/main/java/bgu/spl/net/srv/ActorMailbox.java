@@ -0,0 +1,80 @@
+package bgu.spl.net.srv;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The pending tasks of a single actor, owned by the actor itself.
+ * Any thread may add tasks (a single atomic swap), only the thread currently running the actor takes them out.
+ * The scheduled flag guarantees at most one thread runs the actor at a time.
+ */
+public final class ActorMailbox {
+
+    private final AtomicReference<Node> tail;
+    private Node head; //only touched by the thread running the actor
+    private long polledEnqueuedAt; //only touched by the thread running the actor
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public ActorMailbox() {
+        Node stub = new Node(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Adds the task to the mailbox.
+     * @param task
+     * @return true iff the actor was idle and the caller must schedule it.
+     */
+    boolean add(Runnable task) {
+        Node node = new Node(task);
+        Node prev = tail.getAndSet(node);
+        prev.next = node;
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * @return the next task, or null if there is none. Only called by the thread running the actor.
+     */
+    Runnable poll() {
+        Node next = head.next;
+        if (next == null) {
+            return null;
+        }
+        head = next;
+        polledEnqueuedAt = next.enqueuedAt;
+        Runnable task = next.task;
+        next.task = null;
+        return task;
+    }
+
+    /**
+     * @return System.nanoTime() of when the task last returned by poll was added
+     */
+    long polledEnqueuedAt() {
+        return polledEnqueuedAt;
+    }
+
+    /**
+     * Called by the thread running the actor when it stops.
+     * @return true iff tasks arrived in the meantime and the caller must schedule the actor again.
+     */
+    boolean release() {
+        if (head.next != null) {
+            return true; //still scheduled
+        }
+        scheduled.set(false);
+        //a task added after the check above may have seen the flag still set
+        return head.next != null && scheduled.compareAndSet(false, true);
+    }
+
+    private static final class Node {
+        Runnable task;
+        final long enqueuedAt = System.nanoTime();
+        volatile Node next;
+
+        Node(Runnable task) {
+            this.task = task;
+        }
+    }
+}
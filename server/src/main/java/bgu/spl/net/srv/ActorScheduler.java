@@ -0,0 +1,64 @@
+package bgu.spl.net.srv;
+
+import bgu.spl.net.log.Logger;
+import bgu.spl.net.metrics.Histogram;
+import bgu.spl.net.metrics.Metrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the tasks of each actor one at a time and in submission order, on a fixed pool of threads.
+ * Each actor keeps its own ActorMailbox, so submitting takes no lock and touches no shared map.
+ */
+public class ActorScheduler {
+
+    private static final Logger LOG = Logger.get(ActorScheduler.class);
+
+    private static final Histogram QUEUE_TIME = Metrics.histogram("stomp_actor_queue_seconds",
+            "Time a task waits in its actor's mailbox before it runs", Metrics.NANOS_PER_SECOND);
+
+    // Tasks run for an actor before its thread moves on, so a busy actor can't starve the others
+    private static final int MAX_TASKS_PER_RUN = 32;
+
+    private final ExecutorService threads;
+
+    public ActorScheduler(int threads) {
+        this.threads = Executors.newFixedThreadPool(threads);
+    }
+
+    public void submit(ActorMailbox mailbox, Runnable r) {
+        if (mailbox.add(r)) {
+            schedule(mailbox);
+        }
+    }
+
+    public void shutdown() {
+        threads.shutdownNow();
+    }
+
+    private void schedule(ActorMailbox mailbox) {
+        threads.execute(() -> run(mailbox));
+    }
+
+    private void run(ActorMailbox mailbox) {
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                Runnable task = mailbox.poll();
+                if (task == null) {
+                    break;
+                }
+                QUEUE_TIME.recordSince(mailbox.polledEnqueuedAt());
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    LOG.error("Actor task failed", ex);
+                }
+            }
+        } finally {
+            if (mailbox.release()) {
+                schedule(mailbox);
+            }
+        }
+    }
+}
@@ -11,6 +11,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * The original actor pool, replaced by ActorScheduler in the reactor. Kept as the baseline for SchedulerBenchmark.
+ */
 public class ActorThreadPool {
 
     private final Map<Object, Queue<Runnable>> acts;
@@ -3,6 +3,7 @@ package bgu.spl.net.srv;
 import bgu.spl.net.api.MessageEncoderDecoder;
 import bgu.spl.net.api.MessagingProtocol;
 import bgu.spl.net.api.StompMessagingProtocol;
+import bgu.spl.net.log.Logger;
 
 import java.io.IOException;
 import java.net.ServerSocket;
@@ -11,12 +12,14 @@ import java.util.function.Supplier;
 
 public abstract class BaseServer<T> implements Server<T> {
 
+    private static final Logger LOG = Logger.get(BaseServer.class);
+
 private final int port;
     private final Supplier<MessagingProtocol<T>> protocolFactory;
     private final Supplier<MessageEncoderDecoder<T>> encdecFactory;
     private ServerSocket sock;
     
-    private final ConnectionsImpl<T> connections = new ConnectionsImpl<>();
+    private final ConnectionsImpl<T> connections;
     private int connectionIdCounter = 0;
 
     public BaseServer(
@@ -27,12 +30,13 @@ private final int port;
         this.port = port;
         this.protocolFactory = protocolFactory;
         this.encdecFactory = encdecFactory;
+        this.connections = new ConnectionsImpl<>(encdecFactory.get());
 		this.sock = null;
     }
 
     @Override
     public void serve() {try (ServerSocket serverSock = new ServerSocket(port)) {
-			System.out.println("Server started");
+			LOG.info("Server started on port " + port);
 
             this.sock = serverSock; //just to be able to close
 
@@ -59,7 +63,7 @@ private final int port;
         } catch (IOException ex) {
         }
 
-        System.out.println("server closed!!!");
+        LOG.info("Server closed");
     }
 
     @Override
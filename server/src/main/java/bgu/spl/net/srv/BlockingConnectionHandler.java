@@ -3,20 +3,30 @@ package bgu.spl.net.srv;
 import bgu.spl.net.api.MessageEncoderDecoder;
 import bgu.spl.net.api.MessagingProtocol;
 import bgu.spl.net.impl.stomp.StompMessagingProtocolImpl;
+import bgu.spl.net.log.Logger;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class BlockingConnectionHandler<T> implements Runnable, ConnectionHandler<T> {
 
+    private static final Logger LOG = Logger.get(BlockingConnectionHandler.class);
+
+    private static final int BUFFER_SIZE = 1 << 13; //8k
+
     private final MessagingProtocol<T> protocol;
     private final MessageEncoderDecoder<T> encdec;
     private final Socket sock;
     private BufferedInputStream in;
     private BufferedOutputStream out;
     private volatile boolean connected = true;
+    private volatile long readsSuspendedUntil = System.nanoTime(); //before which the next read waits
+    // Not synchronized (out): a virtual thread blocked on the socket while holding a monitor would pin its carrier thread
+    private final ReentrantLock writeLock = new ReentrantLock();
 
     public BlockingConnectionHandler(Socket sock, MessageEncoderDecoder<T> reader, MessagingProtocol<T> protocol) {
         this.sock = sock;
@@ -28,13 +38,16 @@ public class BlockingConnectionHandler<T> implements Runnable, ConnectionHandler
     public void run() {
         try (Socket sock = this.sock) { // Just for automatic closing
             int read;
+            byte[] readBuffer = new byte[BUFFER_SIZE];
 
             in = new BufferedInputStream(sock.getInputStream());
             out = new BufferedOutputStream(sock.getOutputStream());
 
-            while (!protocol.shouldTerminate() && connected && (read = in.read()) >= 0) {
-                T nextMessage = encdec.decodeNextByte((byte) read);
-                if (nextMessage != null) {
+            while (!protocol.shouldTerminate() && connected && waitWhileSuspended() && (read = in.read(readBuffer)) >= 0) {
+                for (T nextMessage : encdec.decode(ByteBuffer.wrap(readBuffer, 0, read))) {
+                    if (protocol.shouldTerminate() || !connected) {
+                        break;
+                    }
                     T response = protocol.process(nextMessage);
                     if (response != null) {
                         out.write(encdec.encode(response));
@@ -44,7 +57,7 @@ public class BlockingConnectionHandler<T> implements Runnable, ConnectionHandler
             }
 
         } catch (IOException ex) {
-            ex.printStackTrace();
+            LOG.debug(() -> "Connection failed: " + ex);
         } finally { //added this just in case a user kills termnial - we need to log that the user logged out.
             if (protocol instanceof StompMessagingProtocolImpl) {
                 ((StompMessagingProtocolImpl) protocol).close();
@@ -53,11 +66,38 @@ public class BlockingConnectionHandler<T> implements Runnable, ConnectionHandler
             try {
                 close();
             } catch (IOException ex) {
-                ex.printStackTrace();
+                LOG.warn("Failed to close connection", ex);
             }
         }
     }
 
+    /**
+     * Sleeps until reads are no longer suspended.
+     * @return true, unless the thread was interrupted
+     */
+    private boolean waitWhileSuspended() {
+        long wait;
+        while ((wait = readsSuspendedUntil - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delays the next read of the client's input. Called by the protocol, which runs on this handler's thread,
+     * so the frames already read are still processed.
+     */
+    @Override
+    public boolean suspendReading(long millis) {
+        readsSuspendedUntil = Math.max(readsSuspendedUntil, System.nanoTime() + millis * 1_000_000);
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
         connected = false;
@@ -67,16 +107,40 @@ public class BlockingConnectionHandler<T> implements Runnable, ConnectionHandler
     @Override
     public void send(T msg) {
         //IMPLEMENT IF NEEDED
-        synchronized (out){
-            try{
-                if(msg != null){
-                    out.write(encdec.encode(msg));
-                    out.flush();
-                } 
-            }
-            catch(IOException e){
-                e.printStackTrace();
-            }
+        writeLock.lock();
+        try{
+            if(msg != null){
+                out.write(encdec.encode(msg));
+                out.flush();
+            } 
+        }
+        catch(IOException e){
+            LOG.debug(() -> "Write failed: " + e);
+        }
+        finally{
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void sendEncoded(EncodedMessage msg) {
+        writeLock.lock();
+        try{
+            if(msg != null){
+                msg.writeTo(out);
+                out.flush();
             }
         }
+        catch(IOException e){
+            LOG.debug(() -> "Write failed: " + e);
+        }
+        finally{
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void sendEncodedDirect(EncodedMessage msg) {
+        sendEncoded(msg);
+    }
 }
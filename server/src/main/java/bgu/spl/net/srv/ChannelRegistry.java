@@ -0,0 +1,114 @@
+package bgu.spl.net.srv;
+
+import bgu.spl.net.journal.Journal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns channel names to small integer IDs, given out in order from 0 and never reused.
+ * The subscribers of a channel are then found by indexing an array with its ID.
+ * Wildcard patterns (see DestinationTrie) are channels too, with their own subscribers; they neither retain
+ * nor journal messages, those are kept by the concrete channels.
+ */
+/*package*/ final class ChannelRegistry {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Indexed by channel ID. Replaced by a larger copy when full, entries are written before their ID is published.
+    private volatile ChannelSubscribers[] channels = new ChannelSubscribers[INITIAL_CAPACITY];
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    private int count = 0; //guarded by this
+
+    private final RetainLimits retainLimits;
+    private final RetainBudget retainBudget;
+    private final Journal journal; //null if channels are not journaled
+    private final DestinationTrie patterns = new DestinationTrie();
+
+    ChannelRegistry(RetainLimits retainLimits, Journal journal) {
+        this.retainLimits = retainLimits;
+        this.retainBudget = new RetainBudget(retainLimits.getTotalBytes());
+        this.journal = journal;
+    }
+
+    /**
+     * @return the ID of the channel, or -1 if nobody ever subscribed to it
+     */
+    int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the ID of the channel, assigning the next free one if it has none
+     */
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            boolean pattern = DestinationTrie.isPattern(name);
+            // may fail to open the journal, so before anything changes
+            ChannelSubscribers subscribers = pattern
+                    ? new ChannelSubscribers(null, null)
+                    : new ChannelSubscribers(
+                            retainLimits.isEnabled() ? new RetainedMessages(retainLimits, retainBudget) : null,
+                            journal == null ? null : journal.channel(name));
+            int newId = count;
+            if (newId == channels.length) {
+                names = Arrays.copyOf(names, newId * 2);
+                channels = Arrays.copyOf(channels, newId * 2);
+            }
+            names[newId] = name;
+            channels[newId] = subscribers;
+            count++;
+            ids.put(name, newId);
+            if (pattern) {
+                patterns.add(name, newId);
+            }
+            return newId;
+        }
+    }
+
+    /**
+     * @return the IDs of the wildcard patterns that match the concrete destination
+     */
+    int[] matchingPatterns(String destination) {
+        return patterns.match(destination, ids.containsKey(destination));
+    }
+
+    /**
+     * @param id an ID returned by idOf or intern
+     */
+    ChannelSubscribers subscribers(int id) {
+        return channels[id];
+    }
+
+    /**
+     * @param id an ID returned by idOf or intern
+     */
+    String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return the number of channels ever subscribed to
+     */
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return the bytes of the messages retained by all channels
+     */
+    long retainedBytes() {
+        return retainBudget.getBytes();
+    }
+}
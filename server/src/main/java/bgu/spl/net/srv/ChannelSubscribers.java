@@ -0,0 +1,210 @@
+package bgu.spl.net.srv;
+
+import bgu.spl.net.journal.ChannelJournal;
+import bgu.spl.net.log.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The subscribers of one channel, kept as flat arrays in an immutable snapshot.
+ * Broadcasts iterate the current snapshot without locking or allocating, subscribing and unsubscribing copy it.
+ * A connection has at most one subscription per channel.
+ * If the channel retains or journals its messages, keeping a message and taking the snapshot to send it to happen
+ * under the same lock as subscribing, so a new subscriber gets every message exactly once - replayed or broadcast.
+ */
+/*package*/ final class ChannelSubscribers {
+
+    private static final Logger LOG = Logger.get(ChannelSubscribers.class);
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private final RetainedMessages retained; //null if the channel retains nothing
+    private final ChannelJournal journal; //null if the channel is not journaled
+
+    ChannelSubscribers(RetainedMessages retained, ChannelJournal journal) {
+        this.retained = retained;
+        this.journal = journal;
+    }
+
+    /**
+     * @return the current subscribers, never modified afterwards
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * Retains and journals the message (if the channel does) and returns the subscribers to send it to.
+     * A message that fails to be journaled is still sent.
+     * @param msg a MESSAGE frame without a subscription header
+     * @return the current subscribers, never modified afterwards
+     */
+    Snapshot retain(EncodedMessage msg) {
+        if (retained == null && journal == null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (retained != null) {
+                retained.add(msg, now);
+            }
+            if (journal != null) {
+                try {
+                    journal.append(now, msg.toBuffers());
+                } catch (IOException e) {
+                    LOG.error("Failed to journal a message", e);
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Adds the subscription, replacing the connection's previous subscription to this channel.
+     * @param handler the connection's handler, may be null if it is not connected
+     * @param compressed true if the connection negotiated compressed message bodies
+     * @param replay number of retained messages to send to the handler before any new message
+     */
+    synchronized void add(int connectionId, String subscriptionId, ConnectionHandler<?> handler, boolean compressed, int replay) {
+        byte[] subscriptionHeader = put(connectionId, subscriptionId, handler, compressed);
+
+        if (replay > 0 && retained != null && handler != null) {
+            for (EncodedMessage msg : retained.last(replay, System.currentTimeMillis())) {
+                handler.sendEncoded(msg.splice(msg.indexOf((byte) '\n') + 1, subscriptionHeader));
+            }
+        }
+    }
+
+    /**
+     * Adds the subscription like add, sending the handler the journaled messages from the given offset or time first.
+     * Messages published meanwhile wait for the replay.
+     * @param fromOffset the first journal offset to send, or -1
+     * @param sinceMillis send the messages published since this time, or -1
+     */
+    synchronized void addFromJournal(int connectionId, String subscriptionId, ConnectionHandler<?> handler,
+                                     boolean compressed, long fromOffset, long sinceMillis) {
+        byte[] subscriptionHeader = put(connectionId, subscriptionId, handler, compressed);
+
+        if (journal != null && handler != null && (fromOffset >= 0 || sinceMillis >= 0)) {
+            long offset = sinceMillis >= 0 ? Math.max(fromOffset, journal.offsetAt(sinceMillis)) : fromOffset;
+            journal.replay(offset, (messageOffset, timestamp, payload) -> {
+                EncodedMessage msg = EncodedMessage.of(payload);
+                handler.sendEncoded(msg.splice(msg.indexOf((byte) '\n') + 1, subscriptionHeader));
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Replaces the snapshot with one that has the subscription.
+     * @return the encoded subscription header line
+     */
+    private byte[] put(int connectionId, String subscriptionId, ConnectionHandler<?> handler, boolean compressed) {
+        Snapshot current = snapshot;
+        int index = current.indexOf(connectionId);
+        int size = index < 0 ? current.size + 1 : current.size;
+
+        int[] connectionIds = Arrays.copyOf(current.connectionIds, size);
+        String[] subscriptionIds = Arrays.copyOf(current.subscriptionIds, size);
+        byte[][] subscriptionHeaders = Arrays.copyOf(current.subscriptionHeaders, size);
+        ConnectionHandler<?>[] handlers = Arrays.copyOf(current.handlers, size);
+        boolean[] compress = Arrays.copyOf(current.compress, size);
+        int slot = index < 0 ? size - 1 : index;
+        connectionIds[slot] = connectionId;
+        subscriptionIds[slot] = subscriptionId;
+        subscriptionHeaders[slot] = ("subscription:" + subscriptionId + "\n").getBytes(StandardCharsets.UTF_8);
+        handlers[slot] = handler;
+        compress[slot] = compressed;
+
+        snapshot = new Snapshot(connectionIds, subscriptionIds, subscriptionHeaders, handlers, compress);
+        return subscriptionHeaders[slot];
+    }
+
+    /**
+     * @return true iff the connection was subscribed
+     */
+    synchronized boolean remove(int connectionId) {
+        Snapshot current = snapshot;
+        int index = current.indexOf(connectionId);
+        if (index < 0) {
+            return false;
+        }
+        snapshot = new Snapshot(
+                without(current.connectionIds, index),
+                without(current.subscriptionIds, index),
+                without(current.subscriptionHeaders, index),
+                without(current.handlers, index),
+                without(current.compress, index));
+        return true;
+    }
+
+    private static int[] without(int[] array, int index) {
+        int[] copy = new int[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+
+    private static boolean[] without(boolean[] array, int index) {
+        boolean[] copy = new boolean[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+
+    private static <E> E[] without(E[] array, int index) {
+        E[] copy = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+
+    /**
+     * Subscriber i is connectionIds[i], subscribed as subscriptionIds[i], with its encoded subscription header line
+     * in subscriptionHeaders[i], its handler (or null) in handlers[i] and whether it takes compressed bodies
+     * in compress[i]. compressedCount subscribers do.
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new int[0], new String[0], new byte[0][], new ConnectionHandler<?>[0],
+                new boolean[0]);
+
+        final int size;
+        final int[] connectionIds;
+        final String[] subscriptionIds;
+        final byte[][] subscriptionHeaders;
+        final ConnectionHandler<?>[] handlers;
+        final boolean[] compress;
+        final int compressedCount;
+
+        private Snapshot(int[] connectionIds, String[] subscriptionIds, byte[][] subscriptionHeaders, ConnectionHandler<?>[] handlers,
+                         boolean[] compress) {
+            this.size = connectionIds.length;
+            this.connectionIds = connectionIds;
+            this.subscriptionIds = subscriptionIds;
+            this.subscriptionHeaders = subscriptionHeaders;
+            this.handlers = handlers;
+            this.compress = compress;
+            int count = 0;
+            for (boolean c : compress) {
+                if (c) {
+                    count++;
+                }
+            }
+            this.compressedCount = count;
+        }
+
+        int indexOf(int connectionId) {
+            for (int i = 0; i < size; i++) {
+                if (connectionIds[i] == connectionId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
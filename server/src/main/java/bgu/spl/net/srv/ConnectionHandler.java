@@ -23,4 +23,43 @@ public interface ConnectionHandler<T> extends Closeable {
      */
     void send(T msg);
 
+    /**
+     * sends an already encoded channel message to the client, skipping the encoder. The message may be shared with other handlers.
+     * @param msg
+     */
+    void sendEncoded(EncodedMessage msg);
+
+    /**
+     * sends an already encoded message addressed to this client only (e.g. a reply), skipping the encoder.
+     * Unlike channel messages it is never dropped by the slow consumer policy.
+     * @param msg
+     */
+    void sendEncodedDirect(EncodedMessage msg);
+
+    /**
+     * Starts STOMP heart-beating with the client.
+     * @param sendMillis a heart-beat is sent after this long without writing anything, 0 for none
+     * @param receiveMillis the connection is closed after this long without reading anything, 0 for never
+     * @return false if this handler does not heart-beat, then the client must not expect it to
+     */
+    default boolean startHeartBeat(long sendMillis, long receiveMillis) {
+        return false;
+    }
+
+    /**
+     * Stops reading from the client for the given time, e.g. to slow down a client publishing too fast.
+     * @param millis
+     * @return false if this handler can not suspend reading
+     */
+    default boolean suspendReading(long millis) {
+        return false;
+    }
+
+    /**
+     * @return number of bytes waiting to be written to the client
+     */
+    default long getQueuedBytes() {
+        return 0;
+    }
+
 }
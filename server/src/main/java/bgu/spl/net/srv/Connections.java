@@ -19,22 +19,76 @@ public interface Connections<T> {
      */
     void send(String channel, T msg);
 
+    /**
+     * Sends an already encoded message to the client represented by the given connectionId.
+     * @param connectionId
+     * @param msg
+     * @return True if message was sent, otherwise false.
+     */
+    boolean sendEncoded(int connectionId, EncodedMessage msg);
+
+    /**
+     * Sends an already encoded frame to clients subscribed to channel. The same bytes are shared by all subscribers,
+     * each one gets its subscription header added after the command line.
+     * @param channel
+     * @param msg
+     */
+    void sendEncoded(String channel, EncodedMessage msg);
+
     /**
      * Removes an active client connectionId from the map.
      * @param connectionId
      */
     void disconnect(int connectionId);
 
+    /**
+     * Channel messages with a large enough body are sent to the connection deflated, with content-encoding:deflate
+     * and content-length headers, from its next subscription on.
+     * @param connectionId
+     */
+    void enableCompression(int connectionId);
+
+    /**
+     * Starts heart-beating with the connection, see ConnectionHandler.startHeartBeat.
+     * @return false if the connection does not heart-beat (or does not exist)
+     */
+    boolean startHeartBeat(int connectionId, long sendMillis, long receiveMillis);
+
+    /**
+     * Stops reading from the connection for the given time, see ConnectionHandler.suspendReading.
+     * @return false if the connection can not suspend reading (or does not exist)
+     */
+    boolean suspendReading(int connectionId, long millis);
+
     
     //Helper Functions
     void addConnection(int connectionId, ConnectionHandler<T> handler);
 
-    void subscribe(String channel, int connectionId, String subscriptionId);
+    /**
+     * @return false if the connection already uses the subscription ID for another channel, or it is closed
+     */
+    boolean subscribe(String channel, int connectionId, String subscriptionId);
+
+    /**
+     * Subscribes and sends the subscriber up to replay of the channel's retained messages, oldest first,
+     * before any message sent to the channel afterwards.
+     * @return false if the connection already uses the subscription ID for another channel, or it is closed
+     */
+    boolean subscribe(String channel, int connectionId, String subscriptionId, int replay);
+
+    /**
+     * Subscribes and sends the subscriber the channel's journaled messages from fromOffset, or published since
+     * sinceMillis (-1 for either one that is not given), before any message sent to the channel afterwards.
+     * @return false if the connection already uses the subscription ID for another channel, or it is closed
+     */
+    boolean subscribeFromJournal(String channel, int connectionId, String subscriptionId, long fromOffset, long sinceMillis);
 
     void unsubscribe(String subscriptionId, int connectionId);
 
     boolean isUserSubscribed(int connectionId, String channel);
 
+    String getSubscriptionId(int connectionId, String channel);
+
     //String addSubIdToMessage( String subscriptionId, String msg);
 
 }
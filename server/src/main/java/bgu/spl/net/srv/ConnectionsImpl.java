@@ -1,23 +1,76 @@
 package bgu.spl.net.srv;
 
+import bgu.spl.net.api.MessageEncoderDecoder;
+import bgu.spl.net.journal.Journal;
+import bgu.spl.net.log.Logger;
+import bgu.spl.net.metrics.Histogram;
+import bgu.spl.net.metrics.Metrics;
+
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 public class ConnectionsImpl<T> implements Connections<T> {
 
+    private static final Logger LOG = Logger.get(ConnectionsImpl.class);
+
+    private static final Histogram FAN_OUT = Metrics.histogram("stomp_fan_out_subscribers",
+            "Subscribers a channel message was handed to", 1);
+
     // ID -> Handler
     private final ConcurrentMap<Integer, ConnectionHandler<T>> connectionsMap = new ConcurrentHashMap<>();
 
-    // Channel -> Connection IDs
-    private final ConcurrentMap<String, Set<Integer>> channelSubscribers = new ConcurrentHashMap<>();
+    // Channel name -> channel ID -> Subscribers (connection IDs and their subscription IDs)
+    private final ChannelRegistry channels;
+
+    // Connection ID -> its (channel ID, subscription ID) pairs, created on the first SUBSCRIBE
+    private final ConcurrentMap<Integer, SubscriptionTable> subscriptions = new ConcurrentHashMap<>();
+
+    // Used to encode a channel message once for all of its subscribers. Encoding must not depend on decoding state.
+    private final MessageEncoderDecoder<T> broadcastEncoder;
+
+    // IDs of the connections that negotiated compressed message bodies
+    private final Set<Integer> compressing = ConcurrentHashMap.newKeySet();
+
+    // Smallest channel message body deflated for them
+    private final int compressionThreshold = Integer.getInteger("stomp.compression.threshold", 1024);
+
+    public ConnectionsImpl() {
+        this(null);
+    }
 
-    //  Connection ID -> (Subscription ID -> Channel)
-    private final ConcurrentMap<Integer, ConcurrentMap<String, String>> clientSubscriptionIdToChannel = new ConcurrentHashMap<>();
+    /**
+     * @param broadcastEncoder encoder used for channel messages, if null every subscriber encodes the message by itself.
+     */
+    public ConnectionsImpl(MessageEncoderDecoder<T> broadcastEncoder) {
+        this(broadcastEncoder, RetainLimits.fromSystemProperties(), Journal.fromSystemProperties());
+    }
 
-    //Connection ID -> (Channel Name -> Subscription ID)
-    private final ConcurrentMap<Integer, ConcurrentMap<String, String>> clientChannelToSubscriptionId = new ConcurrentHashMap<>();
+    /**
+     * @param broadcastEncoder encoder used for channel messages, if null every subscriber encodes the message by itself.
+     * @param retainLimits how many recent messages each channel keeps for new subscribers. Only encoded channel
+     *                     messages are retained, so nothing is retained without a broadcastEncoder.
+     */
+    public ConnectionsImpl(MessageEncoderDecoder<T> broadcastEncoder, RetainLimits retainLimits) {
+        this(broadcastEncoder, retainLimits, null);
+    }
+
+    /**
+     * @param broadcastEncoder encoder used for channel messages, if null every subscriber encodes the message by itself.
+     * @param retainLimits how many recent messages each channel keeps for new subscribers.
+     * @param journal where channel messages are journaled, or null. Like retaining, only encoded channel messages are.
+     */
+    public ConnectionsImpl(MessageEncoderDecoder<T> broadcastEncoder, RetainLimits retainLimits, Journal journal) {
+        this.broadcastEncoder = broadcastEncoder;
+        this.channels = new ChannelRegistry(retainLimits, journal);
+        Metrics.gauge("stomp_connections", "Open client connections", connectionsMap::size);
+        Metrics.gauge("stomp_channels", "Channels ever subscribed to", channels::size);
+        Metrics.gauge("stomp_outbound_queued_bytes", "Bytes waiting to be written to all connections", this::getQueuedBytes);
+        Metrics.gauge("stomp_retained_bytes", "Bytes of channel messages retained for new subscribers", channels::retainedBytes);
+    }
 
     @Override
     public boolean send(int connectionId, T msg) {
@@ -25,61 +78,166 @@ public class ConnectionsImpl<T> implements Connections<T> {
         if (handler == null) {
             return false;
         }
-        System.out.println("--------------");
-        System.out.println("[DEBUG] Sending:\n" + msg);
-        System.out.println("--------------");
+        LOG.debug(() -> "Sending to " + connectionId + ":\n" + msg);
         handler.send(msg);
         return true;
     }
 
     @Override
     public void send(String channel, T msg) {
-        // Get all users subscribed to this channel
-        Set<Integer> subscribers = channelSubscribers.get(channel);
-        
-        if (subscribers != null) {
-            for (Integer connId : subscribers) {
-                ConcurrentMap<String, String> channelToSub = this.clientChannelToSubscriptionId.get(connId);
-                
-                if (channelToSub != null) {
-                    String subscriptionId = channelToSub.get(channel);
-                    
-                    if (subscriptionId != null) {
-                        if (msg instanceof String) {
-                            send(connId, (T) addSubIdToMessage(subscriptionId, (String) msg));
-                        }
-                        else{
-                            send(connId, msg);
-                        }
-                    }
+        // Get all users subscribed to this channel, and the wildcard patterns matching it
+        int[] patterns = this.channels.matchingPatterns(channel);
+        int channelId = this.channels.idOf(channel);
+
+        if (channelId < 0 && patterns.length == 0) {
+            return;
+        }
+
+        if (broadcastEncoder == null) {
+            int delivered = channelId < 0 ? 0 : sendToEach(this.channels.subscribers(channelId).snapshot(), msg);
+            for (int patternId : patterns) {
+                delivered += sendToEach(this.channels.subscribers(patternId).snapshot(), msg);
+            }
+            FAN_OUT.record(delivered);
+            return;
+        }
+
+        LOG.debug(() -> "Broadcasting to " + channel + ":\n" + msg);
+
+        // Encode once - every subscriber gets the same bytes
+        broadcast(channelId, patterns, EncodedMessage.of(broadcastEncoder.encode(msg)), msg instanceof String);
+    }
+
+    @Override
+    public boolean sendEncoded(int connectionId, EncodedMessage msg) {
+        ConnectionHandler<T> handler = this.connectionsMap.get(connectionId);
+        if (handler == null) {
+            return false;
+        }
+        LOG.debug(() -> "Sending to " + connectionId + ":\n" + msg);
+        handler.sendEncodedDirect(msg);
+        return true;
+    }
+
+    @Override
+    public void sendEncoded(String channel, EncodedMessage msg) {
+        int[] patterns = this.channels.matchingPatterns(channel);
+        int channelId = this.channels.idOf(channel);
+
+        if (channelId < 0 && patterns.length == 0) {
+            return;
+        }
+
+        LOG.debug(() -> "Broadcasting to " + channel + ":\n" + msg);
+
+        broadcast(channelId, patterns, msg, true);
+    }
+
+    /**
+     * Hands the encoded message to the subscribers of the channel (if channelId is not -1) and of the matching patterns.
+     * Channel messages with a subscription header are retained by the channel, and deflated once for all the
+     * subscribers that negotiated compression. A channel nobody subscribed to directly is not interned, even if
+     * patterns match it, so it retains and journals nothing - otherwise any destination a client makes up would
+     * get a ring and a journal segment.
+     */
+    private void broadcast(int channelId, int[] patterns, EncodedMessage encoded, boolean addSubscriptionHeader) {
+        ChannelSubscribers.Snapshot[] snapshots = new ChannelSubscribers.Snapshot[patterns.length + 1];
+        int compressedCount = 0;
+        if (channelId >= 0) {
+            ChannelSubscribers subscribers = this.channels.subscribers(channelId);
+            snapshots[patterns.length] = addSubscriptionHeader ? subscribers.retain(encoded) : subscribers.snapshot();
+            compressedCount += snapshots[patterns.length].compressedCount;
+        }
+        for (int i = 0; i < patterns.length; i++) {
+            snapshots[i] = this.channels.subscribers(patterns[i]).snapshot();
+            compressedCount += snapshots[i].compressedCount;
+        }
+
+        EncodedMessage compressed = addSubscriptionHeader && compressedCount > 0
+                ? FrameCompressor.compress(encoded, compressionThreshold) : null;
+
+        int delivered = 0;
+        for (ChannelSubscribers.Snapshot snapshot : snapshots) {
+            if (snapshot != null) {
+                delivered += broadcast(snapshot, encoded, compressed, addSubscriptionHeader);
+            }
+        }
+        FAN_OUT.record(delivered);
+    }
+
+    /**
+     * Hands the encoded message to every subscriber. If addSubscriptionHeader, the subscription header is spliced in
+     * after the command line, otherwise all subscribers get exactly the same bytes.
+     * @param compressed the message with a deflated body for the subscribers that negotiated compression, or null
+     * @return the number of subscribers it was handed to
+     */
+    private int broadcast(ChannelSubscribers.Snapshot subscribers, EncodedMessage encoded, EncodedMessage compressed,
+                          boolean addSubscriptionHeader) {
+        int headersStart = addSubscriptionHeader ? encoded.indexOf((byte) '\n') + 1 : -1;
+        int compressedHeadersStart = compressed != null ? compressed.indexOf((byte) '\n') + 1 : -1;
+        int delivered = 0;
+
+        for (int i = 0; i < subscribers.size; i++) {
+            ConnectionHandler<?> handler = subscribers.handlers[i];
+
+            if (handler != null) {
+                if (compressedHeadersStart > 0 && subscribers.compress[i]) {
+                    handler.sendEncoded(compressed.splice(compressedHeadersStart, subscribers.subscriptionHeaders[i]));
+                }
+                else if (headersStart > 0) {
+                    handler.sendEncoded(encoded.splice(headersStart, subscribers.subscriptionHeaders[i]));
                 }
+                else{
+                    handler.sendEncoded(encoded);
+                }
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Sends the message to every subscriber separately, each handler encodes it on its own.
+     * @return the number of subscribers it was sent to
+     */
+    private int sendToEach(ChannelSubscribers.Snapshot subscribers, T msg) {
+        int delivered = 0;
+        for (int i = 0; i < subscribers.size; i++) {
+            int connId = subscribers.connectionIds[i];
+            String subscriptionId = subscribers.subscriptionIds[i];
+
+            if (msg instanceof String) {
+                send(connId, (T) addSubIdToMessage(subscriptionId, (String) msg));
+            }
+            else{
+                send(connId, msg);
             }
+            delivered++;
         }
+        return delivered;
     }
 
     @Override
     public void disconnect(int connectionId) {
         ConnectionHandler<T> handler = this.connectionsMap.remove(connectionId);
+        this.compressing.remove(connectionId);
         if (handler != null) {
             try {
                 handler.close();
             } catch (IOException e) {
-                e.printStackTrace();
+                LOG.warn("Failed to close connection " + connectionId, e);
             }
         }
 
-        ConcurrentMap<String, String> userChannels = this.clientChannelToSubscriptionId.remove(connectionId);
-        if (userChannels != null) {
-            for (String channel : userChannels.keySet()) {
-                Set<Integer> subscribers = this.channelSubscribers.get(channel);
-                if (subscribers != null) {
-                    subscribers.remove(connectionId);
+        SubscriptionTable table = this.subscriptions.remove(connectionId);
+        if (table != null) {
+            // a concurrent subscribe either finished before, or finds the handler gone
+            synchronized (table) {
+                for (int channelId : table.channelIds()) {
+                    this.channels.subscribers(channelId).remove(connectionId);
                 }
             }
         }
-
-        // 3. Clean up the reverse mapping
-        this.clientSubscriptionIdToChannel.remove(connectionId);
     }
 
     /**
@@ -87,51 +245,156 @@ public class ConnectionsImpl<T> implements Connections<T> {
      */
     public void addConnection(int connectionId, ConnectionHandler<T> handler) {
         this.connectionsMap.put(connectionId, handler);
-        this.clientChannelToSubscriptionId.put(connectionId, new ConcurrentHashMap<>());
-        this.clientSubscriptionIdToChannel.put(connectionId, new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void enableCompression(int connectionId) {
+        this.compressing.add(connectionId);
+    }
+
+    @Override
+    public boolean startHeartBeat(int connectionId, long sendMillis, long receiveMillis) {
+        ConnectionHandler<T> handler = this.connectionsMap.get(connectionId);
+        return handler != null && handler.startHeartBeat(sendMillis, receiveMillis);
+    }
+
+    @Override
+    public boolean suspendReading(int connectionId, long millis) {
+        ConnectionHandler<T> handler = this.connectionsMap.get(connectionId);
+        return handler != null && handler.suspendReading(millis);
     }
 
     /**
      * Helper: Subscribes a user to a channel with a specific Subscription ID.
      */
-    public void subscribe(String channel, int connectionId, String subscriptionId) {
-        channelSubscribers.computeIfAbsent(channel, k -> ConcurrentHashMap.newKeySet()).add(connectionId);
+    public boolean subscribe(String channel, int connectionId, String subscriptionId) {
+        return subscribe(channel, connectionId, subscriptionId, 0);
+    }
 
-        this.clientChannelToSubscriptionId.computeIfAbsent(connectionId, k -> new ConcurrentHashMap<>())
-                                     .put(channel, subscriptionId);
+    /**
+     * Helper: Subscribes a user to a channel with a specific Subscription ID, first sending it up to replay of the
+     * messages the channel retained.
+     */
+    public boolean subscribe(String channel, int connectionId, String subscriptionId, int replay) {
+        int channelId = this.channels.intern(channel);
+        SubscriptionTable table = this.subscriptions.computeIfAbsent(connectionId, k -> new SubscriptionTable());
+        synchronized (table) {
+            ConnectionHandler<T> handler = subscriptionHandler(table, connectionId, channelId, subscriptionId);
+            if (handler == null) {
+                return false;
+            }
+            this.channels.subscribers(channelId).add(connectionId, subscriptionId, handler,
+                    this.compressing.contains(connectionId), replay);
+            table.put(channelId, subscriptionId);
+        }
+        return true;
+    }
+
+    /**
+     * Helper: Subscribes a user to a channel with a specific Subscription ID, first sending it the journaled
+     * messages from the given offset or time.
+     */
+    public boolean subscribeFromJournal(String channel, int connectionId, String subscriptionId, long fromOffset, long sinceMillis) {
+        int channelId = this.channels.intern(channel);
+        SubscriptionTable table = this.subscriptions.computeIfAbsent(connectionId, k -> new SubscriptionTable());
+        synchronized (table) {
+            ConnectionHandler<T> handler = subscriptionHandler(table, connectionId, channelId, subscriptionId);
+            if (handler == null) {
+                return false;
+            }
+            this.channels.subscribers(channelId).addFromJournal(connectionId, subscriptionId, handler,
+                    this.compressing.contains(connectionId), fromOffset, sinceMillis);
+            table.put(channelId, subscriptionId);
+        }
+        return true;
+    }
 
-        this.clientSubscriptionIdToChannel.computeIfAbsent(connectionId, k -> new ConcurrentHashMap<>())
-                                     .put(subscriptionId, channel);
+    /**
+     * Checks a subscription about to be added to the connection's table, holding the table's lock.
+     * disconnect removes the handler before it removes the subscriptions under the same lock, so a subscription
+     * is added either before they are removed or not at all.
+     * @return the connection's handler, or null if it disconnected or the subscription ID is used for another channel
+     */
+    private ConnectionHandler<T> subscriptionHandler(SubscriptionTable table, int connectionId, int channelId, String subscriptionId) {
+        ConnectionHandler<T> handler = this.connectionsMap.get(connectionId);
+        if (handler == null) {
+            this.subscriptions.remove(connectionId, table); // created after disconnect removed the connection's table
+            return null;
+        }
+        int used = table.channelOf(subscriptionId);
+        return used < 0 || used == channelId ? handler : null;
     }
 
     /**
      * Helper: Unsubscribes a user based on Subscription ID.
      */
     public void unsubscribe(String subscriptionId, int connectionId) {
-        ConcurrentMap<String, String> subToChannel = this.clientSubscriptionIdToChannel.get(connectionId);
-        if (subToChannel == null) return;
+        SubscriptionTable table = this.subscriptions.get(connectionId);
+        if (table == null) return;
         
-        String channel = subToChannel.remove(subscriptionId);
+        int channelId = table.removeSubscription(subscriptionId);
         
-        if (channel != null) {
-            Set<Integer> subscribers = this.channelSubscribers.get(channel);
-            if (subscribers != null) {
-                subscribers.remove(connectionId);
-            }
-            
-            ConcurrentMap<String, String> channelToSub = this.clientChannelToSubscriptionId.get(connectionId);
-            if (channelToSub != null) {
-                channelToSub.remove(channel);
-            }
+        if (channelId >= 0) {
+            this.channels.subscribers(channelId).remove(connectionId);
         }
     }
 
     /**
-     * Helper: Checks if a user is subscribed to a channel.
+     * Helper: Checks if a user is subscribed to a channel, directly or through a wildcard pattern.
      */
     public boolean isUserSubscribed(int connectionId, String channel) {
-        ConcurrentMap<String, String> userChannels = this.clientChannelToSubscriptionId.get(connectionId);
-        return userChannels != null && userChannels.containsKey(channel);
+        if (getSubscriptionId(connectionId, channel) != null) {
+            return true;
+        }
+        // or subscribed to a wildcard pattern matching it
+        SubscriptionTable table = this.subscriptions.get(connectionId);
+        if (table != null) {
+            for (int patternId : this.channels.matchingPatterns(channel)) {
+                if (table.subscriptionIdOf(patternId) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper: Number of bytes waiting to be written to the given connection, 0 if it does not exist.
+     */
+    public long getQueuedBytes(int connectionId) {
+        ConnectionHandler<T> handler = this.connectionsMap.get(connectionId);
+        return handler == null ? 0 : handler.getQueuedBytes();
+    }
+
+    /**
+     * Helper: Number of bytes waiting to be written to all connections.
+     */
+    public long getQueuedBytes() {
+        long queued = 0;
+        for (ConnectionHandler<T> handler : this.connectionsMap.values()) {
+            queued += handler.getQueuedBytes();
+        }
+        return queued;
+    }
+
+    /**
+     * Helper: Snapshot of the bytes waiting to be written for every connection.
+     */
+    public Map<Integer, Long> getQueuedBytesPerConnection() {
+        Map<Integer, Long> queued = new HashMap<>();
+        for (Map.Entry<Integer, ConnectionHandler<T>> entry : this.connectionsMap.entrySet()) {
+            queued.put(entry.getKey(), entry.getValue().getQueuedBytes());
+        }
+        return queued;
+    }
+
+    /**
+     * Helper: Returns the subscription ID of the user for the channel, or null if it is not subscribed.
+     */
+    public String getSubscriptionId(int connectionId, String channel) {
+        int channelId = this.channels.idOf(channel);
+        SubscriptionTable table = channelId < 0 ? null : this.subscriptions.get(connectionId);
+        return table == null ? null : table.subscriptionIdOf(channelId);
     }
 
     /**
@@ -0,0 +1,194 @@
+package bgu.spl.net.srv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wildcard destination patterns in a trie of '/' separated segments, matched against concrete destinations.
+ * In a pattern, a "*" segment matches exactly one segment and a "**" segment matches any number of segments,
+ * so /games/* matches /games/usa_mexico and /games/** also matches /games and /games/usa_mexico/goals.
+ *
+ * The trie is immutable once published. Adding a pattern copies the nodes on its path and publishes a new snapshot,
+ * so matching never locks. A match walks the trie like an NFA, visiting each node at most once per segment,
+ * so patterns with many ** segments can't make it exponential.
+ *
+ * The patterns an interned channel matches are cached, so publishing to it costs one map lookup. Other destinations
+ * are matched against the trie every time - any client can make up destinations, so caching them would let the
+ * cache grow without bound. Each snapshot has its own cache, so adding a pattern starts an empty one.
+ * Patterns are never removed - like channels, a pattern keeps its ID.
+ */
+public final class DestinationTrie {
+
+    static final String ANY_SEGMENT = "*";
+    static final String ANY_SEGMENTS = "**";
+
+    private static final int[] NONE = new int[0];
+
+    private volatile Snapshot snapshot = new Snapshot(new Node(false, new HashMap<>(), NONE)); //replaced under this
+
+    DestinationTrie() {
+    }
+
+    /**
+     * @return true iff the destination has a wildcard segment
+     */
+    public static boolean isPattern(String destination) {
+        for (String segment : destination.split("/", -1)) {
+            if (segment.equals(ANY_SEGMENT) || segment.equals(ANY_SEGMENTS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a pattern with the given ID. Consecutive ** segments match like a single one, so they are collapsed.
+     */
+    synchronized void add(String pattern, int id) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : pattern.split("/", -1)) {
+            if (!(segment.equals(ANY_SEGMENTS) && !segments.isEmpty()
+                    && segments.get(segments.size() - 1).equals(ANY_SEGMENTS))) {
+                segments.add(segment);
+            }
+        }
+        snapshot = new Snapshot(add(snapshot.root, segments, 0, id));
+    }
+
+    /**
+     * @return a copy of the node with the pattern added below it; the nodes off the pattern's path are shared
+     */
+    private static Node add(Node node, List<String> segments, int index, int id) {
+        if (index == segments.size()) {
+            int[] ids = Arrays.copyOf(node.patternIds, node.patternIds.length + 1);
+            ids[ids.length - 1] = id;
+            return new Node(node.anySegments, node.children, ids);
+        }
+        String segment = segments.get(index);
+        Node child = node.children.get(segment);
+        if (child == null) {
+            child = new Node(segment.equals(ANY_SEGMENTS), new HashMap<>(), NONE);
+        }
+        Map<String, Node> children = new HashMap<>(node.children);
+        children.put(segment, add(child, segments, index + 1, id));
+        return new Node(node.anySegments, children, node.patternIds);
+    }
+
+    /**
+     * @param cache true to cache the result, only for destinations that are interned channels
+     * @return the IDs of the patterns that match the concrete destination, in increasing order
+     */
+    int[] match(String destination, boolean cache) {
+        Snapshot current = snapshot;
+        if (current.root.children.isEmpty()) {
+            return NONE;
+        }
+        int[] cached = current.matches.get(destination);
+        if (cached != null) {
+            return cached;
+        }
+        int[] ids = match(current.root, destination.split("/", -1));
+        if (cache) {
+            current.matches.put(destination, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Follows every segment from all the nodes the previous segments led to at once.
+     */
+    private static int[] match(Node root, String[] segments) {
+        List<Node> nodes = new ArrayList<>();
+        Set<Node> visited = new HashSet<>();
+        enter(root, nodes, visited);
+        for (String segment : segments) {
+            List<Node> next = new ArrayList<>();
+            visited.clear();
+            for (Node node : nodes) {
+                if (node.anySegments) {
+                    enter(node, next, visited); // ** takes this segment too
+                }
+                Node exact = node.children.get(segment);
+                if (exact != null) {
+                    enter(exact, next, visited);
+                }
+                Node anySegment = node.children.get(ANY_SEGMENT);
+                if (anySegment != null) {
+                    enter(anySegment, next, visited);
+                }
+            }
+            if (next.isEmpty()) {
+                return NONE;
+            }
+            nodes = next;
+        }
+
+        int count = 0;
+        for (Node node : nodes) {
+            count += node.patternIds.length;
+        }
+        if (count == 0) {
+            return NONE;
+        }
+        int[] ids = new int[count];
+        int n = 0;
+        for (Node node : nodes) {
+            for (int id : node.patternIds) {
+                ids[n++] = id;
+            }
+        }
+        Arrays.sort(ids);
+        int unique = 0; //a pattern is only added once, but keep the result a set anyway
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return unique == ids.length ? ids : Arrays.copyOf(ids, unique);
+    }
+
+    /**
+     * Adds the node to the ones reached, and its ** child, which may take no segment.
+     */
+    private static void enter(Node node, List<Node> nodes, Set<Node> visited) {
+        if (!visited.add(node)) {
+            return;
+        }
+        nodes.add(node);
+        Node anySegments = node.children.get(ANY_SEGMENTS);
+        if (anySegments != null) {
+            enter(anySegments, nodes, visited);
+        }
+    }
+
+    /**
+     * Never modified once published.
+     */
+    private static final class Node {
+        final boolean anySegments; //reached through a ** segment
+        final Map<String, Node> children;
+        final int[] patternIds; //the patterns ending here; several when they differ only in repeated **
+
+        Node(boolean anySegments, Map<String, Node> children, int[] patternIds) {
+            this.anySegments = anySegments;
+            this.children = children;
+            this.patternIds = patternIds;
+        }
+    }
+
+    private static final class Snapshot {
+        final Node root;
+        final ConcurrentMap<String, int[]> matches = new ConcurrentHashMap<>();
+
+        Snapshot(Node root) {
+            this.root = root;
+        }
+    }
+}
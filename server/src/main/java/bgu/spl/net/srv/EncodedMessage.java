@@ -0,0 +1,162 @@
+package bgu.spl.net.srv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An already encoded message, stored as a list of byte segments.
+ * Segments are never copied or modified - splicing a message returns a new message that points to the same arrays,
+ * so one encoded body can be shared by every connection it is sent to.
+ */
+public final class EncodedMessage {
+
+    private final byte[][] chunks;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int length;
+
+    private EncodedMessage(byte[][] chunks, int[] offsets, int[] lengths) {
+        this.chunks = chunks;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        int total = 0;
+        for (int l : lengths) {
+            total += l;
+        }
+        this.length = total;
+    }
+
+    /**
+     * Wraps the given bytes. The array must not be modified afterwards.
+     * @param bytes
+     * @return EncodedMessage with a single segment
+     */
+    public static EncodedMessage of(byte[] bytes) {
+        return new EncodedMessage(new byte[][]{bytes}, new int[]{0}, new int[]{bytes.length});
+    }
+
+    /**
+     * @param b
+     * @return the position of the first occurrence of b, or -1 if it does not exist.
+     */
+    public int indexOf(byte b) {
+        int pos = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            for (int j = offsets[i]; j < offsets[i] + lengths[i]; j++) {
+                if (chunks[i][j] == b) {
+                    return pos + j - offsets[i];
+                }
+            }
+            pos += lengths[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a new message with insert placed at the given position. Only the segment list is allocated,
+     * the bytes of this message are shared with the returned one.
+     * @param position
+     * @param insert
+     * @return EncodedMessage
+     */
+    public EncodedMessage splice(int position, byte[] insert) {
+        if (position < 0 || position > length) {
+            throw new IndexOutOfBoundsException("position " + position + " out of " + length);
+        }
+        int n = chunks.length;
+        byte[][] newChunks = new byte[n + 2][];
+        int[] newOffsets = new int[n + 2];
+        int[] newLengths = new int[n + 2];
+
+        int out = 0;
+        int pos = 0;
+        boolean inserted = false;
+        for (int i = 0; i < n; i++) {
+            if (!inserted && position <= pos + lengths[i]) {
+                int head = position - pos;
+                if (head > 0) {
+                    newChunks[out] = chunks[i];
+                    newOffsets[out] = offsets[i];
+                    newLengths[out++] = head;
+                }
+                newChunks[out] = insert;
+                newOffsets[out] = 0;
+                newLengths[out++] = insert.length;
+                if (lengths[i] - head > 0) {
+                    newChunks[out] = chunks[i];
+                    newOffsets[out] = offsets[i] + head;
+                    newLengths[out++] = lengths[i] - head;
+                }
+                inserted = true;
+            } else {
+                newChunks[out] = chunks[i];
+                newOffsets[out] = offsets[i];
+                newLengths[out++] = lengths[i];
+            }
+            pos += lengths[i];
+        }
+        if (!inserted) {
+            newChunks[out] = insert;
+            newOffsets[out] = 0;
+            newLengths[out++] = insert.length;
+        }
+
+        return new EncodedMessage(
+                Arrays.copyOf(newChunks, out),
+                Arrays.copyOf(newOffsets, out),
+                Arrays.copyOf(newLengths, out));
+    }
+
+    /**
+     * @return read only views over the segments, each with its own position so they can be written independently.
+     */
+    public ByteBuffer[] toBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            buffers[i] = ByteBuffer.wrap(chunks[i], offsets[i], lengths[i]).asReadOnlyBuffer();
+        }
+        return buffers;
+    }
+
+    /**
+     * Writes all segments to the given stream (without flushing).
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        for (int i = 0; i < chunks.length; i++) {
+            out.write(chunks[i], offsets[i], lengths[i]);
+        }
+    }
+
+    /**
+     * @return the total number of bytes in the message
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return a copy of all the bytes of the message
+     */
+    public byte[] toByteArray() {
+        byte[] all = new byte[length];
+        int pos = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            System.arraycopy(chunks[i], offsets[i], all, pos, lengths[i]);
+            pos += lengths[i];
+        }
+        return all;
+    }
+
+    /**
+     * @return the message decoded as UTF-8, for logging
+     */
+    @Override
+    public String toString() {
+        return new String(toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+package bgu.spl.net.srv;
+
+import bgu.spl.net.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates the bodies of channel messages for connections that negotiated compression.
+ * A compressed frame keeps its command and headers and adds content-encoding:deflate and content-length,
+ * which lets the body contain NULs. Each thread reuses its own Deflater.
+ */
+/*package*/ final class FrameCompressor {
+
+    private static final byte[] CONTENT_ENCODING = "content-encoding:deflate\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(Deflater::new);
+
+    private static final LongAdder BYTES_IN = new LongAdder();
+    private static final LongAdder BYTES_OUT = new LongAdder();
+
+    static {
+        Metrics.counter("stomp_compressed_body_bytes_total", "Message body bytes deflated for compressing connections", BYTES_IN::sum);
+        Metrics.counter("stomp_compressed_output_bytes_total", "Deflated body bytes they were compressed to", BYTES_OUT::sum);
+    }
+
+    private FrameCompressor() {
+    }
+
+    /**
+     * @param frame an encoded frame with a body and no content-length header
+     * @param threshold smallest body size worth compressing
+     * @return the compressed frame, or null if the body is below the threshold or does not get smaller
+     */
+    static EncodedMessage compress(EncodedMessage frame, int threshold) {
+        if (frame.length() < threshold) {
+            return null;
+        }
+        byte[] bytes = frame.toByteArray();
+        int headersEnd = indexOfEmptyLine(bytes); //the position of the empty line
+        int bodyEnd = bytes.length > 0 && bytes[bytes.length - 1] == 0 ? bytes.length - 1 : bytes.length;
+        if (headersEnd < 0 || bodyEnd - (headersEnd + 1) < threshold) {
+            return null;
+        }
+        int bodyStart = headersEnd + 1;
+
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(bytes, bodyStart, bodyEnd - bodyStart);
+        deflater.finish();
+        ByteArrayOutputStream body = new ByteArrayOutputStream((bodyEnd - bodyStart) / 2);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            body.write(chunk, 0, n);
+        }
+        if (body.size() >= bodyEnd - bodyStart) {
+            return null;
+        }
+        BYTES_IN.add(bodyEnd - bodyStart);
+        BYTES_OUT.add(body.size());
+
+        byte[] lengthHeader = (body.size() + "\n\n").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                headersEnd + CONTENT_ENCODING.length + CONTENT_LENGTH.length + lengthHeader.length + body.size() + 1);
+        out.write(bytes, 0, headersEnd); //command and header lines
+        out.write(CONTENT_ENCODING, 0, CONTENT_ENCODING.length);
+        out.write(CONTENT_LENGTH, 0, CONTENT_LENGTH.length);
+        out.write(lengthHeader, 0, lengthHeader.length);
+        out.write(body.toByteArray(), 0, body.size());
+        out.write(0);
+        return EncodedMessage.of(out.toByteArray());
+    }
+
+    /**
+     * @return the position of the LF of the empty line ending the headers, or -1
+     */
+    private static int indexOfEmptyLine(byte[] bytes) {
+        for (int i = 1; i < bytes.length; i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -2,6 +2,9 @@ package bgu.spl.net.srv;
 
 import bgu.spl.net.api.MessageEncoderDecoder;
 import bgu.spl.net.api.MessagingProtocol;
+import bgu.spl.net.log.Logger;
+import bgu.spl.net.metrics.Histogram;
+import bgu.spl.net.metrics.Metrics;
 
 import bgu.spl.net.impl.stomp.StompMessagingProtocolImpl;
 
@@ -10,28 +13,104 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class NonBlockingConnectionHandler<T> implements ConnectionHandler<T> {
 
+    private static final Logger LOG = Logger.get(NonBlockingConnectionHandler.class);
+
     private static final int BUFFER_ALLOCATION_SIZE = 1 << 13; //8k
     private static final ConcurrentLinkedQueue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final int WRITE_BATCH_SIZE = 64; //max buffers handed to a single gathering write
+
+    private static final LongAdder TOTAL_WRITE_SYSCALLS = new LongAdder();
+    private static final LongAdder TOTAL_FRAMES_SENT = new LongAdder();
+    private static final LongAdder TOTAL_FRAMES_DROPPED = new LongAdder();
+    private static final LongAdder TOTAL_HEART_BEATS_SENT = new LongAdder();
+    private static final LongAdder TOTAL_HEART_BEAT_TIMEOUTS = new LongAdder();
+    private static final Histogram WRITE_QUEUE_TIME = Metrics.histogram("stomp_write_queue_seconds",
+            "Time a frame waits in a connection's write queue until it is handed to the socket", Metrics.NANOS_PER_SECOND);
+
+    static {
+        Metrics.counter("stomp_frames_sent_total", "Frames written to the reactor's connections", TOTAL_FRAMES_SENT::sum);
+        Metrics.counter("stomp_frames_dropped_total", "Frames dropped for slow consumers", TOTAL_FRAMES_DROPPED::sum);
+        Metrics.counter("stomp_write_syscalls_total", "Socket writes issued by the reactor", TOTAL_WRITE_SYSCALLS::sum);
+        Metrics.counter("stomp_heart_beats_sent_total", "Heart-beats sent to idle connections", TOTAL_HEART_BEATS_SENT::sum);
+        Metrics.counter("stomp_heart_beat_timeouts_total", "Connections closed for not sending anything in time",
+                TOTAL_HEART_BEAT_TIMEOUTS::sum);
+    }
+
+    private static final EncodedMessage HEART_BEAT = EncodedMessage.of(new byte[]{'\n'});
+
+    // The handler whose input is being processed by the current thread - the publisher of whatever it sends to channels.
+    private static final ThreadLocal<NonBlockingConnectionHandler<?>> CURRENT_PUBLISHER = new ThreadLocal<>();
 
     private final MessagingProtocol<T> protocol;
     private final MessageEncoderDecoder<T> encdec;
-    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<OutboundFrame> writeQueue = new ConcurrentLinkedQueue<>();
     private final SocketChannel chan;
-    private final Reactor reactor;
+    private final SelectorLoop loop;
+    private final OutboundLimits limits;
+    private final ActorMailbox mailbox = new ActorMailbox(); //tasks processing this client's input, run in order
+
+    // Buffers taken from writeQueue and not fully written yet, only touched by the selector thread.
+    private final ByteBuffer[] writeBatch = new ByteBuffer[WRITE_BATCH_SIZE];
+    private int batchStart = 0;
+    private int batchEnd = 0;
+    private OutboundFrame currentFrame = null; //frame whose parts are being moved into the batch
+    private int currentPart = 0;
+
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicInteger readPauses = new AtomicInteger();
+    private final Set<NonBlockingConnectionHandler<?>> pausedPublishers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean disconnecting = new AtomicBoolean(false); //slow consumer policy decided to disconnect
+    private volatile boolean closeAfterFlush = false;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private volatile long writeSyscalls = 0; //only written by the selector thread
+
+    // Heart-beating, only touched by the selector thread. The deadlines are checked against the last read and write
+    // when they come due, so reads and writes never move them; a closed connection's timeouts just do not come back.
+    private long lastReadAt = TimingWheel.nowMillis();
+    private long lastWriteAt = lastReadAt;
+    private long heartBeatSendMillis = 0;
+    private long heartBeatReceiveMillis = 0;
+    private final TimingWheel.Timeout sendDeadline = new TimingWheel.Timeout(this::onSendDeadline);
+    private final TimingWheel.Timeout receiveDeadline = new TimingWheel.Timeout(this::onReceiveDeadline);
+
+    // Reads suspended by suspendReading until this time, only touched by the selector thread
+    private long readsSuspendedUntil = 0;
+    private final TimingWheel.Timeout readsResume = new TimingWheel.Timeout(this::resumeReading);
+
+    public NonBlockingConnectionHandler(
+            MessageEncoderDecoder<T> reader,
+            MessagingProtocol<T> protocol,
+            SocketChannel chan,
+            SelectorLoop loop) {
+        this(reader, protocol, chan, loop, null);
+    }
 
+    /**
+     * @param limits bounds for the outbound queue, null for an unbounded queue
+     */
     public NonBlockingConnectionHandler(
             MessageEncoderDecoder<T> reader,
             MessagingProtocol<T> protocol,
             SocketChannel chan,
-            Reactor reactor) {
+            SelectorLoop loop,
+            OutboundLimits limits) {
         this.chan = chan;
         this.encdec = reader;
         this.protocol = protocol;
-        this.reactor = reactor;
+        this.loop = loop;
+        this.limits = limits;
     }
 
     public Runnable continueRead() {
@@ -41,39 +120,53 @@ public class NonBlockingConnectionHandler<T> implements ConnectionHandler<T> {
         try {
             success = chan.read(buf) != -1;
         } catch (IOException ex) {
-            ex.printStackTrace();
+            LOG.debug(() -> "Read failed: " + ex);
         }
 
         if (success) {
+            lastReadAt = TimingWheel.nowMillis();
             buf.flip();
             return () -> {
+                CURRENT_PUBLISHER.set(this);
                 try {
-                    while (buf.hasRemaining()) {
-                        T nextMessage = encdec.decodeNextByte(buf.get());
-                        if (nextMessage != null) {
-                            protocol.process(nextMessage);
-                        }
+                    for (T nextMessage : encdec.decode(buf)) {
+                        protocol.process(nextMessage);
                     }
                 } finally {
+                    CURRENT_PUBLISHER.remove();
                     releaseBuffer(buf);
                 }
             };
         } else {
             releaseBuffer(buf);
-            close();
+            closeNow();
             return null;
         }
 
     }
 
+    /**
+     * Closes the connection once the frames already queued (e.g. a final ERROR or RECEIPT) were written.
+     */
+    @Override
     public void close() {
+        if (queuedBytes.get() > 0 && chan.isOpen()) {
+            closeAfterFlush = true;
+            loop.updateInterestedOps(chan, SelectionKey.OP_WRITE);
+            return;
+        }
+        closeNow();
+    }
+
+    private void closeNow() {
+        resumePublishers(); //nobody will drain this queue anymore
         try {
             if (protocol instanceof StompMessagingProtocolImpl) {
                 ((StompMessagingProtocolImpl) protocol).close();
             }
             chan.close();
         } catch (IOException ex) {
-            ex.printStackTrace();
+            LOG.warn("Failed to close connection", ex);
         }
     }
 
@@ -81,28 +174,170 @@ public class NonBlockingConnectionHandler<T> implements ConnectionHandler<T> {
         return !chan.isOpen();
     }
 
+    /**
+     * Writes as much of the pending data as the socket accepts, handing up to WRITE_BATCH_SIZE buffers to every
+     * gathering write instead of issuing a write per buffer.
+     */
     public void continueWrite() {
-        while (!writeQueue.isEmpty()) {
-            try {
-                ByteBuffer top = writeQueue.peek();
-                chan.write(top);
-                if (top.hasRemaining()) {
-                    return;
-                } else {
-                    writeQueue.remove();
+        boolean drained = false;
+        try {
+            while (true) {
+                if (!fillWriteBatch()) {
+                    drained = true;
+                    break;
+                }
+
+                long written = chan.write(writeBatch, batchStart, batchEnd - batchStart);
+                if (written > 0) {
+                    lastWriteAt = TimingWheel.nowMillis();
+                }
+                writeSyscalls++;
+                TOTAL_WRITE_SYSCALLS.increment();
+                queuedBytes.addAndGet(-written);
+
+                while (batchStart < batchEnd && !writeBatch[batchStart].hasRemaining()) {
+                    writeBatch[batchStart++] = null;
+                }
+                if (batchStart < batchEnd) {
+                    break; //socket buffer is full, wait for the next OP_WRITE
                 }
-            } catch (IOException ex) {
-                ex.printStackTrace();
-                close();
             }
+        } catch (IOException ex) {
+            LOG.debug(() -> "Write failed: " + ex);
+            closeNow();
+            return;
         }
 
-        if (writeQueue.isEmpty()) {
-            if (protocol.shouldTerminate()) close();
-            else reactor.updateInterestedOps(chan, SelectionKey.OP_READ);
+        if (limits != null && queuedBytes.get() <= limits.getLowWatermark()) {
+            resumePublishers();
+        }
+
+        if (drained) {
+            if (protocol.shouldTerminate() || closeAfterFlush) close();
+            else loop.updateInterestedOps(chan, SelectionKey.OP_READ);
         }
     }
 
+    /**
+     * Moves the unwritten buffers to the start of the batch and tops it up with the parts of the queued frames.
+     * @return true if there is anything to write
+     */
+    private boolean fillWriteBatch() {
+        if (batchStart > 0) {
+            int pending = batchEnd - batchStart;
+            System.arraycopy(writeBatch, batchStart, writeBatch, 0, pending);
+            for (int i = pending; i < batchEnd; i++) {
+                writeBatch[i] = null;
+            }
+            batchStart = 0;
+            batchEnd = pending;
+        }
+
+        while (batchEnd < WRITE_BATCH_SIZE) {
+            if (currentFrame == null) {
+                currentFrame = writeQueue.poll();
+                currentPart = 0;
+                if (currentFrame == null) {
+                    break;
+                }
+                WRITE_QUEUE_TIME.recordSince(currentFrame.enqueuedAt);
+            }
+            writeBatch[batchEnd++] = currentFrame.parts[currentPart++];
+            if (currentPart == currentFrame.parts.length) {
+                currentFrame = null;
+            }
+        }
+        return batchEnd > 0;
+    }
+
+    @Override
+    public boolean startHeartBeat(long sendMillis, long receiveMillis) {
+        loop.execute(() -> {
+            if (isClosed()) {
+                return;
+            }
+            long now = TimingWheel.nowMillis();
+            heartBeatSendMillis = sendMillis;
+            heartBeatReceiveMillis = receiveMillis;
+            if (sendMillis > 0) {
+                loop.schedule(sendDeadline, lastWriteAt + sendMillis);
+            } else {
+                loop.cancel(sendDeadline);
+            }
+            if (receiveMillis > 0) {
+                loop.schedule(receiveDeadline, Math.max(lastReadAt, now) + receiveMillis);
+            } else {
+                loop.cancel(receiveDeadline);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Stops reading from the client for the given time, on top of any backpressure pause. Suspending a suspended
+     * connection extends the suspension if it ends later. The frames already read are still processed.
+     */
+    @Override
+    public boolean suspendReading(long millis) {
+        long until = TimingWheel.nowMillis() + millis;
+        loop.execute(() -> {
+            if (isClosed()) {
+                return;
+            }
+            if (!readsResume.isScheduled()) {
+                pauseReading();
+            } else if (until <= readsSuspendedUntil) {
+                return;
+            }
+            readsSuspendedUntil = until;
+            loop.schedule(readsResume, until);
+        });
+        return true;
+    }
+
+    /**
+     * Queues a heart-beat if nothing was written for the send interval, then waits for the next one.
+     * Nothing is needed while frames are still queued - the client is not reading them.
+     */
+    private void onSendDeadline() {
+        if (isClosed() || heartBeatSendMillis == 0) {
+            return;
+        }
+        long now = TimingWheel.nowMillis();
+        if (now - lastWriteAt < heartBeatSendMillis) {
+            loop.schedule(sendDeadline, lastWriteAt + heartBeatSendMillis);
+            return;
+        }
+        if (queuedBytes.get() == 0) {
+            sendEncodedDirect(HEART_BEAT);
+            TOTAL_HEART_BEATS_SENT.increment();
+        }
+        loop.schedule(sendDeadline, now + heartBeatSendMillis);
+    }
+
+    /**
+     * Closes the connection if nothing was read from the client for the receive interval. A client whose reads
+     * are paused by backpressure is given more time, its heart-beats are just not read.
+     */
+    private void onReceiveDeadline() {
+        if (isClosed() || heartBeatReceiveMillis == 0) {
+            return;
+        }
+        long now = TimingWheel.nowMillis();
+        if (isReadPaused()) {
+            loop.schedule(receiveDeadline, now + heartBeatReceiveMillis);
+            return;
+        }
+        if (now - lastReadAt < heartBeatReceiveMillis) {
+            loop.schedule(receiveDeadline, lastReadAt + heartBeatReceiveMillis);
+            return;
+        }
+        long silence = now - lastReadAt;
+        LOG.info(() -> "Closing a connection silent for " + silence + "ms");
+        TOTAL_HEART_BEAT_TIMEOUTS.increment();
+        closeNow();
+    }
+
     private static ByteBuffer leaseBuffer() {
         ByteBuffer buff = BUFFER_POOL.poll();
         if (buff == null) {
@@ -121,8 +356,201 @@ public class NonBlockingConnectionHandler<T> implements ConnectionHandler<T> {
     public void send(T msg) {
         //IMPLEMENT IF NEEDED
         if(msg != null){
-            writeQueue.add(ByteBuffer.wrap(encdec.encode(msg)));
-            reactor.updateInterestedOps(chan, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            byte[] encoded = encdec.encode(msg);
+            enqueue(new OutboundFrame(new ByteBuffer[]{ByteBuffer.wrap(encoded)}, encoded.length, false));
+        }
+    }
+
+    /**
+     * Queues a channel message. Channel messages are the ones the slow consumer policy may drop or push back on.
+     */
+    @Override
+    public void sendEncoded(EncodedMessage msg) {
+        if(msg != null && !disconnecting.get()){
+            enqueue(new OutboundFrame(msg.toBuffers(), msg.length(), true));
+
+            if (limits != null && queuedBytes.get() > limits.getHighWatermark()) {
+                applySlowConsumerPolicy();
+            }
+        }
+    }
+
+    @Override
+    public void sendEncodedDirect(EncodedMessage msg) {
+        if(msg != null){
+            enqueue(new OutboundFrame(msg.toBuffers(), msg.length(), false));
+        }
+    }
+
+    private void enqueue(OutboundFrame frame) {
+        queuedBytes.addAndGet(frame.length);
+        writeQueue.add(frame);
+        countFrame();
+        loop.updateInterestedOps(chan, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void applySlowConsumerPolicy() {
+        switch (limits.getPolicy()) {
+            case DROP_OLDEST:
+                dropMessages(limits.getLowWatermark());
+                break;
+            case DISCONNECT:
+                disconnectSlowConsumer();
+                break;
+            case PAUSE_PUBLISHERS:
+                pausePublisher(CURRENT_PUBLISHER.get());
+                break;
+        }
+    }
+
+    /**
+     * Removes the oldest queued channel messages until at most target bytes are queued.
+     * Frames that already started being written are never dropped.
+     */
+    private void dropMessages(long target) {
+        for (OutboundFrame frame : writeQueue) {
+            if (queuedBytes.get() <= target) {
+                return;
+            }
+            if (frame.droppable && writeQueue.remove(frame)) {
+                queuedBytes.addAndGet(-frame.length);
+                framesDropped.incrementAndGet();
+                TOTAL_FRAMES_DROPPED.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops all pending channel messages, stops reading from the client and closes the connection once
+     * the disconnect notice was written.
+     */
+    private void disconnectSlowConsumer() {
+        if (!disconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        dropMessages(0);
+        pauseReading();
+
+        EncodedMessage notice = limits.getDisconnectNotice();
+        if (notice != null) {
+            queuedBytes.addAndGet(notice.length());
+            writeQueue.add(new OutboundFrame(notice.toBuffers(), notice.length(), false));
+        }
+        closeAfterFlush = true; //only after the notice is queued, so the selector thread can't close before writing it
+        loop.updateInterestedOps(chan, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Stops reading from the publisher until this connection's queue is back under the low watermark.
+     */
+    private void pausePublisher(NonBlockingConnectionHandler<?> publisher) {
+        if (publisher == null || publisher == this) {
+            return;
+        }
+        if (pausedPublishers.add(publisher)) {
+            publisher.pauseReading();
+        }
+        if (queuedBytes.get() <= limits.getLowWatermark()) {
+            resumePublishers(); //the selector thread drained the queue while we were pausing
+        }
+    }
+
+    private void resumePublishers() {
+        for (NonBlockingConnectionHandler<?> publisher : pausedPublishers) {
+            if (pausedPublishers.remove(publisher)) {
+                publisher.resumeReading();
+            }
+        }
+    }
+
+    private void pauseReading() {
+        if (readPauses.getAndIncrement() == 0) {
+            loop.updateInterestedOps(chan, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void resumeReading() {
+        if (readPauses.decrementAndGet() == 0) {
+            loop.updateInterestedOps(chan, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * @return true if reading from the client is paused because of backpressure
+     */
+    /*package*/ boolean isReadPaused() {
+        return readPauses.get() > 0;
+    }
+
+    /*package*/ ActorMailbox getMailbox() {
+        return mailbox;
+    }
+
+    private void countFrame() {
+        framesSent.incrementAndGet();
+        TOTAL_FRAMES_SENT.increment();
+    }
+
+    /**
+     * @return number of frames handed to this connection for sending
+     */
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    /**
+     * @return number of channel messages dropped because the client did not keep up
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * @return number of socket write calls made for this connection
+     */
+    public long getWriteSyscalls() {
+        return writeSyscalls;
+    }
+
+    /**
+     * @return number of frames handed to all non blocking connections for sending
+     */
+    public static long getTotalFramesSent() {
+        return TOTAL_FRAMES_SENT.sum();
+    }
+
+    /**
+     * @return number of socket write calls made by all non blocking connections
+     */
+    public static long getTotalWriteSyscalls() {
+        return TOTAL_WRITE_SYSCALLS.sum();
+    }
+
+    /**
+     * @return number of channel messages dropped by all non blocking connections
+     */
+    public static long getTotalFramesDropped() {
+        return TOTAL_FRAMES_DROPPED.sum();
+    }
+
+    /**
+     * A message waiting to be written, possibly made of several buffers.
+     */
+    private static final class OutboundFrame {
+        final ByteBuffer[] parts;
+        final long length;
+        final boolean droppable;
+        final long enqueuedAt = System.nanoTime();
+
+        OutboundFrame(ByteBuffer[] parts, long length, boolean droppable) {
+            this.parts = parts;
+            this.length = length;
+            this.droppable = droppable;
         }
     }
 }
@@ -0,0 +1,46 @@
+package bgu.spl.net.srv;
+
+/**
+ * Bounds for the bytes a non blocking connection may have queued for writing.
+ * Once a connection queues more than the high watermark of channel messages the policy kicks in,
+ * dropping or pausing until the queue is back under the low watermark.
+ */
+public class OutboundLimits {
+
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final SlowConsumerPolicy policy;
+    private final EncodedMessage disconnectNotice;
+
+    /**
+     * @param highWatermark bytes queued at which the policy is applied
+     * @param lowWatermark bytes queued at which a dropping / paused connection is considered healthy again
+     * @param policy
+     * @param disconnectNotice message sent to the client before disconnecting it (DISCONNECT policy), may be null
+     */
+    public OutboundLimits(long highWatermark, long lowWatermark, SlowConsumerPolicy policy, EncodedMessage disconnectNotice) {
+        if (lowWatermark < 0 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 <= low <= high, got low=" + lowWatermark + " high=" + highWatermark);
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.policy = policy;
+        this.disconnectNotice = disconnectNotice;
+    }
+
+    public long getHighWatermark() {
+        return highWatermark;
+    }
+
+    public long getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public SlowConsumerPolicy getPolicy() {
+        return policy;
+    }
+
+    public EncodedMessage getDisconnectNotice() {
+        return disconnectNotice;
+    }
+}
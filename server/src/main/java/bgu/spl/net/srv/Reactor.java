@@ -3,28 +3,29 @@ package bgu.spl.net.srv;
 import bgu.spl.net.api.StompMessagingProtocol;
 import bgu.spl.net.api.MessageEncoderDecoder;
 import bgu.spl.net.api.MessagingProtocol;
+import bgu.spl.net.log.Logger;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.channels.ClosedSelectorException;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Supplier;
 
 public class Reactor<T> implements Server<T> {
 
+    private static final Logger LOG = Logger.get(Reactor.class);
+
     private final int port;
     private final Supplier<MessagingProtocol<T>> protocolFactory;
     private final Supplier<MessageEncoderDecoder<T>> readerFactory;
-    private final ActorThreadPool pool;
-    private Selector selector;
+    private final ActorScheduler pool;
+    private final OutboundLimits outboundLimits;
+    private final int selectorThreads;
 
-    private Thread selectorThread;
-    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private SelectorLoop acceptLoop;
+    private SelectorLoop[] ioLoops;
+    private int nextIoLoop = 0;
 
-    private final ConnectionsImpl<T> connections = new ConnectionsImpl<>();
+    private final ConnectionsImpl<T> connections;
     private int connectionIdCounter = 0;
 
     public Reactor(
@@ -32,71 +33,78 @@ public class Reactor<T> implements Server<T> {
             int port,
             Supplier<MessagingProtocol<T>> protocolFactory,
             Supplier<MessageEncoderDecoder<T>> readerFactory) {
+        this(numThreads, port, protocolFactory, readerFactory, null);
+    }
 
-        this.pool = new ActorThreadPool(numThreads);
+    /**
+     * @param outboundLimits bounds for the outbound queue of every connection, null for unbounded queues
+     */
+    public Reactor(
+            int numThreads,
+            int port,
+            Supplier<MessagingProtocol<T>> protocolFactory,
+            Supplier<MessageEncoderDecoder<T>> readerFactory,
+            OutboundLimits outboundLimits) {
+        this(numThreads, 0, port, protocolFactory, readerFactory, outboundLimits);
+    }
+
+    /**
+     * @param selectorThreads number of I/O selector loops, each on its own thread. Accepted connections are handed to
+     *                        them round robin while the serving thread only accepts. With 0 the serving thread
+     *                        accepts, reads and writes everything on a single selector.
+     * @param outboundLimits bounds for the outbound queue of every connection, null for unbounded queues
+     */
+    public Reactor(
+            int numThreads,
+            int selectorThreads,
+            int port,
+            Supplier<MessagingProtocol<T>> protocolFactory,
+            Supplier<MessageEncoderDecoder<T>> readerFactory,
+            OutboundLimits outboundLimits) {
+
+        this.pool = new ActorScheduler(numThreads);
+        this.selectorThreads = selectorThreads;
         this.port = port;
         this.protocolFactory = protocolFactory;
         this.readerFactory = readerFactory;
+        this.outboundLimits = outboundLimits;
+        this.connections = new ConnectionsImpl<>(readerFactory.get());
     }
 
     @Override
     public void serve() {
-	selectorThread = Thread.currentThread();
-        try (Selector selector = Selector.open();
-                ServerSocketChannel serverSock = ServerSocketChannel.open()) {
-
-            this.selector = selector; //just to be able to close
+        try (ServerSocketChannel serverSock = ServerSocketChannel.open()) {
+
+            acceptLoop = new SelectorLoop(this, pool);
+            ioLoops = new SelectorLoop[selectorThreads];
+            for (int i = 0; i < ioLoops.length; i++) {
+                SelectorLoop loop = new SelectorLoop(this, pool);
+                ioLoops[i] = loop;
+                new Thread(loop::run, "reactor-io-" + i).start();
+            }
 
             serverSock.bind(new InetSocketAddress(port));
             serverSock.configureBlocking(false);
-            serverSock.register(selector, SelectionKey.OP_ACCEPT);
-			System.out.println("Server started");
-
-            while (!Thread.currentThread().isInterrupted()) {
-
-                selector.select();
-                runSelectionThreadTasks();
+            acceptLoop.registerAcceptor(serverSock);
+			LOG.info("Server started on port " + port);
 
-                for (SelectionKey key : selector.selectedKeys()) {
+            acceptLoop.run();
 
-                    if (!key.isValid()) {
-                        continue;
-                    } else if (key.isAcceptable()) {
-                        handleAccept(serverSock, selector);
-                    } else {
-                        handleReadWrite(key);
-                    }
-                }
-
-                selector.selectedKeys().clear(); //clear the selected keys set so that we can know about new events
-
-            }
-
-        } catch (ClosedSelectorException ex) {
-            //do nothing - server was requested to be closed
         } catch (IOException ex) {
             //this is an error
-            ex.printStackTrace();
+            LOG.error("Reactor failed", ex);
+        } finally {
+            closeLoops();
         }
 
-        System.out.println("server closed!!!");
+        LOG.info("Server closed");
         pool.shutdown();
     }
 
-    /*package*/ void updateInterestedOps(SocketChannel chan, int ops) {
-        final SelectionKey key = chan.keyFor(selector);
-        if (Thread.currentThread() == selectorThread) {
-            key.interestOps(ops);
-        } else {
-            selectorTasks.add(() -> {
-                key.interestOps(ops);
-            });
-            selector.wakeup();
-        }
-    }
-
-
-    private void handleAccept(ServerSocketChannel serverChan, Selector selector) throws IOException {
+    /**
+     * Accepts a new connection, called by the accepting loop.
+     */
+    /*package*/ void handleAccept(ServerSocketChannel serverChan) throws IOException {
         SocketChannel clientChan = serverChan.accept();
         clientChan.configureBlocking(false);
 
@@ -107,42 +115,46 @@ public class Reactor<T> implements Server<T> {
             ((StompMessagingProtocol<T>) protocol).start(connecionId, connections);
         }
 
+        SelectorLoop loop = nextLoop();
         final NonBlockingConnectionHandler<T> handler = new NonBlockingConnectionHandler<>(
                 readerFactory.get(),
                 protocol,
                 clientChan,
-                this);
+                loop,
+                outboundLimits);
+
+        loop.register(clientChan, handler);
 
         connections.addConnection(connecionId, handler);
-        
-        clientChan.register(selector, SelectionKey.OP_READ, handler);
     }
 
-    private void handleReadWrite(SelectionKey key) {
-        @SuppressWarnings("unchecked")
-        NonBlockingConnectionHandler<T> handler = (NonBlockingConnectionHandler<T>) key.attachment();
-
-        if (key.isReadable()) {
-            Runnable task = handler.continueRead();
-            if (task != null) {
-                pool.submit(handler, task);
-            }
-        }
-
-	    if (key.isValid() && key.isWritable()) {
-            handler.continueWrite();
+    private SelectorLoop nextLoop() {
+        if (ioLoops.length == 0) {
+            return acceptLoop;
         }
+        SelectorLoop loop = ioLoops[nextIoLoop];
+        nextIoLoop = (nextIoLoop + 1) % ioLoops.length;
+        return loop;
     }
 
-    private void runSelectionThreadTasks() {
-        while (!selectorTasks.isEmpty()) {
-            selectorTasks.remove().run();
+    private void closeLoops() {
+        try {
+            if (acceptLoop != null)
+                acceptLoop.close();
+            if (ioLoops != null) {
+                for (SelectorLoop loop : ioLoops) {
+                    if (loop != null)
+                        loop.close();
+                }
+            }
+        } catch (IOException ex) {
+            LOG.warn("Failed to close the selectors", ex);
         }
     }
 
     @Override
     public void close() throws IOException {
-        selector.close();
+        closeLoops();
     }
 
 }
@@ -0,0 +1,73 @@
+package bgu.spl.net.srv;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bytes retained by all channels together, and the order their messages were retained in, so a channel that
+ * needs room evicts the oldest message of any channel - an idle channel does not hold on to the shared bytes.
+ * Every retained message gets a sequence number; each channel is indexed by the number of its oldest message.
+ */
+/*package*/ final class RetainBudget {
+
+    private final long limit;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, RetainedMessages> oldest = new ConcurrentSkipListMap<>();
+
+    RetainBudget(long limit) {
+        this.limit = limit;
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Takes the bytes from the budget, evicting the oldest messages of all channels until they fit.
+     * Must not be called holding the lock of a RetainedMessages.
+     * @return false if they did not fit although nothing is left to evict
+     */
+    boolean reserve(long length) {
+        while (true) {
+            long total = bytes.get();
+            if (total + length <= limit) {
+                if (bytes.compareAndSet(total, total + length)) {
+                    return true;
+                }
+            } else {
+                Map.Entry<Long, RetainedMessages> entry = oldest.firstEntry();
+                if (entry == null) {
+                    return false; //the missing bytes are reserved by channels about to retain a message
+                }
+                entry.getValue().evictIfOldest(entry.getKey());
+            }
+        }
+    }
+
+    void release(long length) {
+        bytes.addAndGet(-length);
+    }
+
+    long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Moves the channel to the position of its current oldest message.
+     * @param previous the sequence number of its previous oldest message, or -1 if it had none
+     * @param current the sequence number of its oldest message now, or -1 if it has none
+     */
+    void reindex(RetainedMessages channel, long previous, long current) {
+        if (previous == current) {
+            return;
+        }
+        if (previous >= 0) {
+            oldest.remove(previous, channel);
+        }
+        if (current >= 0) {
+            oldest.put(current, channel);
+        }
+    }
+}
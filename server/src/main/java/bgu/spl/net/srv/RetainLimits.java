@@ -0,0 +1,69 @@
+package bgu.spl.net.srv;
+
+/**
+ * How many of its recent messages each channel keeps for replaying to new subscribers.
+ * A channel keeps at most the given number of messages, no older than the given age and no more than the given bytes,
+ * and all channels together keep no more than the total bytes.
+ */
+public class RetainLimits {
+
+    /** Retains nothing. */
+    public static final RetainLimits NONE = new RetainLimits(0, 0, 0, 0);
+
+    private final int messages;
+    private final long maxAgeMillis;
+    private final long channelBytes;
+    private final long totalBytes;
+
+    /**
+     * @param messages messages kept per channel, 0 to keep none
+     * @param maxAgeMillis age after which a message is no longer replayed, 0 for no limit
+     * @param channelBytes bytes kept per channel
+     * @param totalBytes bytes kept by all channels together
+     */
+    public RetainLimits(int messages, long maxAgeMillis, long channelBytes, long totalBytes) {
+        if (messages < 0 || maxAgeMillis < 0 || channelBytes < 0 || totalBytes < 0) {
+            throw new IllegalArgumentException("Retain limits must not be negative");
+        }
+        this.messages = messages;
+        this.maxAgeMillis = maxAgeMillis;
+        this.channelBytes = channelBytes;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Limits from -Dstomp.retain.messages (0 by default - disabled), -Dstomp.retain.seconds (0, no age limit),
+     * -Dstomp.retain.channel.bytes (1MB) and -Dstomp.retain.total.bytes (64MB).
+     * @return RetainLimits
+     */
+    public static RetainLimits fromSystemProperties() {
+        int messages = Integer.getInteger("stomp.retain.messages", 0);
+        if (messages == 0) {
+            return NONE;
+        }
+        return new RetainLimits(messages,
+                Long.getLong("stomp.retain.seconds", 0L) * 1000,
+                Long.getLong("stomp.retain.channel.bytes", 1L << 20),
+                Long.getLong("stomp.retain.total.bytes", 64L << 20));
+    }
+
+    public boolean isEnabled() {
+        return messages > 0 && channelBytes > 0 && totalBytes > 0;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public long getChannelBytes() {
+        return channelBytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+}
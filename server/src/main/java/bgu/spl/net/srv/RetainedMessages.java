@@ -0,0 +1,130 @@
+package bgu.spl.net.srv;
+
+/**
+ * The most recent messages of one channel, in a ring of encoded frames, for replaying to new subscribers.
+ * Bounded by RetainLimits: a new message evicts the oldest ones of the channel until it fits the channel's limits,
+ * then the oldest ones of all channels until it fits the bytes they share (see RetainBudget).
+ * Adding is serialized by the lock of the channel's ChannelSubscribers. The ring is guarded by this,
+ * since channels that need room evict from each other.
+ */
+/*package*/ final class RetainedMessages {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final RetainLimits limits;
+    private final RetainBudget budget; //shared by all channels
+
+    private EncodedMessage[] messages;
+    private long[] times;
+    private long[] sequences; //numbered by the budget, in the order retained by all channels
+    private int head = 0; //index of the oldest message
+    private int size = 0;
+    private long bytes = 0;
+
+    RetainedMessages(RetainLimits limits, RetainBudget budget) {
+        this.limits = limits;
+        this.budget = budget;
+        int capacity = Math.min(INITIAL_CAPACITY, limits.getMessages());
+        this.messages = new EncodedMessage[capacity];
+        this.times = new long[capacity];
+        this.sequences = new long[capacity];
+    }
+
+    /**
+     * Retains the message, evicting older ones as needed. A message larger than the limits is not retained.
+     */
+    void add(EncodedMessage msg, long nowMillis) {
+        long length = msg.length();
+        synchronized (this) {
+            evictExpired(nowMillis);
+            if (length > limits.getChannelBytes() || length > limits.getTotalBytes()) {
+                return;
+            }
+            while (size > 0 && (size == limits.getMessages() || bytes + length > limits.getChannelBytes())) {
+                evictOldest();
+            }
+        }
+        // outside the lock - may evict from this channel as well as from the others
+        if (!budget.reserve(length)) {
+            return;
+        }
+
+        synchronized (this) {
+            long previousOldest = oldestSequence(); //other channels may have evicted meanwhile, never added
+            if (size == messages.length) {
+                grow();
+            }
+            int tail = (head + size) % messages.length;
+            messages[tail] = msg;
+            times[tail] = nowMillis;
+            sequences[tail] = budget.nextSequence();
+            size++;
+            bytes += length;
+            budget.reindex(this, previousOldest, oldestSequence());
+        }
+    }
+
+    /**
+     * @param count
+     * @param nowMillis
+     * @return the last count messages that are not too old, oldest first
+     */
+    synchronized EncodedMessage[] last(int count, long nowMillis) {
+        evictExpired(nowMillis);
+        int n = Math.min(count, size);
+        EncodedMessage[] result = new EncodedMessage[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = messages[(head + size - n + i) % messages.length];
+        }
+        return result;
+    }
+
+    /**
+     * Evicts the oldest message if it still is the one with the given sequence number.
+     */
+    synchronized void evictIfOldest(long sequence) {
+        if (size > 0 && sequences[head] == sequence) {
+            evictOldest();
+        }
+    }
+
+    private void evictExpired(long nowMillis) {
+        if (limits.getMaxAgeMillis() == 0) {
+            return;
+        }
+        while (size > 0 && nowMillis - times[head] > limits.getMaxAgeMillis()) {
+            evictOldest();
+        }
+    }
+
+    private long oldestSequence() {
+        return size == 0 ? -1 : sequences[head];
+    }
+
+    private void evictOldest() {
+        long previousOldest = sequences[head];
+        long length = messages[head].length();
+        messages[head] = null;
+        head = (head + 1) % messages.length;
+        size--;
+        bytes -= length;
+        budget.release(length);
+        budget.reindex(this, previousOldest, oldestSequence());
+    }
+
+    private void grow() {
+        int capacity = Math.min(messages.length * 2, limits.getMessages());
+        EncodedMessage[] grownMessages = new EncodedMessage[capacity];
+        long[] grownTimes = new long[capacity];
+        long[] grownSequences = new long[capacity];
+        for (int i = 0; i < size; i++) {
+            grownMessages[i] = messages[(head + i) % messages.length];
+            grownTimes[i] = times[(head + i) % messages.length];
+            grownSequences[i] = sequences[(head + i) % messages.length];
+        }
+        messages = grownMessages;
+        times = grownTimes;
+        sequences = grownSequences;
+        head = 0;
+    }
+}
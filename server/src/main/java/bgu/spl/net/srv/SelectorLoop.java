@@ -0,0 +1,177 @@
+package bgu.spl.net.srv;
+
+import bgu.spl.net.log.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector together with the thread running it. Reads and writes the channels registered to it, and accepts new
+ * connections for the reactor if the server socket is registered to it as well.
+ * Its timing wheel holds the heart-beat deadlines of these channels; the selector wakes up every tick while
+ * any deadline is scheduled. The tick is -Dstomp.heartbeat.tick.millis (100 by default).
+ */
+/*package*/ class SelectorLoop implements Closeable {
+
+    private static final Logger LOG = Logger.get(SelectorLoop.class);
+
+    private final Reactor<?> reactor;
+    private final ActorScheduler pool;
+    private final Selector selector;
+
+    private volatile Thread selectorThread;
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final TimingWheel timers = new TimingWheel(Long.getLong("stomp.heartbeat.tick.millis", 100), 1024);
+
+    SelectorLoop(Reactor<?> reactor, ActorScheduler pool) throws IOException {
+        this.reactor = reactor;
+        this.pool = pool;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Runs the loop in the calling thread until the selector is closed or the thread is interrupted.
+     */
+    void run() {
+        selectorThread = Thread.currentThread();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+
+                selector.select(timers.millisToNextTick(TimingWheel.nowMillis()));
+                runSelectionThreadTasks();
+
+                for (SelectionKey key : selector.selectedKeys()) {
+
+                    if (!key.isValid()) {
+                        continue;
+                    } else if (key.isAcceptable()) {
+                        reactor.handleAccept((ServerSocketChannel) key.channel());
+                    } else {
+                        handleReadWrite(key);
+                    }
+                }
+
+                selector.selectedKeys().clear(); //clear the selected keys set so that we can know about new events
+
+                timers.advance(TimingWheel.nowMillis());
+
+            }
+
+        } catch (ClosedSelectorException ex) {
+            //do nothing - server was requested to be closed
+        } catch (IOException ex) {
+            //this is an error
+            LOG.error("Selector loop failed", ex);
+        }
+    }
+
+    void registerAcceptor(ServerSocketChannel serverSock) throws ClosedChannelException {
+        serverSock.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Registers a newly accepted channel to this loop. May be called from any thread.
+     */
+    void register(SocketChannel chan, NonBlockingConnectionHandler<?> handler) throws ClosedChannelException {
+        if (Thread.currentThread() == selectorThread) {
+            chan.register(selector, SelectionKey.OP_READ, handler);
+        } else {
+            selectorTasks.add(() -> {
+                try {
+                    //messages may have been queued before the key existed, OP_WRITE makes sure they get flushed
+                    chan.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, handler);
+                } catch (ClosedChannelException ex) {
+                    handler.close();
+                }
+            });
+            selector.wakeup();
+        }
+    }
+
+    /*package*/ void updateInterestedOps(SocketChannel chan, int ops) {
+        final SelectionKey key = chan.keyFor(selector);
+        if (key == null) {
+            return; //not registered yet or already closed
+        }
+        if (Thread.currentThread() == selectorThread) {
+            applyInterestedOps(key, ops);
+        } else {
+            selectorTasks.add(() -> {
+                applyInterestedOps(key, ops);
+            });
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the task on the selector thread, right away if called from it. May be called from any thread.
+     */
+    /*package*/ void execute(Runnable task) {
+        if (Thread.currentThread() == selectorThread) {
+            task.run();
+        } else {
+            selectorTasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Schedules the timeout on this loop's timing wheel, moving it if it is already scheduled.
+     * Must be called from the selector thread, like the timeouts run.
+     */
+    /*package*/ void schedule(TimingWheel.Timeout timeout, long deadlineMillis) {
+        timers.schedule(timeout, deadlineMillis);
+    }
+
+    /*package*/ void cancel(TimingWheel.Timeout timeout) {
+        timers.cancel(timeout);
+    }
+
+    /**
+     * Sets the interest set of the key, leaving out OP_READ while the handler's reads are paused by backpressure.
+     */
+    private void applyInterestedOps(SelectionKey key, int ops) {
+        if (!key.isValid()) {
+            return; //the connection was closed since the update was requested
+        }
+        NonBlockingConnectionHandler<?> handler = (NonBlockingConnectionHandler<?>) key.attachment();
+        if (handler.isReadPaused()) {
+            ops &= ~SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    private void handleReadWrite(SelectionKey key) {
+        NonBlockingConnectionHandler<?> handler = (NonBlockingConnectionHandler<?>) key.attachment();
+
+        if (key.isReadable()) {
+            Runnable task = handler.continueRead();
+            if (task != null) {
+                pool.submit(handler.getMailbox(), task);
+            }
+        }
+
+	    if (key.isValid() && key.isWritable()) {
+            handler.continueWrite();
+        }
+    }
+
+    private void runSelectionThreadTasks() {
+        while (!selectorTasks.isEmpty()) {
+            selectorTasks.remove().run();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        selector.close();
+    }
+
+}
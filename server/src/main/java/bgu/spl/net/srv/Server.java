@@ -3,6 +3,7 @@ package bgu.spl.net.srv;
 import bgu.spl.net.api.MessageEncoderDecoder;
 import bgu.spl.net.api.MessagingProtocol;
 import java.io.Closeable;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Supplier;
 
 public interface Server<T> extends Closeable {
@@ -34,6 +35,31 @@ public interface Server<T> extends Closeable {
 
     }
 
+    /**
+     *This function returns a new instance of a thread per client pattern server that runs every client on a virtual thread.
+     *Requires Java 21 or newer.
+     * @param port The port for the server socket
+     * @param protocolFactory A factory that creats new MessagingProtocols
+     * @param encoderDecoderFactory A factory that creats new MessageEncoderDecoder
+     * @param <T> The Message Object for the protocol
+     * @return A new virtual thread per client server
+     * @throws UnsupportedOperationException if the running JVM has no virtual threads
+     */
+    public static <T> Server<T>  virtualThreadPerClient(
+            int port,
+            Supplier<MessagingProtocol<T> > protocolFactory,
+            Supplier<MessageEncoderDecoder<T> > encoderDecoderFactory) {
+
+        ThreadFactory threads = VirtualThreads.factory("client-");
+        return new BaseServer<T>(port, protocolFactory, encoderDecoderFactory) {
+            @Override
+            protected void execute(BlockingConnectionHandler<T>  handler) {
+                threads.newThread(handler).start();
+            }
+        };
+
+    }
+
     /**
      * This function returns a new instance of a reactor pattern server
      * @param nthreads Number of threads available for protocol processing
@@ -51,4 +77,44 @@ public interface Server<T> extends Closeable {
         return new Reactor<T>(nthreads, port, protocolFactory, encoderDecoderFactory);
     }
 
+    /**
+     * This function returns a new instance of a reactor pattern server with bounded outbound queues
+     * @param nthreads Number of threads available for protocol processing
+     * @param port The port for the server socket
+     * @param protocolFactory A factory that creats new MessagingProtocols
+     * @param encoderDecoderFactory A factory that creats new MessageEncoderDecoder
+     * @param outboundLimits Watermarks and slow consumer policy applied to every connection
+     * @param <T> The Message Object for the protocol
+     * @return A new reactor server
+     */
+    public static <T> Server<T> reactor(
+            int nthreads,
+            int port,
+            Supplier<MessagingProtocol<T>> protocolFactory,
+            Supplier<MessageEncoderDecoder<T>> encoderDecoderFactory,
+            OutboundLimits outboundLimits) {
+        return new Reactor<T>(nthreads, port, protocolFactory, encoderDecoderFactory, outboundLimits);
+    }
+
+    /**
+     * This function returns a new instance of a reactor pattern server that spreads the connections over several selectors
+     * @param nthreads Number of threads available for protocol processing
+     * @param selectorThreads Number of I/O selector threads, the serving thread only accepts connections
+     * @param port The port for the server socket
+     * @param protocolFactory A factory that creats new MessagingProtocols
+     * @param encoderDecoderFactory A factory that creats new MessageEncoderDecoder
+     * @param outboundLimits Watermarks and slow consumer policy applied to every connection
+     * @param <T> The Message Object for the protocol
+     * @return A new reactor server
+     */
+    public static <T> Server<T> reactor(
+            int nthreads,
+            int selectorThreads,
+            int port,
+            Supplier<MessagingProtocol<T>> protocolFactory,
+            Supplier<MessageEncoderDecoder<T>> encoderDecoderFactory,
+            OutboundLimits outboundLimits) {
+        return new Reactor<T>(nthreads, selectorThreads, port, protocolFactory, encoderDecoderFactory, outboundLimits);
+    }
+
 }
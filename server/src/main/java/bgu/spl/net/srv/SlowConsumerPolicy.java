@@ -0,0 +1,8 @@
+package bgu.spl.net.srv;
+
+/**
+ * What the reactor does with a connection whose outbound queue passed its high watermark.
+ */
+public enum SlowConsumerPolicy {
+    DROP_OLDEST, DISCONNECT, PAUSE_PUBLISHERS
+}
@@ -0,0 +1,86 @@
+package bgu.spl.net.srv;
+
+import java.util.Arrays;
+
+/**
+ * The subscriptions of one connection: (channel ID, subscription ID) pairs in two small arrays, searched linearly.
+ * Clients subscribe to a handful of channels, so this is both smaller and faster than a map.
+ * At most one subscription per channel, and a subscription ID names one channel at most.
+ */
+/*package*/ final class SubscriptionTable {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] channelIds = new int[INITIAL_CAPACITY];
+    private String[] subscriptionIds = new String[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Adds the subscription, replacing an earlier subscription to the same channel.
+     */
+    synchronized void put(int channelId, String subscriptionId) {
+        int index = indexOfChannel(channelId);
+        if (index < 0) {
+            if (size == channelIds.length) {
+                channelIds = Arrays.copyOf(channelIds, size * 2);
+                subscriptionIds = Arrays.copyOf(subscriptionIds, size * 2);
+            }
+            index = size++;
+            channelIds[index] = channelId;
+        }
+        subscriptionIds[index] = subscriptionId;
+    }
+
+    /**
+     * @return the channel ID of the subscription, or -1 if there is no such subscription
+     */
+    synchronized int channelOf(String subscriptionId) {
+        for (int i = 0; i < size; i++) {
+            if (subscriptionIds[i].equals(subscriptionId)) {
+                return channelIds[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the channel ID of the removed subscription, or -1 if there was no such subscription
+     */
+    synchronized int removeSubscription(String subscriptionId) {
+        for (int i = 0; i < size; i++) {
+            if (subscriptionIds[i].equals(subscriptionId)) {
+                int channelId = channelIds[i];
+                size--;
+                channelIds[i] = channelIds[size];
+                subscriptionIds[i] = subscriptionIds[size];
+                subscriptionIds[size] = null;
+                return channelId;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the subscription ID for the channel, or null if not subscribed to it
+     */
+    synchronized String subscriptionIdOf(int channelId) {
+        int index = indexOfChannel(channelId);
+        return index < 0 ? null : subscriptionIds[index];
+    }
+
+    /**
+     * @return a copy of the subscribed channel IDs
+     */
+    synchronized int[] channelIds() {
+        return Arrays.copyOf(channelIds, size);
+    }
+
+    private int indexOfChannel(int channelId) {
+        for (int i = 0; i < size; i++) {
+            if (channelIds[i] == channelId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
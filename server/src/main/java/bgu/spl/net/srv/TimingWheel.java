@@ -0,0 +1,164 @@
+package bgu.spl.net.srv;
+
+import java.util.ArrayDeque;
+
+/**
+ * A hashed timing wheel: timeouts are hashed by their deadline tick into a ring of slots, each a doubly linked list.
+ * Scheduling and cancelling cost O(1), and every tick only visits the timeouts of one slot, the ones due now or
+ * whole rotations later. Deadlines are rounded up to the next tick, so a timeout runs up to one tick late.
+ *
+ * Not thread safe - each selector loop owns one and advances it from its own thread.
+ */
+/*package*/ final class TimingWheel {
+
+    private static final int UNSCHEDULED = -1;
+    private static final int EXPIRED = -2; //taken off its slot, about to run
+
+    private final long tickMillis;
+    private final Timeout[] slots; //list heads
+    private final int mask;
+    private long currentTick;
+    private int size = 0;
+    private final ArrayDeque<Timeout> expired = new ArrayDeque<>();
+
+    /**
+     * @param tickMillis duration of a tick
+     * @param slotCount number of slots, rounded up to a power of two
+     */
+    TimingWheel(long tickMillis, int slotCount) {
+        this.tickMillis = tickMillis;
+        int capacity = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.slots = new Timeout[capacity];
+        this.mask = capacity - 1;
+        this.currentTick = nowMillis() / tickMillis;
+    }
+
+    /**
+     * @return the clock of the wheel in milliseconds, monotonic
+     */
+    static long nowMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Schedules the timeout to run at the deadline, moving it if it is already scheduled.
+     * @param deadlineMillis on the clock of nowMillis()
+     */
+    void schedule(Timeout timeout, long deadlineMillis) {
+        if (timeout.isScheduled()) {
+            cancel(timeout);
+        }
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        int slot = (int) (tick & mask);
+        timeout.deadlineTick = tick;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[slot] = timeout;
+        size++;
+    }
+
+    /**
+     * Removes the timeout if it is scheduled.
+     */
+    void cancel(Timeout timeout) {
+        if (timeout.slot == EXPIRED) {
+            timeout.slot = UNSCHEDULED;
+            return;
+        }
+        if (timeout.slot == UNSCHEDULED) {
+            return;
+        }
+        unlink(timeout);
+        timeout.slot = UNSCHEDULED;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        size--;
+    }
+
+    /**
+     * Runs the timeouts whose tick has passed. A timeout may schedule or cancel itself and others while running,
+     * the due ones are taken off their slots first.
+     */
+    void advance(long nowMillis) {
+        long nowTick = nowMillis / tickMillis;
+        if (size == 0) {
+            currentTick = Math.max(currentTick, nowTick);
+            return;
+        }
+        // after a long pause every slot is visited once, not once per missed tick
+        long from = Math.max(currentTick + 1, nowTick - mask);
+        for (long tick = from; tick <= nowTick; tick++) {
+            currentTick = tick;
+            Timeout timeout = slots[(int) (tick & mask)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadlineTick <= nowTick) {
+                    unlink(timeout);
+                    timeout.slot = EXPIRED;
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+
+        Timeout timeout;
+        while ((timeout = expired.poll()) != null) {
+            if (timeout.slot == EXPIRED) { //not cancelled or scheduled again by an earlier one
+                timeout.slot = UNSCHEDULED;
+                timeout.task.run();
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds until the next tick is due, or 0 if no timeout is scheduled (wait indefinitely)
+     */
+    long millisToNextTick(long nowMillis) {
+        if (size == 0) {
+            return 0;
+        }
+        return Math.max(1, (currentTick + 1) * tickMillis - nowMillis);
+    }
+
+    /**
+     * @return number of scheduled timeouts
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * A task that can be scheduled on a wheel, again and again without allocating.
+     */
+    static final class Timeout {
+        private final Runnable task;
+        private long deadlineTick;
+        private int slot = UNSCHEDULED;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        boolean isScheduled() {
+            return slot != UNSCHEDULED;
+        }
+    }
+}
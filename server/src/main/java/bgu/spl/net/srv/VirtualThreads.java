@@ -0,0 +1,31 @@
+package bgu.spl.net.srv;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (Java 21+) while the sources still build for Java 8.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param namePrefix threads are named namePrefix0, namePrefix1...
+     * @return a factory of virtual threads
+     * @throws UnsupportedOperationException if the running JVM has no virtual threads
+     */
+    static ThreadFactory factory(String namePrefix) {
+        try {
+            // Thread.ofVirtual().name(namePrefix, 0).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads need Java 21 or newer, running on " + System.getProperty("java.version"), ex);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package bgu.spl.net.impl.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Speaks the protocol of sql_server.py on a free local port: NUL terminated requests, each answered with a NUL
+ * terminated response. Requests containing "FAIL" get an ERROR (a BEGIN script containing one fails as a whole),
+ * queries get "SUCCESS|(1,)" and everything else "SUCCESS". Requests containing "HANG_UP" close the connection
+ * without an answer. Requests can be held before they are answered.
+ */
+class FakeSqlServer implements Closeable {
+
+	private final ServerSocket serverSocket;
+	private final List<String> requests = new ArrayList<>();
+	private final List<Socket> connections = new ArrayList<>();
+	private final AtomicInteger accepted = new AtomicInteger();
+	private volatile CountDownLatch gate = new CountDownLatch(0);
+
+	FakeSqlServer() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::acceptLoop, "fake-sql-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the number of connections accepted so far
+	 */
+	int getAccepted() {
+		return accepted.get();
+	}
+
+	/**
+	 * @return the requests received so far, in order
+	 */
+	List<String> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<>(requests);
+		}
+	}
+
+	/**
+	 * Holds the answers to the requests received from now on, until release is called.
+	 */
+	void hold() {
+		gate = new CountDownLatch(1);
+	}
+
+	void release() {
+		gate.countDown();
+	}
+
+	/**
+	 * Waits until the given number of requests was received in total.
+	 */
+	void awaitRequests(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		synchronized (requests) {
+			while (requests.size() < count) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new AssertionError("Expected " + count + " requests, got " + requests);
+				}
+				requests.wait(remaining);
+			}
+		}
+	}
+
+	/**
+	 * Closes the server side of every open connection, like a server dropping idle clients.
+	 */
+	void dropConnections() throws IOException {
+		synchronized (connections) {
+			for (Socket socket : connections) {
+				socket.close();
+			}
+			connections.clear();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		release();
+		serverSocket.close();
+		dropConnections();
+	}
+
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				accepted.incrementAndGet();
+				synchronized (connections) {
+					connections.add(socket);
+				}
+				Thread handler = new Thread(() -> serve(socket), "fake-sql-connection");
+				handler.setDaemon(true);
+				handler.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket) {
+			InputStream in = s.getInputStream();
+			OutputStream out = s.getOutputStream();
+			ByteArrayOutputStream request = new ByteArrayOutputStream();
+			int b;
+			while ((b = in.read()) != -1) {
+				if (b != 0) {
+					request.write(b);
+					continue;
+				}
+				String sql = new String(request.toByteArray(), StandardCharsets.UTF_8);
+				request.reset();
+				synchronized (requests) {
+					requests.add(sql);
+					requests.notifyAll();
+				}
+				gate.await();
+				if (sql.contains("HANG_UP")) {
+					return;
+				}
+				out.write((respond(sql) + "\0").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+		} catch (IOException | InterruptedException e) {
+			// the connection was closed
+		}
+	}
+
+	private static String respond(String sql) {
+		if (sql.contains("FAIL")) {
+			return "ERROR: failed";
+		}
+		if (sql.trim().toUpperCase().startsWith("SELECT")) {
+			return "SUCCESS|(1,)";
+		}
+		return "SUCCESS";
+	}
+}
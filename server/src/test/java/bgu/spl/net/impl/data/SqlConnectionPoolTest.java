@@ -0,0 +1,119 @@
+package bgu.spl.net.impl.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SqlConnectionPoolTest {
+
+	private FakeSqlServer server;
+	private SqlConnectionPool pool;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new FakeSqlServer();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (pool != null) {
+			pool.close();
+		}
+		server.close();
+	}
+
+	@Test
+	public void reusesItsConnection() {
+		pool = new SqlConnectionPool("127.0.0.1", server.getPort(), 4, 30000);
+		for (int i = 0; i < 10; i++) {
+			assertEquals("SUCCESS", pool.execute("INSERT " + i));
+		}
+		assertEquals(1, server.getAccepted());
+		assertEquals(1, pool.getOpenConnections());
+		assertEquals(1, pool.getIdleConnections());
+	}
+
+	@Test
+	public void opensAtMostSizeConnections() throws Exception {
+		pool = new SqlConnectionPool("127.0.0.1", server.getPort(), 2, 30000);
+		server.hold();
+		ExecutorService callers = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				String sql = "INSERT " + i;
+				results.add(callers.submit(() -> pool.execute(sql)));
+			}
+			server.awaitRequests(2);
+			assertEquals(2, pool.getOpenConnections());
+
+			server.release();
+			for (Future<String> result : results) {
+				assertEquals("SUCCESS", result.get());
+			}
+		} finally {
+			callers.shutdown();
+		}
+		assertEquals(2, server.getAccepted());
+		assertEquals(2, pool.getConnectionsCreated());
+	}
+
+	@Test
+	public void checksAConnectionThatWasIdleTooLong() throws InterruptedException {
+		pool = new SqlConnectionPool("127.0.0.1", server.getPort(), 1, 1);
+		pool.execute("INSERT a");
+		Thread.sleep(10);
+		pool.execute("INSERT b");
+
+		assertEquals(Arrays.asList("INSERT a", "SELECT 1", "INSERT b"), server.getRequests());
+		assertEquals(1, server.getAccepted());
+	}
+
+	@Test
+	public void retriesARequestOnAConnectionTheServerDropped() throws IOException {
+		pool = new SqlConnectionPool("127.0.0.1", server.getPort(), 1, 30000);
+		assertEquals("SUCCESS", pool.execute("INSERT a"));
+		server.dropConnections();
+
+		assertEquals("SUCCESS", pool.execute("INSERT b"));
+		assertEquals(Arrays.asList("INSERT a", "INSERT b"), server.getRequests());
+		assertEquals(2, server.getAccepted());
+		assertEquals(0, pool.getFailures());
+		assertEquals(1, pool.getOpenConnections());
+	}
+
+	@Test
+	public void doesNotRetryARequestTheServerMayHaveExecuted() {
+		pool = new SqlConnectionPool("127.0.0.1", server.getPort(), 1, 30000);
+
+		assertTrue(pool.execute("INSERT HANG_UP").startsWith("ERROR:"));
+		assertEquals(Arrays.asList("INSERT HANG_UP"), server.getRequests());
+		assertEquals(1, pool.getFailures());
+		assertEquals(0, pool.getOpenConnections());
+	}
+
+	@Test
+	public void reportsAnUnreachableServer() throws IOException {
+		int port;
+		try (ServerSocket unused = new ServerSocket(0)) {
+			port = unused.getLocalPort();
+		}
+		pool = new SqlConnectionPool("127.0.0.1", port, 1, 30000);
+
+		assertTrue(pool.execute("INSERT a").startsWith("ERROR:"));
+		assertEquals(1, pool.getFailures());
+		assertEquals(0, pool.getOpenConnections());
+	}
+}
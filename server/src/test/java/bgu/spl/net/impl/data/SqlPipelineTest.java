@@ -0,0 +1,127 @@
+package bgu.spl.net.impl.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SqlPipelineTest {
+
+	private FakeSqlServer server;
+	private SqlPipeline pipeline;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new FakeSqlServer();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (pipeline != null) {
+			pipeline.close();
+		}
+		server.close();
+	}
+
+	private SqlPipeline pipeline(int maxBatchSize) {
+		pipeline = new SqlPipeline(new SqlConnectionPool("127.0.0.1", server.getPort(), 1, 30000), 100, maxBatchSize);
+		return pipeline;
+	}
+
+	/**
+	 * Keeps the writer busy with a first statement, so the next ones queue up behind it.
+	 */
+	private void blockWriter() throws InterruptedException {
+		server.hold();
+		pipeline.submit("INSERT first");
+		server.awaitRequests(1);
+	}
+
+	@Test
+	public void sendsQueuedWritesAsOneTransaction() throws InterruptedException {
+		pipeline(64);
+		blockWriter();
+		List<CompletableFuture<String>> results = Arrays.asList(
+				pipeline.submit("INSERT a"), pipeline.submit("INSERT b"), pipeline.submit("INSERT c"));
+		server.release();
+		pipeline.flush();
+
+		assertEquals(Arrays.asList("INSERT first", "BEGIN;\nINSERT a;\nINSERT b;\nINSERT c;\nCOMMIT;"),
+				server.getRequests());
+		for (CompletableFuture<String> result : results) {
+			assertEquals("SUCCESS", result.join());
+		}
+		assertEquals(2, pipeline.getBatchCount());
+		assertEquals(4, pipeline.getStatementCount());
+		assertEquals(3, pipeline.getLargestBatchSize());
+	}
+
+	@Test
+	public void rerunsAFailedTransactionOneStatementAtATime() throws InterruptedException {
+		pipeline(64);
+		blockWriter();
+		CompletableFuture<String> a = pipeline.submit("INSERT a");
+		CompletableFuture<String> failing = pipeline.submit("INSERT FAIL");
+		CompletableFuture<String> b = pipeline.submit("INSERT b");
+		server.release();
+		pipeline.flush();
+
+		assertEquals("SUCCESS", a.join());
+		assertTrue(failing.join().startsWith("ERROR"));
+		assertEquals("SUCCESS", b.join());
+		assertEquals(Arrays.asList("INSERT first", "BEGIN;\nINSERT a;\nINSERT FAIL;\nINSERT b;\nCOMMIT;",
+				"INSERT a", "INSERT FAIL", "INSERT b"), server.getRequests());
+	}
+
+	@Test
+	public void runsQueriesAloneAndInOrder() throws InterruptedException {
+		pipeline(64);
+		blockWriter();
+		pipeline.submit("INSERT a");
+		pipeline.submit("INSERT b");
+		CompletableFuture<String> query = pipeline.submit("SELECT * FROM users");
+		pipeline.submit("INSERT c");
+		server.release();
+		pipeline.flush();
+
+		assertEquals("SUCCESS|(1,)", query.join());
+		assertEquals(Arrays.asList("INSERT first", "BEGIN;\nINSERT a;\nINSERT b;\nCOMMIT;", "SELECT * FROM users",
+				"INSERT c"), server.getRequests());
+	}
+
+	@Test
+	public void limitsTheBatchSize() throws InterruptedException {
+		pipeline(2);
+		blockWriter();
+		for (int i = 0; i < 5; i++) {
+			pipeline.submit("INSERT " + i);
+		}
+		server.release();
+		pipeline.flush();
+
+		assertEquals(Arrays.asList("INSERT first", "BEGIN;\nINSERT 0;\nINSERT 1;\nCOMMIT;",
+				"BEGIN;\nINSERT 2;\nINSERT 3;\nCOMMIT;", "INSERT 4"), server.getRequests());
+		assertEquals(2, pipeline.getLargestBatchSize());
+		assertEquals(1, pipeline.getLastBatchSize());
+	}
+
+	@Test
+	public void closeExecutesTheQueuedStatements() throws InterruptedException {
+		pipeline(64);
+		blockWriter();
+		CompletableFuture<String> queued = pipeline.submit("INSERT a");
+		server.release();
+		pipeline.close();
+
+		assertEquals("SUCCESS", queued.join());
+		assertTrue(pipeline.submit("INSERT late").join().startsWith("ERROR:"));
+		assertEquals(2, server.getRequests().size());
+	}
+}
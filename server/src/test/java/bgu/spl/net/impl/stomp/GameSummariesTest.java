@@ -0,0 +1,68 @@
+package bgu.spl.net.impl.stomp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GameSummariesTest {
+
+    private static GameEvent event(String name, boolean active) {
+        return GameEvent.parse("team a:a\nteam b:b\nevent name:" + name + "\ntime:10\n"
+                + "general game updates:\nactive:" + active + "\n");
+    }
+
+    private static boolean has(GameSummaries summaries, String game, String user) {
+        return !summaries.summarize(game, user).startsWith("No updates found");
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUpdatedSummary() {
+        GameSummaries summaries = new GameSummaries(2);
+        summaries.record("/games/a", event("kickoff", true), "u");
+        summaries.record("/games/b", event("kickoff", true), "u");
+        summaries.record("/games/a", event("goal", true), "u");
+        summaries.record("/games/c", event("kickoff", true), "u");
+
+        assertTrue(has(summaries, "/games/a", "u"));
+        assertFalse(has(summaries, "/games/b", "u"));
+        assertTrue(has(summaries, "/games/c", "u"));
+        assertEquals(2, summaries.size());
+    }
+
+    @Test
+    public void evictsAFinishedGameFirst() {
+        GameSummaries summaries = new GameSummaries(2);
+        summaries.record("/games/a", event("kickoff", true), "u");
+        summaries.record("/games/b", event("final whistle", false), "u");
+        summaries.record("/games/c", event("kickoff", true), "u");
+
+        assertTrue(has(summaries, "/games/a", "u"));
+        assertFalse(has(summaries, "/games/b", "u"));
+        assertTrue(has(summaries, "/games/c", "u"));
+    }
+
+    @Test
+    public void readingASummaryDoesNotKeepIt() {
+        GameSummaries summaries = new GameSummaries(2);
+        summaries.record("/games/a", event("kickoff", true), "u");
+        summaries.record("/games/b", event("kickoff", true), "u");
+        summaries.summarize("/games/a", "u");
+        summaries.record("/games/c", event("kickoff", true), "u");
+
+        assertFalse(has(summaries, "/games/a", "u"));
+        assertTrue(has(summaries, "/games/b", "u"));
+    }
+
+    @Test
+    public void staysWithinTheLimitWithManySummaries() {
+        GameSummaries summaries = new GameSummaries(100);
+        for (int i = 0; i < 10000; i++) {
+            summaries.record("/games/" + i, event("kickoff", i % 3 == 0), "u" + (i % 7));
+        }
+
+        assertEquals(100, summaries.size());
+        assertTrue(has(summaries, "/games/9999", "u" + (9999 % 7)));
+    }
+}
@@ -0,0 +1,102 @@
+package bgu.spl.net.impl.stomp;
+
+import bgu.spl.net.srv.EncodedMessage;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GameTimelineTest {
+
+    private static EncodedMessage frame(String text) {
+        return EncodedMessage.of(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> texts(List<EncodedMessage> frames) {
+        List<String> texts = new ArrayList<>();
+        for (EncodedMessage frame : frames) {
+            texts.add(frame.toString());
+        }
+        return texts;
+    }
+
+    @Test
+    public void returnsTheReportsInAnInclusiveRange() {
+        GameTimeline timeline = new GameTimeline();
+        timeline.add(10, frame("kickoff"), false);
+        timeline.add(20, frame("goal"), false);
+        timeline.add(30, frame("half"), false);
+
+        assertEquals(Arrays.asList("goal", "half"), texts(timeline.range(20, 30)));
+        assertEquals(Arrays.asList("kickoff", "goal"), texts(timeline.range(0, 25)));
+        assertEquals(Collections.singletonList("half"), texts(timeline.range(21, 100)));
+        assertTrue(timeline.range(31, 100).isEmpty());
+        assertTrue(timeline.range(11, 19).isEmpty());
+        assertTrue(new GameTimeline().range(0, 100).isEmpty());
+    }
+
+    @Test
+    public void insertsALateReportAfterThoseWithTheSameTime() {
+        GameTimeline timeline = new GameTimeline();
+        timeline.add(10, frame("a"), false);
+        timeline.add(20, frame("b"), false);
+        timeline.add(30, frame("c"), false);
+        timeline.add(20, frame("late"), false);
+        timeline.add(5, frame("first"), false);
+
+        assertEquals(Arrays.asList("first", "a", "b", "late", "c"), texts(timeline.range(0, 100)));
+        assertEquals(Arrays.asList("b", "late"), texts(timeline.range(20, 20)));
+    }
+
+    @Test
+    public void searchesAcrossChunks() {
+        GameTimeline timeline = new GameTimeline();
+        for (int i = 0; i < 1000; i++) {
+            timeline.add(i * 2, frame("t" + i * 2), false);
+        }
+
+        List<String> range = texts(timeline.range(301, 1001));
+        assertEquals(350, range.size());
+        assertEquals("t302", range.get(0));
+        assertEquals("t1000", range.get(range.size() - 1));
+        assertEquals(1000, timeline.range(0, Integer.MAX_VALUE).size());
+        assertEquals(Collections.singletonList("t512"), texts(timeline.range(511, 513)));
+    }
+
+    @Test
+    public void findsEqualTimesSpanningChunks() {
+        GameTimeline timeline = new GameTimeline();
+        timeline.add(1, frame("before"), false);
+        for (int i = 0; i < 600; i++) {
+            timeline.add(7, frame("seven"), false);
+        }
+        timeline.add(9, frame("after"), false);
+
+        List<String> range = texts(timeline.range(7, 7));
+        assertEquals(600, range.size());
+        assertEquals(Collections.singletonList("seven"), new ArrayList<>(new HashSet<>(range)));
+        assertEquals(602, timeline.range(1, 9).size());
+    }
+
+    @Test
+    public void countsTheStoredBytesAndTheFinalReport() {
+        GameTimeline timeline = new GameTimeline();
+        long first = timeline.add(10, frame("12345"), false);
+        long second = timeline.add(20, frame("1234567890"), false);
+
+        assertEquals(5, second - first);
+        assertEquals(first + second, timeline.bytes());
+        assertFalse(timeline.isFinished());
+
+        timeline.add(90, frame("end"), true);
+        assertTrue(timeline.isFinished());
+    }
+}
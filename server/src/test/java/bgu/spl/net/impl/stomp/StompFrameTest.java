@@ -0,0 +1,99 @@
+package bgu.spl.net.impl.stomp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StompFrameTest {
+
+    @Test
+    public void parsesCommandHeadersAndBody() {
+        StompFrame frame = StompFrame.parse("SEND\ndestination:/games/usa_mexico\nreceipt:7\n\nhello\nworld");
+
+        assertEquals("SEND", frame.getCommand());
+        assertEquals("/games/usa_mexico", frame.getHeaderValue("destination"));
+        assertEquals("7", frame.getHeaderValue("receipt"));
+        assertEquals("hello\nworld", frame.getBody());
+        assertEquals(11, frame.getBodyLength());
+    }
+
+    @Test
+    public void acceptsCrlfLineEndings() {
+        StompFrame frame = StompFrame.parse("SUBSCRIBE\r\ndestination:/a\r\nid:1\r\n\r\nbody");
+
+        assertEquals("SUBSCRIBE", frame.getCommand());
+        assertEquals("/a", frame.getHeaderValue("destination"));
+        assertEquals("1", frame.getHeaderValue("id"));
+        assertEquals("body", frame.getBody());
+    }
+
+    @Test
+    public void skipsHeartBeatsBeforeTheCommand() {
+        StompFrame frame = StompFrame.parse("\n\r\n\nDISCONNECT\nreceipt:1\n\n");
+
+        assertEquals("DISCONNECT", frame.getCommand());
+        assertEquals("1", frame.getHeaderValue("receipt"));
+        assertEquals("", frame.getBody());
+    }
+
+    @Test
+    public void splitsAHeaderAtItsFirstColon() {
+        StompFrame frame = StompFrame.parse("SEND\nfile path:C:\\games\\a.json\n\n");
+
+        assertEquals("C:\\games\\a.json", frame.getHeaderValue("file path"));
+    }
+
+    @Test
+    public void theFirstOfARepeatedHeaderCounts() {
+        StompFrame frame = StompFrame.parse("SEND\ndestination:/a\ndestination:/b\n\n");
+
+        assertEquals("/a", frame.getHeaderValue("destination"));
+    }
+
+    @Test
+    public void aHeaderWithoutAValue() {
+        StompFrame frame = StompFrame.parse("SEND\nnocolon\nempty:\n\n");
+
+        assertTrue(frame.hasHeader("nocolon"));
+        assertNull(frame.getHeaderValue("nocolon"));
+        assertEquals("", frame.getHeaderValue("empty"));
+        assertFalse(frame.hasHeader("missing"));
+        assertNull(frame.getHeaderValue("missing"));
+    }
+
+    @Test
+    public void matchesHeaderNamesExactly() {
+        StompFrame frame = StompFrame.parse("SEND\ndestination-x:/a\n\n");
+
+        assertFalse(frame.hasHeader("destination"));
+        assertFalse(frame.hasHeader("destination-xy"));
+        assertTrue(frame.hasHeader("destination-x"));
+    }
+
+    @Test
+    public void aFrameWithoutBlankLineHasNoBody() {
+        StompFrame frame = StompFrame.parse("CONNECT\nlogin:alice");
+
+        assertEquals("CONNECT", frame.getCommand());
+        assertEquals("alice", frame.getHeaderValue("login"));
+        assertEquals("", frame.getBody());
+        assertEquals(0, frame.getBodyLength());
+    }
+
+    @Test
+    public void parsesManyHeaders() {
+        StringBuilder raw = new StringBuilder("SEND\n");
+        for (int i = 0; i < 50; i++) {
+            raw.append("h").append(i).append(':').append(i).append('\n');
+        }
+        StompFrame frame = StompFrame.parse(raw.append("\nbody").toString());
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(String.valueOf(i), frame.getHeaderValue("h" + i));
+        }
+        assertEquals("body", frame.getBody());
+    }
+}
@@ -0,0 +1,90 @@
+package bgu.spl.net.impl.stomp;
+
+import bgu.spl.net.srv.EncodedMessage;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StompFrameWriterTest {
+
+    private static byte[] bytes(EncodedMessage message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            message.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String text(EncodedMessage message) {
+        return new String(bytes(message), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writesHeadersInOrderThenTheBody() {
+        EncodedMessage frame = StompFrameWriter.start(StompServerFrame.MESSAGE)
+                .header(StompFrameWriter.DESTINATION, "/games/a_b")
+                .header(StompFrameWriter.MESSAGE_ID, "7")
+                .end("body");
+
+        assertEquals("MESSAGE\ndestination:/games/a_b\nmessage-id:7\n\nbody\0", text(frame));
+    }
+
+    @Test
+    public void aFrameWithoutBody() {
+        EncodedMessage frame = StompFrameWriter.start(StompServerFrame.RECEIPT)
+                .header(StompFrameWriter.RECEIPT_ID, null)
+                .end(null);
+
+        assertEquals("RECEIPT\nreceipt-id:\n\n\0", text(frame));
+    }
+
+    @Test
+    public void encodesLikeStringGetBytes() {
+        String[] bodies = {
+                "plain ascii",
+                "goal! équipe שער", //2 byte characters
+                "⚽ €", //3 byte characters
+                "🏆 trophy", //a surrogate pair
+                "broken \ud83c pair \udfc6", //unpaired surrogates
+        };
+        for (String body : bodies) {
+            EncodedMessage frame = StompFrameWriter.start(StompServerFrame.MESSAGE)
+                    .header(StompFrameWriter.MESSAGE, body)
+                    .end(body);
+
+            assertArrayEquals(body, ("MESSAGE\nmessage:" + body + "\n\n" + body + "\0").getBytes(StandardCharsets.UTF_8),
+                    bytes(frame));
+        }
+    }
+
+    @Test
+    public void framesDoNotShareTheThreadsBuffer() {
+        EncodedMessage first = StompFrameWriter.start(StompServerFrame.MESSAGE).end("first");
+        EncodedMessage second = StompFrameWriter.start(StompServerFrame.ERROR).end("second");
+
+        assertEquals("MESSAGE\n\nfirst\0", text(first));
+        assertEquals("ERROR\n\nsecond\0", text(second));
+    }
+
+    @Test
+    public void writesLargeBodies() {
+        char[] chars = new char[300_000];
+        Arrays.fill(chars, 'x');
+        String body = new String(chars);
+
+        EncodedMessage large = StompFrameWriter.start(StompServerFrame.MESSAGE).end(body);
+        EncodedMessage small = StompFrameWriter.start(StompServerFrame.MESSAGE).end("small");
+
+        assertEquals("MESSAGE\n\n" + body + "\0", text(large));
+        assertEquals("MESSAGE\n\nsmall\0", text(small));
+    }
+}
@@ -0,0 +1,162 @@
+package bgu.spl.net.impl.stomp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StompMessageEncoderDecoderTest {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(String text) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(bytes(text));
+        deflater.finish();
+        byte[] buffer = new byte[text.length() + 64];
+        int size = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Decodes the input in buffers of the given size, each decoded whole.
+     */
+    private static List<String> decode(byte[] input, int bufferSize) {
+        StompMessageEncoderDecoder decoder = new StompMessageEncoderDecoder();
+        List<String> messages = new ArrayList<>();
+        for (int from = 0; from < input.length; from += bufferSize) {
+            messages.addAll(decoder.decode(ByteBuffer.wrap(input, from, Math.min(bufferSize, input.length - from))));
+        }
+        return messages;
+    }
+
+    /**
+     * Decodes the input one byte at a time.
+     */
+    private static List<String> decodeBytes(byte[] input) {
+        StompMessageEncoderDecoder decoder = new StompMessageEncoderDecoder();
+        List<String> messages = new ArrayList<>();
+        for (byte b : input) {
+            String message = decoder.decodeNextByte(b);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Checks the input decodes to the expected frames however it is split.
+     */
+    private static void assertDecodes(byte[] input, String... expected) {
+        List<String> frames = Arrays.asList(expected);
+        assertEquals(frames, decodeBytes(input));
+        for (int size : new int[]{1, 2, 3, 7, 64, input.length}) {
+            assertEquals("in buffers of " + size, frames, decode(input, size));
+        }
+    }
+
+    @Test
+    public void splitsFramesAtNul() {
+        assertDecodes(bytes("SEND\ndestination:/a\n\nfirst\0SEND\ndestination:/a\n\nsecond\0"),
+                "SEND\ndestination:/a\n\nfirst", "SEND\ndestination:/a\n\nsecond");
+    }
+
+    @Test
+    public void decodesUtf8SplitAcrossBuffers() {
+        assertDecodes(bytes("SEND\n\nשער ⚽ 🏆\0"), "SEND\n\nשער ⚽ 🏆");
+    }
+
+    @Test
+    public void decodesFramesLargerThanItsBuffer() {
+        String body = String.join("", Collections.nCopies(5000, "event "));
+        assertDecodes(bytes("SEND\n\n" + body + "\0"), "SEND\n\n" + body);
+    }
+
+    @Test
+    public void skipsHeartBeatsBetweenFrames() {
+        assertDecodes(bytes("\n\r\nCONNECT\nlogin:a\n\n\0\n\nDISCONNECT\n\n\0"),
+                "CONNECT\nlogin:a\n\n", "DISCONNECT\n\n");
+    }
+
+    @Test
+    public void aContentLengthBodyMayContainNul() {
+        assertDecodes(bytes("SEND\ncontent-length:5\n\na\0b\0c\0SEND\n\nnext\0"),
+                "SEND\ncontent-length:5\n\na\0b\0c", "SEND\n\nnext");
+    }
+
+    @Test
+    public void acceptsCrlfBeforeTheBody() {
+        assertDecodes(bytes("SEND\r\ncontent-length:3\r\n\r\n\0\0\0\0"),
+                "SEND\r\ncontent-length:3\r\n\r\n\0\0\0");
+    }
+
+    @Test
+    public void anInvalidContentLengthIsIgnored() {
+        assertDecodes(bytes("SEND\ncontent-length:x1\n\nab\0"), "SEND\ncontent-length:x1\n\nab");
+    }
+
+    @Test
+    public void inflatesADeflateBodyAndDropsItsContentHeaders() {
+        String body = "event name:goal\ndescription:\n" + String.join("", Collections.nCopies(50, "what a goal! "));
+        byte[] deflated = deflate(body);
+        byte[] input = concat(
+                bytes("SEND\ndestination:/games/a_b\ncontent-encoding:deflate\ncontent-length:" + deflated.length + "\n\n"),
+                deflated, bytes("\0"));
+
+        assertDecodes(input, "SEND\ndestination:/games/a_b\n\n" + body);
+    }
+
+    @Test
+    public void keepsABodyThatIsNotDeflated() {
+        String frame = "SEND\ncontent-encoding:deflate\ncontent-length:5\n\nplain";
+        assertDecodes(bytes(frame + "\0"), frame);
+    }
+
+    @Test
+    public void keepsATruncatedDeflateBody() {
+        byte[] deflated = deflate("a body long enough to be cut in the middle of its deflate stream");
+        byte[] truncated = Arrays.copyOf(deflated, deflated.length / 2);
+        byte[] input = concat(bytes("SEND\ncontent-encoding:deflate\ncontent-length:" + truncated.length + "\n\n"),
+                truncated, bytes("\0"));
+
+        List<String> frames = decode(input, input.length);
+        assertEquals(1, frames.size());
+        assertTrue(frames.get(0).startsWith("SEND\ncontent-encoding:deflate\ncontent-length:"));
+    }
+
+    @Test
+    public void otherEncodingsAreNotInflated() {
+        String frame = "SEND\ncontent-encoding:gzip\n\nxyz";
+        assertDecodes(bytes(frame + "\0"), frame);
+    }
+
+    @Test
+    public void waitsForTheWholeFrame() {
+        StompMessageEncoderDecoder decoder = new StompMessageEncoderDecoder();
+        assertTrue(decoder.decode(ByteBuffer.wrap(bytes("SEND\ncontent-length:4\n\nab"))).isEmpty());
+        assertNull(decoder.decodeNextByte((byte) 'c'));
+        assertEquals(Arrays.asList("SEND\ncontent-length:4\n\nabc\0"), decoder.decode(ByteBuffer.wrap(bytes("\0\0"))));
+    }
+}
@@ -0,0 +1,91 @@
+package bgu.spl.net.impl.stomp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void startsFullAndAllowsItsCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        assertTrue(bucket.isFull(now));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire(1, now));
+        }
+        assertFalse(bucket.isFull(now));
+        assertEquals(SECOND / 10, bucket.tryAcquire(1, now));
+    }
+
+    @Test
+    public void refillsAtItsRate() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            bucket.tryAcquire(1, now);
+        }
+
+        assertEquals(SECOND / 20, bucket.tryAcquire(1, now + SECOND / 20));
+        assertEquals(0, bucket.tryAcquire(1, now + SECOND / 10));
+        assertTrue(bucket.tryAcquire(1, now + SECOND / 10) > 0);
+        assertTrue(bucket.isFull(now + SECOND));
+    }
+
+    @Test
+    public void aRefusedAcquireTakesNothing() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        bucket.tryAcquire(4, now);
+
+        assertTrue(bucket.tryAcquire(3, now) > 0);
+        assertEquals(0, bucket.tryAcquire(1, now));
+    }
+
+    @Test
+    public void takesMoreThanItsCapacityOnlyWhenFull() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryAcquire(20, now));
+        assertEquals(3 * SECOND / 2, bucket.tryAcquire(5, now + SECOND / 2));
+        assertEquals(0, bucket.tryAcquire(5, now + 2 * SECOND));
+    }
+
+    @Test
+    public void acquireGoesIntoDebt() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.acquire(5, now));
+        assertEquals(SECOND / 2, bucket.acquire(5, now));
+        assertTrue(bucket.tryAcquire(1, now + SECOND / 4) > 0);
+        assertEquals(0, bucket.tryAcquire(1, now + SECOND / 2 + SECOND / 10));
+    }
+
+    @Test
+    public void releaseGivesTokensBack() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        bucket.tryAcquire(5, now);
+
+        bucket.release(2);
+        assertEquals(0, bucket.tryAcquire(2, now));
+        assertTrue(bucket.tryAcquire(1, now) > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAZeroRate() {
+        new TokenBucket(0, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAZeroCapacity() {
+        new TokenBucket(10, 0);
+    }
+}
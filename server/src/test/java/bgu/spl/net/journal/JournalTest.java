@@ -0,0 +1,144 @@
+package bgu.spl.net.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class JournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Journal journal(Path dir, int segmentBytes, long retentionBytes) {
+        return new Journal(dir, segmentBytes, retentionBytes, 0, 0);
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return "offset@timestamp:payload" of every message from the offset on
+     */
+    private static List<String> replay(ChannelJournal channel, long fromOffset) {
+        List<String> messages = new ArrayList<>();
+        channel.replay(fromOffset, (offset, timestamp, payload) ->
+                messages.add(offset + "@" + timestamp + ":" + new String(payload, StandardCharsets.UTF_8)));
+        return messages;
+    }
+
+    @Test
+    public void replaysFromAnOffset() throws IOException {
+        ChannelJournal channel = journal(folder.getRoot().toPath(), 1 << 16, 1 << 20).channel("/games/a_b");
+
+        assertEquals(0, channel.append(100, buffer("first")));
+        assertEquals(1, channel.append(200, buffer("sec"), buffer("ond")));
+        assertEquals(2, channel.append(300, buffer("third")));
+
+        assertEquals(Arrays.asList("0@100:first", "1@200:second", "2@300:third"), replay(channel, 0));
+        assertEquals(Arrays.asList("1@200:second", "2@300:third"), replay(channel, 1));
+        assertEquals(0, replay(channel, 3).size());
+        assertEquals(3, channel.nextOffset());
+    }
+
+    @Test
+    public void stopsWhenTheVisitorDoes() throws IOException {
+        ChannelJournal channel = journal(folder.getRoot().toPath(), 1 << 16, 1 << 20).channel("/games/a_b");
+        for (int i = 0; i < 5; i++) {
+            channel.append(i, buffer("m" + i));
+        }
+
+        List<Long> visited = new ArrayList<>();
+        channel.replay(1, (offset, timestamp, payload) -> {
+            visited.add(offset);
+            return offset < 2;
+        });
+        assertEquals(Arrays.asList(1L, 2L), visited);
+    }
+
+    @Test
+    public void leavesThePayloadBuffersUnchanged() throws IOException {
+        ChannelJournal channel = journal(folder.getRoot().toPath(), 1 << 16, 1 << 20).channel("/games/a_b");
+        ByteBuffer payload = buffer("payload");
+        payload.position(3);
+
+        channel.append(100, payload);
+        assertEquals(3, payload.position());
+        assertEquals(Arrays.asList("0@100:load"), replay(channel, 0));
+    }
+
+    @Test
+    public void findsTheFirstMessageAtOrAfterATime() throws IOException {
+        ChannelJournal channel = journal(folder.getRoot().toPath(), 64, 1 << 20).channel("/games/a_b");
+        for (int i = 0; i < 10; i++) {
+            channel.append(1000 + i * 10, buffer("message" + i));
+        }
+
+        assertEquals(0, channel.offsetAt(0));
+        assertEquals(0, channel.offsetAt(1000));
+        assertEquals(4, channel.offsetAt(1035));
+        assertEquals(9, channel.offsetAt(1090));
+        assertEquals(10, channel.offsetAt(2000));
+    }
+
+    @Test
+    public void recoversTheChannelsFromDisk() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        Journal journal = journal(dir, 64, 1 << 20);
+        ChannelJournal games = journal.channel("/games/a_b");
+        ChannelJournal other = journal.channel("/games/*");
+        for (int i = 0; i < 7; i++) {
+            games.append(100 + i, buffer("message" + i));
+        }
+        other.append(500, buffer("other"));
+        journal.close();
+
+        Journal reopened = journal(dir, 64, 1 << 20);
+        ChannelJournal recovered = reopened.channel("/games/a_b");
+        assertEquals(replay(games, 0), replay(recovered, 0));
+        assertEquals(7, recovered.nextOffset());
+        assertEquals(7, recovered.append(200, buffer("after")));
+        assertEquals("7@200:after", replay(recovered, 7).get(0));
+        assertEquals(Arrays.asList("0@500:other"), replay(reopened.channel("/games/*"), 0));
+    }
+
+    @Test
+    public void deletesTheOldestSegmentsBeyondTheRetention() throws IOException {
+        // 2 messages of 22 bytes per segment, one closed segment fits the retention
+        ChannelJournal channel = journal(folder.getRoot().toPath(), 64, 50).channel("/games/a_b");
+        for (int i = 0; i < 10; i++) {
+            channel.append(100 + i, buffer("message" + i));
+        }
+
+        long first = channel.firstOffset();
+        assertNotEquals(0, first);
+        List<String> replayed = replay(channel, 0);
+        assertEquals(10 - first, replayed.size());
+        assertEquals(first + "@" + (100 + first) + ":message" + first, replayed.get(0));
+        assertEquals(10, channel.nextOffset());
+    }
+
+    @Test
+    public void storesMessagesLargerThanASegment() throws IOException {
+        ChannelJournal channel = journal(folder.getRoot().toPath(), 64, 1 << 20).channel("/games/a_b");
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+
+        channel.append(100, buffer("small"));
+        channel.append(200, buffer(large));
+        channel.append(300, buffer("small again"));
+        assertEquals(Arrays.asList("0@100:small", "1@200:" + large, "2@300:small again"), replay(channel, 0));
+    }
+}
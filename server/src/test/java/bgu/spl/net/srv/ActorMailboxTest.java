@@ -0,0 +1,98 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ActorMailboxTest {
+
+    @Test
+    public void pollsInOrderOfAdding() {
+        ActorMailbox mailbox = new ActorMailbox();
+        Runnable first = () -> { };
+        Runnable second = () -> { };
+        mailbox.add(first);
+        mailbox.add(second);
+
+        assertSame(first, mailbox.poll());
+        assertSame(second, mailbox.poll());
+        assertNull(mailbox.poll());
+    }
+
+    @Test
+    public void onlyTheFirstAddSchedulesTheActor() {
+        ActorMailbox mailbox = new ActorMailbox();
+        assertTrue(mailbox.add(() -> { }));
+        assertFalse(mailbox.add(() -> { }));
+
+        mailbox.poll();
+        mailbox.poll();
+        assertFalse(mailbox.release());
+        assertTrue(mailbox.add(() -> { }));
+    }
+
+    @Test
+    public void releaseKeepsTheActorScheduledWhileTasksArePending() {
+        ActorMailbox mailbox = new ActorMailbox();
+        mailbox.add(() -> { });
+        mailbox.poll();
+        assertFalse(mailbox.add(() -> { }));
+
+        assertTrue(mailbox.release());
+        assertFalse(mailbox.add(() -> { }));
+    }
+
+    @Test
+    public void keepsTheOrderOfEachProducerUnderContention() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20_000;
+        ActorMailbox mailbox = new ActorMailbox();
+        List<int[]> ran = new ArrayList<>(); //only touched by the consumer, the thread running the tasks
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    final int[] task = {producer, i};
+                    mailbox.add(() -> ran.add(task));
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (ran.size() < producers * perProducer && System.nanoTime() < deadline) {
+            Runnable task = mailbox.poll();
+            if (task != null) {
+                task.run();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * perProducer, ran.size());
+        assertNull(mailbox.poll());
+        int[] next = new int[producers];
+        for (int[] task : ran) {
+            assertEquals("task of producer " + task[0], next[task[0]], task[1]);
+            next[task[0]]++;
+        }
+    }
+}
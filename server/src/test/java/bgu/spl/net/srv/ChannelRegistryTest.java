@@ -0,0 +1,41 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ChannelRegistryTest {
+
+    private static ChannelRegistry registry() {
+        return new ChannelRegistry(RetainLimits.NONE, null);
+    }
+
+    @Test
+    public void givesOutIdsInOrder() {
+        ChannelRegistry registry = registry();
+
+        assertEquals(-1, registry.idOf("/games/a"));
+        assertEquals(0, registry.intern("/games/a"));
+        assertEquals(1, registry.intern("/games/b"));
+        assertEquals(0, registry.intern("/games/a"));
+        assertEquals(1, registry.idOf("/games/b"));
+        assertEquals("/games/b", registry.nameOf(1));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void keepsTheChannelsWhenGrowing() {
+        ChannelRegistry registry = registry();
+        ChannelSubscribers first = registry.subscribers(registry.intern("/games/0"));
+        for (int i = 1; i < 200; i++) {
+            assertEquals(i, registry.intern("/games/" + i));
+        }
+
+        assertSame(first, registry.subscribers(registry.idOf("/games/0")));
+        assertNotSame(first, registry.subscribers(registry.idOf("/games/199")));
+        assertEquals("/games/150", registry.nameOf(150));
+        assertEquals(200, registry.size());
+    }
+}
@@ -0,0 +1,150 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelSubscribersTest {
+
+    private static ChannelSubscribers channel() {
+        return channel(null);
+    }
+
+    private static ChannelSubscribers channel(RetainedMessages retained) {
+        return new ChannelSubscribers(retained, null);
+    }
+
+    private static void subscribe(ChannelSubscribers channel, int connectionId, String subscriptionId) {
+        subscribe(channel, connectionId, subscriptionId, null, 0);
+    }
+
+    private static void subscribe(ChannelSubscribers channel, int connectionId, String subscriptionId,
+                                  ConnectionHandler<?> handler, int replay) {
+        channel.add(connectionId, subscriptionId, handler, false, replay);
+    }
+
+    private static EncodedMessage message(String body) {
+        return EncodedMessage.of(("MESSAGE\ndestination:/games/a_b\n\n" + body + "\0").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class RecordingHandler implements ConnectionHandler<String> {
+        final List<String> received = new ArrayList<>();
+
+        @Override
+        public void send(String msg) {
+            received.add(msg);
+        }
+
+        @Override
+        public void sendEncoded(EncodedMessage msg) {
+            received.add(msg.toString());
+        }
+
+        @Override
+        public void sendEncodedDirect(EncodedMessage msg) {
+            received.add(msg.toString());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void subscribingPublishesANewSnapshot() {
+        ChannelSubscribers channel = channel();
+        ChannelSubscribers.Snapshot before = channel.snapshot();
+        subscribe(channel, 1, "a");
+        ChannelSubscribers.Snapshot after = channel.snapshot();
+
+        assertEquals(0, before.size);
+        assertEquals(1, after.size);
+        assertArrayEquals(new int[]{1}, after.connectionIds);
+        assertArrayEquals(new String[]{"a"}, after.subscriptionIds);
+        assertArrayEquals("subscription:a\n".getBytes(StandardCharsets.UTF_8), after.subscriptionHeaders[0]);
+        assertEquals(1, channel.size());
+    }
+
+    @Test
+    public void subscribingAgainReplacesTheConnectionsSubscription() {
+        ChannelSubscribers channel = channel();
+        subscribe(channel, 1, "a");
+        subscribe(channel, 2, "b");
+        ChannelSubscribers.Snapshot before = channel.snapshot();
+        subscribe(channel, 1, "c");
+
+        ChannelSubscribers.Snapshot after = channel.snapshot();
+        assertArrayEquals(new int[]{1, 2}, after.connectionIds);
+        assertArrayEquals(new String[]{"c", "b"}, after.subscriptionIds);
+        assertArrayEquals("subscription:c\n".getBytes(StandardCharsets.UTF_8), after.subscriptionHeaders[0]);
+        assertArrayEquals(new String[]{"a", "b"}, before.subscriptionIds);
+    }
+
+    @Test
+    public void unsubscribingKeepsTheOrderOfTheOthers() {
+        ChannelSubscribers channel = channel();
+        subscribe(channel, 1, "a");
+        subscribe(channel, 2, "b");
+        subscribe(channel, 3, "c");
+        ChannelSubscribers.Snapshot before = channel.snapshot();
+
+        assertTrue(channel.remove(2));
+        assertFalse(channel.remove(2));
+        ChannelSubscribers.Snapshot after = channel.snapshot();
+        assertArrayEquals(new int[]{1, 3}, after.connectionIds);
+        assertArrayEquals(new String[]{"a", "c"}, after.subscriptionIds);
+        assertEquals(2, after.handlers.length);
+        assertEquals(3, before.size);
+        assertArrayEquals(new int[]{1, 2, 3}, before.connectionIds);
+    }
+
+    @Test
+    public void unsubscribingEveryone() {
+        ChannelSubscribers channel = channel();
+        subscribe(channel, 1, "a");
+        subscribe(channel, 2, "b");
+
+        assertTrue(channel.remove(1));
+        assertTrue(channel.remove(2));
+        assertEquals(0, channel.size());
+        assertEquals(0, channel.snapshot().connectionIds.length);
+        assertFalse(channel.remove(1));
+    }
+
+    @Test
+    public void replaysTheRetainedMessagesToANewSubscriber() {
+        RetainedMessages retained = new RetainedMessages(new RetainLimits(2, 0, 1000, 1000), new RetainBudget(1000));
+        ChannelSubscribers channel = channel(retained);
+        RecordingHandler early = new RecordingHandler();
+        subscribe(channel, 1, "a", early, 0);
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(1, channel.retain(message("m" + i)).size);
+        }
+        assertTrue(early.received.isEmpty());
+
+        RecordingHandler late = new RecordingHandler();
+        subscribe(channel, 2, "b", late, 5);
+        assertEquals(Arrays.asList(
+                "MESSAGE\nsubscription:b\ndestination:/games/a_b\n\nm2\0",
+                "MESSAGE\nsubscription:b\ndestination:/games/a_b\n\nm3\0"), late.received);
+        assertEquals(2, channel.retain(message("m4")).size);
+    }
+
+    @Test
+    public void retainsNothingWithoutRetainedMessages() {
+        ChannelSubscribers channel = channel();
+        channel.retain(message("m1"));
+        RecordingHandler handler = new RecordingHandler();
+        subscribe(channel, 1, "a", handler, 5);
+
+        assertTrue(handler.received.isEmpty());
+    }
+}
@@ -0,0 +1,90 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionsImplTest {
+
+    private static class RecordingHandler implements ConnectionHandler<String> {
+        final List<String> received = new ArrayList<>();
+
+        @Override
+        public void send(String msg) {
+            received.add(msg);
+        }
+
+        @Override
+        public void sendEncoded(EncodedMessage msg) {
+            received.add(msg.toString());
+        }
+
+        @Override
+        public void sendEncodedDirect(EncodedMessage msg) {
+            received.add(msg.toString());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void rejectsASubscriptionIdUsedForAnotherChannel() {
+        ConnectionsImpl<String> connections = new ConnectionsImpl<>();
+        RecordingHandler handler = new RecordingHandler();
+        connections.addConnection(1, handler);
+
+        assertTrue(connections.subscribe("/games/a", 1, "7"));
+        assertFalse(connections.subscribe("/games/b", 1, "7"));
+        assertTrue(connections.subscribe("/games/a", 1, "7"));
+        assertFalse(connections.isUserSubscribed(1, "/games/b"));
+
+        connections.send("/games/b", "MESSAGE\n\nb");
+        assertEquals(0, handler.received.size());
+        connections.unsubscribe("7", 1);
+        assertFalse(connections.isUserSubscribed(1, "/games/a"));
+    }
+
+    @Test
+    public void subscribingAfterDisconnectAddsNothing() {
+        ConnectionsImpl<String> connections = new ConnectionsImpl<>();
+        RecordingHandler handler = new RecordingHandler();
+        connections.addConnection(1, handler);
+        connections.subscribe("/games/a", 1, "1");
+        connections.disconnect(1);
+
+        assertFalse(connections.subscribe("/games/b", 1, "2"));
+        assertFalse(connections.isUserSubscribed(1, "/games/b"));
+        assertNull(connections.getSubscriptionId(1, "/games/a"));
+    }
+
+    @Test
+    public void aSubscriptionRacingADisconnectIsRemovedWithTheConnection() throws InterruptedException {
+        ConnectionsImpl<String> connections = new ConnectionsImpl<>();
+        for (int connectionId = 0; connectionId < 200; connectionId++) {
+            connections.addConnection(connectionId, new RecordingHandler());
+            int id = connectionId;
+            Thread subscriber = new Thread(() -> connections.subscribe("/games/a", id, "1"));
+            subscriber.start();
+            connections.disconnect(connectionId);
+            subscriber.join();
+        }
+        RecordingHandler late = new RecordingHandler();
+        connections.addConnection(1000, late);
+        connections.subscribe("/games/a", 1000, "1");
+
+        connections.send("/games/a", "MESSAGE\n\nhello");
+        assertEquals(Arrays.asList("MESSAGE\nsubscription:1\n\nhello"), late.received);
+        for (int connectionId = 0; connectionId < 200; connectionId++) {
+            assertFalse(connections.isUserSubscribed(connectionId, "/games/a"));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DestinationTrieTest {
+
+    private static final int[] NONE = new int[0];
+
+    @Test
+    public void recognizesPatterns() {
+        assertTrue(DestinationTrie.isPattern("/games/*"));
+        assertTrue(DestinationTrie.isPattern("/games/**"));
+        assertTrue(DestinationTrie.isPattern("*"));
+        assertFalse(DestinationTrie.isPattern("/games/usa_mexico"));
+        assertFalse(DestinationTrie.isPattern("/games/a*"));
+    }
+
+    @Test
+    public void anySegmentMatchesExactlyOneSegment() {
+        DestinationTrie trie = new DestinationTrie();
+        trie.add("/games/*", 1);
+
+        assertArrayEquals(new int[]{1}, trie.match("/games/usa_mexico", false));
+        assertArrayEquals(NONE, trie.match("/games", false));
+        assertArrayEquals(NONE, trie.match("/games/usa_mexico/goals", false));
+        assertArrayEquals(NONE, trie.match("/other/usa_mexico", false));
+    }
+
+    @Test
+    public void anySegmentsMatchesZeroOrMoreSegments() {
+        DestinationTrie trie = new DestinationTrie();
+        trie.add("/games/**", 1);
+
+        assertArrayEquals(new int[]{1}, trie.match("/games", false));
+        assertArrayEquals(new int[]{1}, trie.match("/games/usa_mexico", false));
+        assertArrayEquals(new int[]{1}, trie.match("/games/usa_mexico/goals", false));
+        assertArrayEquals(NONE, trie.match("/gamesx", false));
+    }
+
+    @Test
+    public void anySegmentsInTheMiddle() {
+        DestinationTrie trie = new DestinationTrie();
+        trie.add("/games/**/goals", 1);
+
+        assertArrayEquals(new int[]{1}, trie.match("/games/goals", false));
+        assertArrayEquals(new int[]{1}, trie.match("/games/usa_mexico/half/goals", false));
+        assertArrayEquals(NONE, trie.match("/games/usa_mexico/fouls", false));
+    }
+
+    @Test
+    public void returnsEveryMatchingPatternOnceInIncreasingOrder() {
+        DestinationTrie trie = new DestinationTrie();
+        trie.add("/**/**", 7);
+        trie.add("/games/*", 3);
+        trie.add("/games/**", 5);
+        trie.add("/scores/*", 4);
+
+        assertArrayEquals(new int[]{3, 5, 7}, trie.match("/games/usa_mexico", false));
+    }
+
+    @Test
+    public void repeatedAnySegmentsMatchLikeOne() {
+        DestinationTrie trie = new DestinationTrie();
+        trie.add("/games/**", 1);
+        trie.add("/games/**/**/**", 2);
+
+        assertArrayEquals(new int[]{1, 2}, trie.match("/games", false));
+        assertArrayEquals(new int[]{1, 2}, trie.match("/games/a/b/c", false));
+    }
+
+    @Test(timeout = 5000)
+    public void manyAnySegmentsDoNotBacktrack() {
+        DestinationTrie trie = new DestinationTrie();
+        StringBuilder pattern = new StringBuilder();
+        StringBuilder destination = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            pattern.append("/**/a");
+        }
+        for (int i = 0; i < 60; i++) {
+            destination.append("/a");
+        }
+        trie.add(pattern + "/b", 1);
+        trie.add(pattern.toString(), 2);
+
+        assertArrayEquals(NONE, trie.match(destination + "/c", false));
+        assertArrayEquals(new int[]{2}, trie.match(destination.toString(), false));
+    }
+
+    @Test
+    public void matchesWithoutPatterns() {
+        assertArrayEquals(NONE, new DestinationTrie().match("/games/usa_mexico", true));
+    }
+
+    @Test
+    public void addingAPatternClearsCachedMatches() {
+        DestinationTrie trie = new DestinationTrie();
+        trie.add("/games/*", 1);
+        assertArrayEquals(new int[]{1}, trie.match("/games/usa_mexico", true));
+
+        trie.add("/games/usa_mexico", 2);
+        assertArrayEquals(new int[]{1, 2}, trie.match("/games/usa_mexico", true));
+    }
+}
@@ -0,0 +1,100 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EncodedMessageTest {
+
+    private static EncodedMessage message(String text) {
+        return EncodedMessage.of(bytes(text));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(EncodedMessage message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            message.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void splicesAtTheStartMiddleAndEnd() {
+        EncodedMessage message = message("MESSAGE\n\nbody");
+
+        assertEquals(">MESSAGE\n\nbody", text(message.splice(0, bytes(">"))));
+        assertEquals("MESSAGE\nsubscription:1\n\nbody", text(message.splice(8, bytes("subscription:1\n"))));
+        assertEquals("MESSAGE\n\nbody<", text(message.splice(message.length(), bytes("<"))));
+    }
+
+    @Test
+    public void splicingLeavesTheOriginalUnchanged() {
+        byte[] original = bytes("abcdef");
+        EncodedMessage message = EncodedMessage.of(original);
+        message.splice(3, bytes("XYZ"));
+
+        assertEquals("abcdef", text(message));
+        assertEquals(6, message.length());
+        assertArrayEquals(bytes("abcdef"), original);
+    }
+
+    @Test
+    public void splicesASplicedMessageAcrossItsSegments() {
+        EncodedMessage message = message("abcdef").splice(3, bytes("123")); //abc123def
+
+        assertEquals("abc12-3def", text(message.splice(5, bytes("-"))));
+        assertEquals("abc-123def", text(message.splice(3, bytes("-"))));
+        assertEquals("abc123-def", text(message.splice(6, bytes("-"))));
+        assertEquals("a-bc123def", text(message.splice(1, bytes("-"))));
+        assertEquals("abc123def-", text(message.splice(9, bytes("-"))));
+    }
+
+    @Test
+    public void anEmptyInsertKeepsTheBytes() {
+        assertEquals("abc", text(message("abc").splice(1, new byte[0])));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsAPositionPastTheEnd() {
+        message("abc").splice(4, bytes("x"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsANegativePosition() {
+        message("abc").splice(-1, bytes("x"));
+    }
+
+    @Test
+    public void indexOfCountsFromTheStartOfTheWholeMessage() {
+        EncodedMessage message = message("ab\ncd").splice(0, bytes("xy"));
+
+        assertEquals(4, message.indexOf((byte) '\n'));
+        assertEquals(0, message.indexOf((byte) 'x'));
+        assertEquals(-1, message.indexOf((byte) 0));
+    }
+
+    @Test
+    public void buffersCarryTheSplicedBytes() {
+        EncodedMessage message = message("hello world").splice(5, bytes(","));
+
+        ByteBuffer all = ByteBuffer.allocate(message.length());
+        for (ByteBuffer buffer : message.toBuffers()) {
+            all.put(buffer);
+        }
+        assertArrayEquals(bytes("hello, world"), all.array());
+        assertEquals("hello, world", text(message));
+    }
+}
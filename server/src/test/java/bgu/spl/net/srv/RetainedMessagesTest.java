@@ -0,0 +1,109 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RetainedMessagesTest {
+
+    private RetainBudget budget;
+
+    private RetainedMessages retained(int messages, long maxAgeMillis, long channelBytes, long totalLimit) {
+        if (budget == null) {
+            budget = new RetainBudget(totalLimit);
+        }
+        return new RetainedMessages(new RetainLimits(messages, maxAgeMillis, channelBytes, totalLimit), budget);
+    }
+
+    private static EncodedMessage message(String text) {
+        return EncodedMessage.of(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] texts(EncodedMessage[] messages) {
+        String[] texts = new String[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            texts[i] = messages[i].toString();
+        }
+        return texts;
+    }
+
+    @Test
+    public void keepsTheLastMessagesOldestFirst() {
+        RetainedMessages retained = retained(3, 0, 1000, 1000);
+        for (int i = 0; i < 40; i++) {
+            retained.add(message("m" + i), 0);
+        }
+
+        assertArrayEquals(new String[]{"m37", "m38", "m39"}, texts(retained.last(10, 0)));
+        assertArrayEquals(new String[]{"m38", "m39"}, texts(retained.last(2, 0)));
+        assertEquals(9, budget.getBytes());
+    }
+
+    @Test
+    public void evictsTheOldestMessagesToFitTheChannelBytes() {
+        RetainedMessages retained = retained(100, 0, 10, 1000);
+        retained.add(message("aaaa"), 0);
+        retained.add(message("bbbb"), 0);
+        retained.add(message("cccc"), 0);
+
+        assertArrayEquals(new String[]{"bbbb", "cccc"}, texts(retained.last(10, 0)));
+        assertEquals(8, budget.getBytes());
+    }
+
+    @Test
+    public void doesNotRetainAMessageLargerThanTheLimits() {
+        RetainedMessages retained = retained(100, 0, 4, 1000);
+        retained.add(message("aaaa"), 0);
+        retained.add(message("too large"), 0);
+
+        assertArrayEquals(new String[]{"aaaa"}, texts(retained.last(10, 0)));
+    }
+
+    @Test
+    public void dropsExpiredMessages() {
+        RetainedMessages retained = retained(100, 1000, 1000, 1000);
+        retained.add(message("old"), 0);
+        retained.add(message("new"), 800);
+
+        assertArrayEquals(new String[]{"old", "new"}, texts(retained.last(10, 1000)));
+        assertArrayEquals(new String[]{"new"}, texts(retained.last(10, 1500)));
+        assertEquals(3, budget.getBytes());
+        assertArrayEquals(new String[0], texts(retained.last(10, 2000)));
+        assertEquals(0, budget.getBytes());
+    }
+
+    @Test
+    public void evictsTheOldestMessagesOfAllChannelsToFitTheTotalBytes() {
+        RetainedMessages first = retained(100, 0, 100, 10);
+        RetainedMessages second = retained(100, 0, 100, 10);
+        first.add(message("aaaa"), 0);
+        second.add(message("bbbb"), 0);
+        first.add(message("cccc"), 0);
+
+        assertArrayEquals(new String[]{"cccc"}, texts(first.last(10, 0)));
+        assertArrayEquals(new String[]{"bbbb"}, texts(second.last(10, 0)));
+
+        first.add(message("dddd"), 0);
+        assertArrayEquals(new String[]{"cccc", "dddd"}, texts(first.last(10, 0)));
+        assertArrayEquals(new String[0], texts(second.last(10, 0)));
+        assertEquals(8, budget.getBytes());
+    }
+
+    @Test
+    public void anIdleChannelGivesUpItsBytes() {
+        RetainedMessages idle = retained(100, 0, 100, 12);
+        RetainedMessages busy = retained(100, 0, 100, 12);
+        idle.add(message("aaaa"), 0);
+        idle.add(message("bbbb"), 0);
+        for (int i = 0; i < 10; i++) {
+            busy.add(message("m" + i + "xx"), 0);
+        }
+
+        assertArrayEquals(new String[0], texts(idle.last(10, 0)));
+        assertArrayEquals(new String[]{"m7xx", "m8xx", "m9xx"}, texts(busy.last(10, 0)));
+        assertEquals(12, budget.getBytes());
+    }
+}
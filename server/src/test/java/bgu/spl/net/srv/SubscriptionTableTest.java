@@ -0,0 +1,61 @@
+package bgu.spl.net.srv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SubscriptionTableTest {
+
+    @Test
+    public void findsSubscriptionsByChannel() {
+        SubscriptionTable table = new SubscriptionTable();
+        table.put(3, "a");
+        table.put(7, "b");
+
+        assertEquals("a", table.subscriptionIdOf(3));
+        assertEquals("b", table.subscriptionIdOf(7));
+        assertNull(table.subscriptionIdOf(5));
+        assertArrayEquals(new int[]{3, 7}, table.channelIds());
+    }
+
+    @Test
+    public void subscribingAgainReplacesTheChannelsSubscription() {
+        SubscriptionTable table = new SubscriptionTable();
+        table.put(3, "a");
+        table.put(3, "b");
+
+        assertEquals("b", table.subscriptionIdOf(3));
+        assertArrayEquals(new int[]{3}, table.channelIds());
+        assertEquals(-1, table.removeSubscription("a"));
+        assertEquals(3, table.removeSubscription("b"));
+        assertNull(table.subscriptionIdOf(3));
+    }
+
+    @Test
+    public void findsTheChannelOfASubscription() {
+        SubscriptionTable table = new SubscriptionTable();
+        table.put(3, "a");
+        table.put(7, "b");
+
+        assertEquals(3, table.channelOf("a"));
+        assertEquals(7, table.channelOf("b"));
+        assertEquals(-1, table.channelOf("c"));
+    }
+
+    @Test
+    public void removesOnlyTheGivenSubscription() {
+        SubscriptionTable table = new SubscriptionTable();
+        for (int channel = 0; channel < 10; channel++) {
+            table.put(channel, "s" + channel);
+        }
+
+        assertEquals(4, table.removeSubscription("s4"));
+        assertEquals(-1, table.removeSubscription("s4"));
+        assertEquals(9, table.channelIds().length);
+        for (int channel = 0; channel < 10; channel++) {
+            assertEquals(channel == 4 ? null : "s" + channel, table.subscriptionIdOf(channel));
+        }
+    }
+}
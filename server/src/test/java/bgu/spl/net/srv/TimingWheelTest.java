@@ -0,0 +1,153 @@
+package bgu.spl.net.srv;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private TimingWheel wheel;
+    private long start;
+    private final List<String> ran = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        // the wheel starts at the current tick, the tests advance it by hand from there
+        do {
+            start = TimingWheel.nowMillis() / TICK * TICK;
+            wheel = new TimingWheel(TICK, 8);
+        } while (TimingWheel.nowMillis() / TICK * TICK != start);
+    }
+
+    private TimingWheel.Timeout timeout(String name) {
+        return new TimingWheel.Timeout(() -> ran.add(name));
+    }
+
+    @Test
+    public void runsATimeoutOnceItsTickHasPassed() {
+        TimingWheel.Timeout timeout = timeout("a");
+        wheel.schedule(timeout, start + 35);
+        assertTrue(timeout.isScheduled());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(start + 30);
+        assertTrue(ran.isEmpty());
+
+        wheel.advance(start + 40);
+        assertEquals(1, ran.size());
+        assertFalse(timeout.isScheduled());
+        assertEquals(0, wheel.size());
+
+        wheel.advance(start + 200);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    public void runsTimeoutsMoreThanARotationAway() {
+        wheel.schedule(timeout("far"), start + 8 * TICK * 3 + 5);
+        wheel.schedule(timeout("near"), start + 20);
+
+        for (long now = start; now < start + 8 * TICK * 3; now += TICK) {
+            wheel.advance(now);
+        }
+        assertEquals(1, ran.size());
+        assertEquals("near", ran.get(0));
+
+        wheel.advance(start + 8 * TICK * 3 + 10);
+        assertEquals(2, ran.size());
+    }
+
+    @Test
+    public void runsEveryDueTimeoutAfterALongPause() {
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(timeout("t" + i), start + i * TICK);
+        }
+        wheel.advance(start + 1000);
+        assertEquals(20, ran.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotRun() {
+        TimingWheel.Timeout timeout = timeout("a");
+        wheel.schedule(timeout, start + 20);
+        wheel.cancel(timeout);
+        assertFalse(timeout.isScheduled());
+        assertEquals(0, wheel.size());
+
+        wheel.advance(start + 100);
+        assertTrue(ran.isEmpty());
+        wheel.cancel(timeout);
+    }
+
+    @Test
+    public void schedulingAgainMovesTheTimeout() {
+        TimingWheel.Timeout timeout = timeout("a");
+        wheel.schedule(timeout, start + 20);
+        wheel.schedule(timeout, start + 60);
+        assertEquals(1, wheel.size());
+
+        wheel.advance(start + 30);
+        assertTrue(ran.isEmpty());
+        wheel.advance(start + 60);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    public void aRunningTimeoutMayCancelAnotherDueOne() {
+        TimingWheel.Timeout second = timeout("second");
+        TimingWheel.Timeout first = new TimingWheel.Timeout(() -> {
+            ran.add("first");
+            wheel.cancel(second);
+        });
+        wheel.schedule(first, start + 10);
+        wheel.schedule(second, start + 20);
+
+        wheel.advance(start + 20);
+        assertEquals(1, ran.size());
+        assertFalse(second.isScheduled());
+    }
+
+    @Test
+    public void aRunningTimeoutMayScheduleItselfAgain() {
+        TimingWheel.Timeout[] self = new TimingWheel.Timeout[1];
+        self[0] = new TimingWheel.Timeout(() -> {
+            ran.add("tick");
+            wheel.schedule(self[0], start + 50);
+        });
+        wheel.schedule(self[0], start + 10);
+
+        wheel.advance(start + 10);
+        assertEquals(1, ran.size());
+        assertTrue(self[0].isScheduled());
+
+        wheel.advance(start + 50);
+        assertEquals(2, ran.size());
+    }
+
+    @Test
+    public void aDeadlineInThePastRunsOnTheNextTick() {
+        wheel.schedule(timeout("late"), start - 1000);
+        wheel.advance(start);
+        assertTrue(ran.isEmpty());
+        wheel.advance(start + TICK);
+        assertEquals(1, ran.size());
+    }
+
+    @Test
+    public void waitsIndefinitelyOnlyWhenEmpty() {
+        assertEquals(0, wheel.millisToNextTick(start));
+
+        wheel.schedule(timeout("a"), start + 100);
+        assertEquals(TICK - 3, wheel.millisToNextTick(start + 3));
+        assertEquals(1, wheel.millisToNextTick(start + TICK + 5));
+    }
+}